@@ -0,0 +1,60 @@
+package searchengine.benchmark;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+/**
+ * Подключение к БД для бенчмарков. По умолчанию — встроенная H2 в режиме MySQL
+ * со схемой из benchmark/schema-h2.sql; через -p jdbcUrl=... можно указать локальный MySQL
+ * с уже применённой миграцией Liquibase.
+ */
+public final class BenchmarkDatabase implements AutoCloseable {
+
+    public static final String H2_URL =
+            "jdbc:h2:mem:bench;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    private final HikariDataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+
+    private BenchmarkDatabase(HikariDataSource dataSource) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    public static BenchmarkDatabase open(String jdbcUrl, String user, String password) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(jdbcUrl);
+        dataSource.setUsername(user);
+        dataSource.setPassword(password);
+        if (jdbcUrl.startsWith("jdbc:mysql:")) {
+            dataSource.addDataSourceProperty("rewriteBatchedStatements", "true");
+        }
+        if (jdbcUrl.startsWith("jdbc:h2:")) {
+            new ResourceDatabasePopulator(new ClassPathResource("benchmark/schema-h2.sql")).execute(dataSource);
+        }
+        return new BenchmarkDatabase(dataSource);
+    }
+
+    public JdbcTemplate jdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    public int createSite(String url) {
+        jdbcTemplate.update("INSERT INTO site (status, status_time, url, name) VALUES ('INDEXED', NOW(), ?, ?)",
+                url, url);
+        return jdbcTemplate.queryForObject("SELECT MAX(id) FROM site WHERE url = ?", Integer.class, url);
+    }
+
+    public void clear() {
+        jdbcTemplate.update("DELETE FROM `index`");
+        jdbcTemplate.update("DELETE FROM lemma");
+        jdbcTemplate.update("DELETE FROM page");
+    }
+
+    @Override
+    public void close() {
+        dataSource.close();
+    }
+}
@@ -0,0 +1,56 @@
+package searchengine.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.StreamUtils;
+import searchengine.config.SearchEngineProperties;
+import searchengine.services.lemmatization.LemmaService;
+import searchengine.services.metrics.SearchEngineMetrics;
+import searchengine.services.startup.StartupTasks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Зафиксированные страницы из benchmark/pages: русский текст, меню и подвал
+ * со ссылками на разделы, внешние сайты и файлы, как на типичном сайте.
+ */
+public final class BenchmarkFixtures {
+
+    public static final String ROOT = "https://library.local";
+    public static final List<String> PAGES = List.of("history", "search", "events");
+
+    private BenchmarkFixtures() {
+    }
+
+    public static String page(String name) {
+        try {
+            return StreamUtils.copyToString(
+                    new ClassPathResource("benchmark/pages/" + name + ".html").getInputStream(),
+                    StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static String pagePath(String name) {
+        return "/about/" + name + ".html";
+    }
+
+    public static SearchEngineMetrics metrics() {
+        return new SearchEngineMetrics(new SimpleMeterRegistry());
+    }
+
+    /**
+     * Лемматизатор без доступа к БД, с настройками по умолчанию.
+     */
+    public static LemmaService lemmaService() {
+        StartupTasks startupTasks = new StartupTasks();
+        startupTasks.start();
+        LemmaService lemmaService = new LemmaService(null, metrics(), new SearchEngineProperties(), startupTasks);
+        lemmaService.init();
+        return lemmaService;
+    }
+}
@@ -0,0 +1,38 @@
+package searchengine.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import searchengine.indexing.HtmlExtractor;
+import searchengine.services.lemmatization.LemmaService;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Лемматизация текста страницы: поиск слов и обращения к морфологии.
+ * Разбор HTML измеряется в {@link LinkExtractionBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LemmaBenchmark {
+
+    @Param({"history", "search", "events"})
+    public String page;
+
+    private LemmaService lemmaService;
+    private String text;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        lemmaService = BenchmarkFixtures.lemmaService();
+        text = HtmlExtractor.extract(BenchmarkFixtures.page(page), "").indexText();
+    }
+
+    @Benchmark
+    public Map<String, Integer> getLemmas() {
+        return lemmaService.getLemmas(text);
+    }
+}
@@ -0,0 +1,63 @@
+package searchengine.benchmark;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.*;
+import searchengine.dto.indexing.HtmlContent;
+import searchengine.indexing.HtmlExtractor;
+import searchengine.indexing.LinkExtractor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разбор страницы обходчиком: полное дерево Jsoup с выборкой ссылок и текста
+ * против однопроходного {@link HtmlExtractor}; отдельно — отбор ссылок сайта.
+ * Сравнивать стоит и время, и выделение памяти: -Djmh.args="-prof gc".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LinkExtractionBenchmark {
+
+    @Param({"history", "search", "events"})
+    public String page;
+
+    private String html;
+    private String baseUri;
+    private HtmlContent content;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        html = BenchmarkFixtures.page(page);
+        baseUri = BenchmarkFixtures.ROOT + BenchmarkFixtures.pagePath(page);
+        content = HtmlExtractor.extract(html, baseUri);
+    }
+
+    @Benchmark
+    public HtmlContent domParse() {
+        Document document = Jsoup.parse(html, baseUri);
+        List<String> links = new ArrayList<>();
+        for (Element link : document.select("a[href]")) {
+            links.add(link.attr("abs:href"));
+        }
+        Element canonical = document.selectFirst("link[rel=canonical][href]");
+        return new HtmlContent(document.title(), document.body().text(), links,
+                canonical == null ? null : canonical.attr("abs:href"));
+    }
+
+    @Benchmark
+    public HtmlContent streamParse() {
+        return HtmlExtractor.extract(html, baseUri);
+    }
+
+    @Benchmark
+    public List<String> extractParsed() {
+        return LinkExtractor.extractLinks(content, BenchmarkFixtures.ROOT);
+    }
+}
@@ -0,0 +1,110 @@
+package searchengine.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.ConnectionCallback;
+import searchengine.config.SearchEngineProperties;
+import searchengine.model.Page;
+import searchengine.model.Site;
+import searchengine.repositories.JdbcBatchRepository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность вставки страниц (строк в секунду):
+ * построчный INSERT с чтением ключа, как делает Hibernate при IDENTITY,
+ * против пакетной вставки JdbcBatchRepository.
+ * Встроенная H2 не платит за сетевые round-trip'ы, поэтому основной выигрыш
+ * виден на MySQL: -p jdbcUrl=jdbc:mysql://localhost:3306/search_engine -p user=... -p password=...
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PageInsertBenchmark {
+
+    private static final int ROWS = 500;
+    private static final String INSERT_PAGE =
+            "INSERT INTO page (site_id, path, code, content) VALUES (?, ?, ?, ?)";
+
+    @Param(BenchmarkDatabase.H2_URL)
+    public String jdbcUrl;
+
+    @Param("sa")
+    public String user;
+
+    @Param("")
+    public String password;
+
+    @Param({"50", "200"})
+    public int batchSize;
+
+    @Param("4096")
+    public int contentLength;
+
+    private BenchmarkDatabase database;
+    private JdbcBatchRepository batchRepository;
+    private List<Page> pages;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = BenchmarkDatabase.open(jdbcUrl, user, password);
+        SearchEngineProperties properties = new SearchEngineProperties();
+        properties.setBatchSize(batchSize);
+        batchRepository = new JdbcBatchRepository(database.jdbcTemplate(), properties, BenchmarkFixtures.metrics());
+
+        Site site = Site.builder().id(database.createSite("https://bench.local")).build();
+        String content = "<p>" + "страница ".repeat(contentLength / 9) + "</p>";
+        pages = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            pages.add(Page.builder().site(site).path("/page/" + i).code(200).content(content).build());
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void clear() {
+        database.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int rowByRow() {
+        return insertOneByOne();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public List<Page> jdbcBatch() {
+        return batchRepository.insertPages(pages);
+    }
+
+    private int insertOneByOne() {
+        return database.jdbcTemplate().execute((ConnectionCallback<Integer>) connection -> {
+            int last = 0;
+            for (Page page : pages) {
+                try (PreparedStatement ps = connection.prepareStatement(INSERT_PAGE, Statement.RETURN_GENERATED_KEYS)) {
+                    ps.setInt(1, page.getSite().getId());
+                    ps.setString(2, page.getPath());
+                    ps.setInt(3, page.getCode());
+                    ps.setString(4, page.getContent());
+                    ps.executeUpdate();
+                    try (ResultSet keys = ps.getGeneratedKeys()) {
+                        if (keys.next()) last = keys.getInt(1);
+                    }
+                }
+            }
+            return last;
+        });
+    }
+}
@@ -0,0 +1,254 @@
+package searchengine.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import searchengine.config.SearchEngineProperties;
+import searchengine.dto.projection.LemmaView;
+import searchengine.dto.projection.PageView;
+import searchengine.dto.projection.PostingView;
+import searchengine.dto.searching.RelevanceItem;
+import searchengine.indexing.HtmlExtractor;
+import searchengine.model.Index;
+import searchengine.model.Lemma;
+import searchengine.model.Page;
+import searchengine.model.Site;
+import searchengine.repositories.JdbcBatchRepository;
+import searchengine.services.indexstore.segment.SegmentIndex;
+import searchengine.services.lemmatization.LemmaService;
+import searchengine.services.search.MaxScoreRanker;
+import searchengine.services.search.SearchProfiler;
+import searchengine.services.search.SearchService;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пересечение списков вхождений и расчёт релевантности на наборе страниц,
+ * построенном из зафиксированных страниц: страница i берёт леммы
+ * страницы-образца с детерминированным прореживанием, ранг — число вхождений.
+ * Запросы к БД повторяют запросы репозиториев поиска; searchTopKFromDb
+ * сравнивается с searchFromDb, у которого те же первые topK результатов.
+ * С store=segments вхождения читаются из {@link SegmentIndex} во временном каталоге,
+ * а не из таблицы index, так что два хранилища сравниваются на одних данных.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+    private static final String FIND_LEMMAS =
+            "SELECT id, lemma, frequency, site_id, max_rank FROM lemma WHERE lemma IN (:lemmas)";
+    private static final String FIND_POSTINGS =
+            "SELECT page_id, `rank` FROM `index` WHERE lemma_id IN (:ids)";
+    private static final String FIND_PAGE_POSTINGS =
+            "SELECT page_id, `rank` FROM `index` WHERE lemma_id IN (:ids) AND page_id IN (:pages)";
+    private static final String FIND_PAGES =
+            "SELECT id, path, site_id FROM page WHERE id IN (:ids)";
+
+    @Param(BenchmarkDatabase.H2_URL)
+    public String jdbcUrl;
+
+    @Param("sa")
+    public String user;
+
+    @Param("")
+    public String password;
+
+    @Param("3000")
+    public int pages;
+
+    @Param({"старинная сказка", "лекция астрономия", "каталог история новость"})
+    public String query;
+
+    @Param("20")
+    public int topK;
+
+    @Param({"jdbc", "segments"})
+    public String store;
+
+    private BenchmarkDatabase database;
+    private NamedParameterJdbcTemplate jdbc;
+    private List<String> queryLemmas;
+    private List<List<PostingView>> postings;
+    private Map<Integer, Double> ranks;
+    private List<PageView> pageViews;
+    private Path segmentDirectory;
+    private SegmentIndex segmentIndex;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        database = BenchmarkDatabase.open(jdbcUrl, user, password);
+        database.clear();
+        jdbc = new NamedParameterJdbcTemplate(database.jdbcTemplate());
+
+        LemmaService lemmaService = BenchmarkFixtures.lemmaService();
+        queryLemmas = List.copyOf(lemmaService.getLemmas(query).keySet());
+        populate(lemmaService);
+
+        List<LemmaView> lemmas = findLemmas();
+        postings = lemmas.stream().map(lemma -> findPostings(List.of(lemma.id()))).toList();
+        ranks = SearchService.intersectPostings(postings.iterator());
+        pageViews = ranks.isEmpty() ? List.of() : findPages(ranks.keySet());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        database.close();
+        if (segmentIndex != null) {
+            segmentIndex.close();
+            try (var files = Files.walk(segmentDirectory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    @Benchmark
+    public List<RelevanceItem> searchFromDb() {
+        Map<Integer, Double> found = SearchService.intersectPostings(findLemmas().stream()
+                .map(lemma -> findPostings(List.of(lemma.id())))
+                .iterator());
+        if (found.isEmpty()) return List.of();
+        return SearchService.rankPages(found, findPages(found.keySet()));
+    }
+
+    /**
+     * То же с отсечением MaxScore: вхождения второй и следующих лемм читаются
+     * только для страниц, ещё способных войти в первые topK.
+     */
+    @Benchmark
+    public List<RelevanceItem> searchTopKFromDb() {
+        List<LemmaView> found = findLemmas();
+        if (found.isEmpty()) return List.of();
+        List<MaxScoreRanker.Term> terms = found.stream()
+                .map(lemma -> new MaxScoreRanker.Term(lemma.lemma(), List.of(lemma.id()), lemma.maxRank()))
+                .toList();
+        MaxScoreRanker.Result top = MaxScoreRanker.topK(terms, topK, this::findPostings, SearchProfiler.DISABLED);
+        if (top.ranks().isEmpty()) return List.of();
+        return SearchService.rankPages(top.ranks(), findPages(top.ranks().keySet()));
+    }
+
+    @Benchmark
+    public Map<Integer, Double> intersectPostings() {
+        return SearchService.intersectPostings(postings.iterator());
+    }
+
+    @Benchmark
+    public List<RelevanceItem> rankPages() {
+        if (ranks.isEmpty()) return List.of();
+        return SearchService.rankPages(ranks, pageViews);
+    }
+
+    private List<LemmaView> findLemmas() {
+        double threshold = pages * 0.7;
+        return jdbc.query(FIND_LEMMAS, Map.of("lemmas", queryLemmas),
+                        (rs, i) -> new LemmaView(rs.getInt(1), rs.getString(2), rs.getInt(3), rs.getInt(4), rs.getFloat(5)))
+                .stream()
+                .filter(lemma -> lemma.frequency() < threshold)
+                .sorted(Comparator.comparingInt(LemmaView::frequency))
+                .toList();
+    }
+
+    private List<PostingView> findPostings(Collection<Integer> lemmaIds) {
+        if (segmentIndex != null) return segmentIndex.postings(lemmaIds, null);
+        return jdbc.query(FIND_POSTINGS, Map.of("ids", lemmaIds),
+                (rs, i) -> new PostingView(rs.getInt(1), rs.getFloat(2)));
+    }
+
+    private List<PostingView> findPostings(Collection<Integer> lemmaIds, Collection<Integer> pageIds) {
+        if (pageIds == null) return findPostings(lemmaIds);
+        if (segmentIndex != null) return segmentIndex.postings(lemmaIds, pageIds);
+        return jdbc.query(FIND_PAGE_POSTINGS, Map.of("ids", lemmaIds, "pages", pageIds),
+                (rs, i) -> new PostingView(rs.getInt(1), rs.getFloat(2)));
+    }
+
+    private List<PageView> findPages(Collection<Integer> pageIds) {
+        return jdbc.query(FIND_PAGES, Map.of("ids", pageIds),
+                (rs, i) -> new PageView(rs.getInt(1), rs.getString(2), rs.getInt(3)));
+    }
+
+    private void populate(LemmaService lemmaService) throws IOException {
+        Site site = Site.builder().id(database.createSite(BenchmarkFixtures.ROOT)).build();
+        SearchEngineProperties properties = new SearchEngineProperties();
+        properties.setBatchSize(500);
+        JdbcBatchRepository batchRepository = new JdbcBatchRepository(database.jdbcTemplate(), properties, BenchmarkFixtures.metrics());
+
+        List<Map<String, Integer>> samples = BenchmarkFixtures.PAGES.stream()
+                .map(name -> lemmaService.getLemmas(HtmlExtractor.extract(BenchmarkFixtures.page(name), "").indexText()))
+                .toList();
+
+        List<Page> rows = new ArrayList<>(pages);
+        for (int i = 0; i < pages; i++) {
+            String name = BenchmarkFixtures.PAGES.get(i % samples.size());
+            rows.add(Page.builder().site(site).code(200).content("")
+                    .path("/" + i + BenchmarkFixtures.pagePath(name)).build());
+        }
+        List<Page> saved = batchRepository.insertPages(rows);
+
+        Map<String, Lemma> lemmas = new HashMap<>();
+        List<Index> indexes = new ArrayList<>();
+        for (int i = 0; i < saved.size(); i++) {
+            Page page = saved.get(i);
+            for (Map.Entry<String, Integer> entry : samples.get(i % samples.size()).entrySet()) {
+                if (Math.floorMod(entry.getKey().hashCode() * 31 + i, 4) == 0) continue;
+                Lemma lemma = lemmas.computeIfAbsent(entry.getKey(),
+                        key -> Lemma.builder().site(site).lemma(key).frequency(0).maxRank(0f).build());
+                lemma.setFrequency(lemma.getFrequency() + 1);
+                lemma.setMaxRank(Math.max(lemma.getMaxRank(), entry.getValue().floatValue()));
+                indexes.add(Index.builder().page(page).lemma(lemma).rank(entry.getValue().floatValue()).build());
+            }
+        }
+        lemmas.values().forEach(lemma -> lemma.setId(insertLemma(lemma)));
+        if (store.equals("segments")) {
+            populateSegments(indexes);
+        } else {
+            batchRepository.insertIndexes(indexes);
+        }
+    }
+
+    /**
+     * Сбрасывает сегмент каждые 500 страниц и сливает их, как фоновое обслуживание при индексации.
+     */
+    private void populateSegments(List<Index> indexes) throws IOException {
+        segmentDirectory = Files.createTempDirectory("search-benchmark");
+        segmentIndex = SegmentIndex.open(segmentDirectory, 8);
+        Map<Integer, Map<Integer, Float>> byPage = new TreeMap<>();
+        for (Index index : indexes) {
+            byPage.computeIfAbsent(index.getPage().getId(), id -> new HashMap<>())
+                    .put(index.getLemma().getId(), index.getRank());
+        }
+        int added = 0;
+        for (Map.Entry<Integer, Map<Integer, Float>> page : byPage.entrySet()) {
+            segmentIndex.add(page.getKey(), page.getValue());
+            if (++added % 500 == 0) segmentIndex.flush();
+        }
+        segmentIndex.flush();
+        while (segmentIndex.merge()) {
+            // сливаем, пока сегментов не меньше mergeFactor
+        }
+    }
+
+    private int insertLemma(Lemma lemma) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        database.jdbcTemplate().update(connection -> {
+            PreparedStatement ps = connection.prepareStatement(
+                    "INSERT INTO lemma (site_id, lemma, frequency, max_rank) VALUES (?, ?, ?, ?)",
+                    Statement.RETURN_GENERATED_KEYS);
+            ps.setInt(1, lemma.getSite().getId());
+            ps.setString(2, lemma.getLemma());
+            ps.setInt(3, lemma.getFrequency());
+            ps.setFloat(4, lemma.getMaxRank());
+            return ps;
+        }, keyHolder);
+        return keyHolder.getKey().intValue();
+    }
+}
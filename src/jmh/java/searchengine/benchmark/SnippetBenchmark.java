@@ -0,0 +1,44 @@
+package searchengine.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import searchengine.indexing.HtmlExtractor;
+import searchengine.services.lemmatization.LemmaService;
+import searchengine.services.search.SearchService;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Построение сниппета по тексту страницы для лемм запроса.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SnippetBenchmark {
+
+    @Param({"history", "search", "events"})
+    public String page;
+
+    @Param({"читатель библиотеки", "поиск страницы по запросу"})
+    public String query;
+
+    private SearchService searchService;
+    private String text;
+    private List<String> lemmas;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        LemmaService lemmaService = BenchmarkFixtures.lemmaService();
+        searchService = new SearchService(null, null, null, null, lemmaService, BenchmarkFixtures.metrics(), null);
+        text = HtmlExtractor.extract(BenchmarkFixtures.page(page), "").text();
+        lemmas = List.copyOf(lemmaService.getLemmas(query).keySet());
+    }
+
+    @Benchmark
+    public String getSnippet() {
+        return searchService.getSnippet(text, lemmas);
+    }
+}
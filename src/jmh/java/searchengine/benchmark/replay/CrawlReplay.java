@@ -0,0 +1,168 @@
+package searchengine.benchmark.replay;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import searchengine.Application;
+import searchengine.model.Site;
+import searchengine.model.Status;
+import searchengine.repositories.SiteRepository;
+import searchengine.services.indexing.IndexingService;
+import searchengine.services.indexstore.IndexStore;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Прогон полной индексации приложения против синтетического сайта {@link MockSite}.
+ * Поднимает контекст приложения без веб-сервера на встроенной H2 (или на БД из jdbcUrl),
+ * вызывает IndexingService.startIndexing и ждёт окончания обхода.
+ * Печатает страницы в секунду, записанные строки в секунду, пик кучи
+ * и время этапов из {@link StageTimings}.
+ *
+ * <pre>
+ * mvn -Pbenchmark compile exec:exec@replay -Dreplay.args="pages=5000 fanout=8 latency=20ms errorRate=0.01"
+ * mvn -Pbenchmark compile exec:exec@replay -Dreplay.args="pages=5000 store=segments"
+ * </pre>
+ */
+public final class CrawlReplay {
+
+    private CrawlReplay() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        MockSiteConfig config = MockSiteConfig.parse(args);
+        PrintStream out = System.out;
+
+        try (MockSite mockSite = MockSite.start(config);
+             HeapSampler heap = HeapSampler.start()) {
+            StageTimings timings = new StageTimings();
+            ConfigurableApplicationContext context = startApplication(config, mockSite, timings);
+            try {
+                out.printf("Mock site %s: %d pages, fanout %d, depth %d, ~%d bytes, latency %s, error rate %.3f%s, %s store%n",
+                        mockSite.url(), mockSite.pageCount(), config.fanout(), config.depth(),
+                        config.pageSize(), config.latency(), config.errorRate(), config.sitemap() ? ", sitemap" : "",
+                        config.store());
+
+                long start = System.nanoTime();
+                IndexingService indexingService = context.getBean(IndexingService.class);
+                indexingService.startIndexing();
+                Site site = awaitIndexing(indexingService, context.getBean(SiteRepository.class), config);
+                double seconds = (System.nanoTime() - start) / 1e9;
+
+                JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+                long pages = count(jdbc, "SELECT COUNT(*) FROM page");
+                long lemmas = count(jdbc, "SELECT COUNT(*) FROM lemma");
+                IndexStore indexStore = context.getBean(IndexStore.class);
+                indexStore.flush();
+                long indexes = indexStore.count();
+
+                out.println();
+                out.printf("site status        %s%s%n", site.getStatus(),
+                        site.getLastError() == null ? "" : " (" + site.getLastError() + ")");
+                out.printf("elapsed            %.2f s%n", seconds);
+                out.printf("pages              %d (%.1f pages/s)%n", pages, pages / seconds);
+                out.printf("rows written       %d pages + %d lemmas + %d index = %.1f rows/s%n",
+                        pages, lemmas, indexes, (pages + lemmas + indexes) / seconds);
+                out.printf("http requests      %d (%d distinct pages, %.2f per page, %d errors served)%n",
+                        mockSite.requests(), mockSite.distinctPagesServed(),
+                        (double) mockSite.requests() / Math.max(1, mockSite.distinctPagesServed()), mockSite.errors());
+                out.printf("heap peak          %.1f MB%n", heap.peak() / (1024.0 * 1024.0));
+                out.println();
+                timings.print(out);
+            } finally {
+                context.close();
+            }
+        }
+    }
+
+    private static ConfigurableApplicationContext startApplication(MockSiteConfig config, MockSite mockSite,
+                                                                   StageTimings timings) throws IOException {
+        boolean h2 = config.jdbcUrl().startsWith("jdbc:h2:");
+        return new SpringApplicationBuilder(Application.class)
+                .web(WebApplicationType.NONE)
+                .initializers(context -> context.getBeanFactory().registerSingleton("stageTimings", timings))
+                .properties(
+                        "spring.datasource.url=" + config.jdbcUrl(),
+                        "spring.datasource.username=" + config.user(),
+                        "spring.datasource.password=" + config.password(),
+                        "spring.liquibase.enabled=" + !h2,
+                        "spring.jpa.hibernate.ddl-auto=" + (h2 ? "create" : "none"),
+                        "logging.level.root=WARN",
+                        "search-engine.user-agent=CrawlReplay",
+                        "search-engine.referrer=http://localhost",
+                        "search-engine.waiting-time=0ms",
+                        "search-engine.timeout=10000",
+                        "search-engine.max-depth=" + (config.depth() + 1),
+                        "indexing-settings.sites[0].url=" + mockSite.url(),
+                        "indexing-settings.sites[0].name=Mock",
+                        "search-engine.index-store=" + config.store(),
+                        "search-engine.index-store-path=" + Files.createTempDirectory("replay-index"))
+                .run();
+    }
+
+    /**
+     * Ждёт окончания обхода: статус сайта может стать FAILED раньше,
+     * при первой ошибке загрузки, поэтому проверяется и флаг индексации.
+     */
+    private static Site awaitIndexing(IndexingService indexingService, SiteRepository siteRepository,
+                                      MockSiteConfig config) throws InterruptedException {
+        long deadline = System.nanoTime() + config.timeout().toNanos();
+        while (System.nanoTime() < deadline) {
+            List<Site> sites = siteRepository.findAll();
+            if (!indexingService.isIndexing() && !sites.isEmpty()
+                    && sites.stream().noneMatch(site -> site.getStatus() == Status.INDEXING)) {
+                return sites.get(0);
+            }
+            Thread.sleep(200);
+        }
+        throw new IllegalStateException("Индексация не завершилась за " + config.timeout());
+    }
+
+    private static long count(JdbcTemplate jdbc, String sql) {
+        Long value = jdbc.queryForObject(sql, Long.class);
+        return value == null ? 0 : value;
+    }
+
+    /**
+     * Пик занятой кучи по замерам раз в 50 мс.
+     */
+    private static final class HeapSampler implements AutoCloseable {
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private final AtomicLong peak = new AtomicLong();
+        private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "heap-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        static HeapSampler start() {
+            HeapSampler sampler = new HeapSampler();
+            sampler.executor.scheduleAtFixedRate(sampler::sample, 0, 50, TimeUnit.MILLISECONDS);
+            return sampler;
+        }
+
+        private void sample() {
+            peak.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+        }
+
+        long peak() {
+            sample();
+            return peak.get();
+        }
+
+        @Override
+        public void close() {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package searchengine.benchmark.replay;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Воспроизведение, почему прогон обхода идёт на H2 без MODE=MySQL. Несколько потоков
+ * пакетно вставляют строки в таблицу с AUTO_INCREMENT, не передавая id, — как
+ * JdbcBatchRepository. В режиме MySQL H2 2.1 выдаёт одно значение identity двум
+ * вставкам, и пакет падает на первичном ключе; в обычном режиме та же нагрузка
+ * проходит. Код приложения здесь не участвует, так что ошибка — в H2, а не в обходе.
+ * <p>
+ * Запуск: {@code mvn -Pbenchmark compile exec:exec@h2-identity}
+ */
+public final class H2IdentityCheck {
+
+    private static final int THREADS = 8;
+    private static final int BATCHES = 200;
+    private static final int BATCH_SIZE = 100;
+
+    private H2IdentityCheck() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("default    " + run("jdbc:h2:mem:identity;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1"));
+        System.out.println("MODE=MySQL " + run("jdbc:h2:mem:identity_mysql;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1"));
+    }
+
+    private static String run(String url) throws SQLException, InterruptedException {
+        try (Connection connection = DriverManager.getConnection(url, "sa", "")) {
+            connection.createStatement().execute(
+                    "CREATE TABLE t (id INT AUTO_INCREMENT PRIMARY KEY, v INT NOT NULL)");
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> inserts = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            inserts.add(pool.submit(() -> insert(url)));
+        }
+        String result = "ok: " + THREADS * BATCHES * BATCH_SIZE + " rows";
+        for (Future<?> insert : inserts) {
+            try {
+                insert.get();
+            } catch (ExecutionException e) {
+                result = "failed: " + e.getCause().getMessage().lines().findFirst().orElse("");
+            }
+        }
+        pool.shutdown();
+        return result;
+    }
+
+    private static Void insert(String url) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url, "sa", "");
+             PreparedStatement ps = connection.prepareStatement("INSERT INTO t (v) VALUES (?)")) {
+            for (int batch = 0; batch < BATCHES; batch++) {
+                for (int row = 0; row < BATCH_SIZE; row++) {
+                    ps.setInt(1, row);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,221 @@
+package searchengine.benchmark.replay;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.jsoup.Jsoup;
+import searchengine.benchmark.BenchmarkFixtures;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Синтетический сайт на встроенном HttpServer. Страницы образуют дерево:
+ * у страницы i дочерние i*fanout+1 .. i*fanout+fanout, глубина ограничена depth.
+ * Кроме дочерних, страница ссылается на родителя, на две случайные страницы,
+ * на внешний сайт, на pdf и на якорь — как обычное меню сайта.
+ * Текст собирается из слов зафиксированных страниц benchmark/pages,
+ * содержимое и ошибки детерминированы зерном, так что прогоны повторяемы.
+ * С параметром sitemap сайт отдаёт /sitemap.xml со всеми страницами; lastmod
+ * убывает с номером страницы, так что глубокие страницы оказываются в конце.
+ */
+public final class MockSite implements AutoCloseable {
+
+    private static final String HTML = "text/html";
+    private static final Pattern PAGE_PATH = Pattern.compile("/page/(\\d+)\\.html");
+
+    private final MockSiteConfig config;
+    private final int pageCount;
+    private final List<String> corpus;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final Map<Integer, Boolean> served = new ConcurrentHashMap<>();
+
+    private MockSite(MockSiteConfig config) throws IOException {
+        this.config = config;
+        this.pageCount = countPages(config);
+        this.corpus = loadCorpus();
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "mock-site");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+    }
+
+    public static MockSite start(MockSiteConfig config) throws IOException {
+        MockSite site = new MockSite(config);
+        site.server.start();
+        return site;
+    }
+
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public int pageCount() {
+        return pageCount;
+    }
+
+    public long requests() {
+        return requests.get();
+    }
+
+    public long errors() {
+        return errors.get();
+    }
+
+    public int distinctPagesServed() {
+        return served.size();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try (exchange) {
+            sleep(config.latency().toMillis());
+            if (config.sitemap() && exchange.getRequestURI().getPath().equals("/sitemap.xml")) {
+                respond(exchange, 200, "application/xml", sitemap());
+                return;
+            }
+            int page = pageNumber(exchange.getRequestURI().getPath());
+            if (page < 0) {
+                respond(exchange, 404, HTML, "<html><body>Страница не найдена</body></html>");
+                return;
+            }
+            SplittableRandom random = new SplittableRandom(config.seed() * 1_000_003L + page);
+            if (page != 0 && random.nextDouble() < config.errorRate()) {
+                errors.incrementAndGet();
+                respond(exchange, 500, HTML, "<html><body>Внутренняя ошибка сервера</body></html>");
+                return;
+            }
+            served.put(page, Boolean.TRUE);
+            respond(exchange, 200, HTML, render(page, random));
+        }
+    }
+
+    private void respond(HttpExchange exchange, int code, String contentType, String text) throws IOException {
+        byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+        exchange.sendResponseHeaders(code, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private int pageNumber(String path) {
+        if (path.equals("/") || path.isEmpty()) return 0;
+        Matcher matcher = PAGE_PATH.matcher(path);
+        if (!matcher.matches()) return -1;
+        int page = Integer.parseInt(matcher.group(1));
+        return page < pageCount ? page : -1;
+    }
+
+    private String render(int page, SplittableRandom random) {
+        StringBuilder html = new StringBuilder(config.pageSize() + 1024);
+        String title = words(random, 3 + random.nextInt(4));
+        html.append("<!DOCTYPE html><html lang=\"ru\"><head><meta charset=\"utf-8\"><title>")
+                .append(title).append("</title></head><body>\n<nav><a href=\"/\">Главная</a> ");
+        if (page > 0) {
+            html.append("<a href=\"").append(path((page - 1) / config.fanout())).append("\">Назад</a> ");
+        }
+        html.append("<a href=\"#top\">Наверх</a> <a href=\"/files/price.pdf\">Прайс</a> ")
+                .append("<a href=\"https://example.org/\">Партнёры</a></nav>\n<main><h1>")
+                .append(title).append("</h1>\n");
+
+        int textStart = html.length();
+        while (html.length() - textStart < config.pageSize()) {
+            html.append("<p>").append(words(random, 30 + random.nextInt(50))).append(".</p>\n");
+        }
+        html.append("</main>\n<ul>");
+
+        for (int child = page * config.fanout() + 1;
+             child <= page * config.fanout() + config.fanout() && child < pageCount; child++) {
+            link(html, child, random);
+        }
+        for (int i = 0; i < 2; i++) {
+            link(html, random.nextInt(pageCount), random);
+        }
+        return html.append("</ul>\n</body></html>").toString();
+    }
+
+    private String sitemap() {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n");
+        LocalDate newest = LocalDate.of(2026, 1, 1);
+        for (int page = 0; page < pageCount; page++) {
+            xml.append("<url><loc>").append(url()).append(path(page)).append("</loc><lastmod>")
+                    .append(newest.minusDays(page)).append("</lastmod></url>\n");
+        }
+        return xml.append("</urlset>\n").toString();
+    }
+
+    private void link(StringBuilder html, int page, SplittableRandom random) {
+        html.append("<li><a href=\"").append(path(page)).append("\">")
+                .append(words(random, 2 + random.nextInt(3))).append("</a></li>");
+    }
+
+    private String words(SplittableRandom random, int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) text.append(' ');
+            text.append(corpus.get(random.nextInt(corpus.size())));
+        }
+        return text.toString();
+    }
+
+    private static String path(int page) {
+        return page == 0 ? "/" : "/page/" + page + ".html";
+    }
+
+    private static int countPages(MockSiteConfig config) {
+        long total = 0;
+        long level = 1;
+        for (int d = 0; d <= config.depth() && total < config.pages(); d++) {
+            total += level;
+            level *= config.fanout();
+        }
+        return (int) Math.min(total, config.pages());
+    }
+
+    private static List<String> loadCorpus() {
+        List<String> words = new ArrayList<>();
+        Pattern word = Pattern.compile("[а-яё]{2,}");
+        for (String name : BenchmarkFixtures.PAGES) {
+            Matcher matcher = word.matcher(Jsoup.parse(BenchmarkFixtures.page(name)).text().toLowerCase());
+            while (matcher.find()) words.add(matcher.group());
+        }
+        return words;
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package searchengine.benchmark.replay;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Параметры синтетического сайта и прогона. Задаются аргументами вида key=value,
+ * например: pages=5000 fanout=8 depth=5 pageSize=8192 latency=20ms errorRate=0.01.
+ *
+ * @param pages     максимальное число страниц сайта
+ * @param fanout    число дочерних страниц у каждой страницы
+ * @param depth     глубина дерева страниц (корень — уровень 0)
+ * @param pageSize  примерный размер текста страницы в байтах
+ * @param latency   задержка ответа сервера
+ * @param errorRate доля страниц, отвечающих 500; выбор страниц детерминирован
+ * @param seed      зерно генератора текста и перекрёстных ссылок
+ * @param timeout   максимальное время ожидания окончания обхода
+ * @param sitemap   отдавать /sitemap.xml со всеми страницами сайта
+ * @param jdbcUrl   БД приложения; по умолчанию встроенная H2
+ * @param store     хранилище вхождений: jpa или segments (во временном каталоге)
+ */
+public record MockSiteConfig(int pages, int fanout, int depth, int pageSize, Duration latency,
+                             double errorRate, long seed, Duration timeout, boolean sitemap,
+                             String jdbcUrl, String user, String password, String store) {
+
+    /**
+     * Без MODE=MySQL: в этом режиме H2 2.1 выдаёт повторяющиеся значения identity
+     * при параллельных пакетных вставках, а обход пишет из нескольких потоков.
+     * Ошибка воспроизводится без кода приложения, см. {@link H2IdentityCheck}.
+     */
+    public static final String H2_URL =
+            "jdbc:h2:mem:replay;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    public static MockSiteConfig parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Ожидается аргумент вида key=value: " + arg);
+            }
+            values.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        return new MockSiteConfig(
+                Integer.parseInt(values.getOrDefault("pages", "1000")),
+                Integer.parseInt(values.getOrDefault("fanout", "6")),
+                Integer.parseInt(values.getOrDefault("depth", "4")),
+                Integer.parseInt(values.getOrDefault("pageSize", "6000")),
+                duration(values.getOrDefault("latency", "10ms")),
+                Double.parseDouble(values.getOrDefault("errorRate", "0")),
+                Long.parseLong(values.getOrDefault("seed", "42")),
+                duration(values.getOrDefault("timeout", "10m")),
+                Boolean.parseBoolean(values.getOrDefault("sitemap", "false")),
+                values.getOrDefault("jdbcUrl", H2_URL),
+                values.getOrDefault("user", "sa"),
+                values.getOrDefault("password", ""),
+                values.getOrDefault("store", "jpa"));
+    }
+
+    private static Duration duration(String value) {
+        if (value.endsWith("ms")) return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+        if (value.endsWith("s")) return Duration.ofSeconds(Long.parseLong(value.substring(0, value.length() - 1)));
+        if (value.endsWith("m")) return Duration.ofMinutes(Long.parseLong(value.substring(0, value.length() - 1)));
+        return Duration.ofMillis(Long.parseLong(value));
+    }
+}
@@ -0,0 +1,89 @@
+package searchengine.benchmark.replay;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+
+import java.io.PrintStream;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Время вызовов этапов индексации: публичные методы SiteDataService, LemmaService
+ * и хранилища вхождений, запросы собственных методов репозиториев. Время включающее: saveLemmas
+ * содержит вложенный savePostings, разница между ними — лемматизация.
+ * Не помечен @Component, чтобы не попасть в контекст приложения при сканировании;
+ * регистрируется прогоном вручную.
+ */
+@Aspect
+public class StageTimings {
+
+    private final Map<String, Stage> stages = new ConcurrentHashMap<>();
+
+    @Around("execution(public * searchengine.services.siteops.SiteDataService.*(..))"
+            + " || execution(public * searchengine.services.lemmatization.LemmaService.*(..))"
+            + " || execution(public * searchengine.services.indexstore.IndexStore+.*(..))"
+            + " || execution(public * searchengine.repositories..*.*(..))")
+    public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+        long start = System.nanoTime();
+        try {
+            return joinPoint.proceed();
+        } finally {
+            String name = joinPoint.getSignature().getDeclaringType().getSimpleName()
+                    + "." + joinPoint.getSignature().getName();
+            stages.computeIfAbsent(name, key -> new Stage()).record(System.nanoTime() - start);
+        }
+    }
+
+    public void print(PrintStream out) {
+        out.printf("%-52s %9s %11s %9s %9s %9s %9s%n", "stage", "calls", "total ms", "mean ms", "p50 ms", "p95 ms", "max ms");
+        stages.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<String, Stage> e) -> e.getValue().total.sum()).reversed())
+                .forEach(e -> {
+                    Stage stage = e.getValue();
+                    long calls = stage.calls.sum();
+                    out.printf("%-52s %9d %11.1f %9.3f %9.3f %9.3f %9.3f%n", e.getKey(), calls,
+                            millis(stage.total.sum()), millis(stage.total.sum()) / calls,
+                            millis(stage.percentile(0.5)), millis(stage.percentile(0.95)), millis(stage.max.get()));
+                });
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    /**
+     * Счётчики этапа; перцентили — по гистограмме со степенями двойки,
+     * выводится верхняя граница корзины.
+     */
+    private static final class Stage {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+        private final LongAdder[] buckets = new LongAdder[64];
+
+        private Stage() {
+            for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+        }
+
+        private void record(long nanos) {
+            calls.increment();
+            total.add(nanos);
+            max.accumulate(nanos);
+            buckets[64 - Long.numberOfLeadingZeros(Math.max(nanos, 1))].increment();
+        }
+
+        private long percentile(double quantile) {
+            long target = (long) Math.ceil(calls.sum() * quantile);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i].sum();
+                if (seen >= target) return Math.min(1L << i, max.get());
+            }
+            return max.get();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+-- Схема из db.changelog-master.xml для встроенной H2 (MODE=MySQL)
+CREATE TABLE IF NOT EXISTS site (
+    id          INT AUTO_INCREMENT PRIMARY KEY,
+    status      VARCHAR(255) NOT NULL,
+    status_time TIMESTAMP    NOT NULL,
+    last_error  TEXT,
+    url         VARCHAR(255) NOT NULL,
+    name        VARCHAR(255) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS page (
+    id      INT AUTO_INCREMENT PRIMARY KEY,
+    site_id INT  NOT NULL REFERENCES site (id),
+    path    TEXT NOT NULL,
+    code    INT  NOT NULL,
+    content TEXT NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS lemma (
+    id        INT AUTO_INCREMENT PRIMARY KEY,
+    site_id   INT          NOT NULL REFERENCES site (id),
+    lemma     VARCHAR(255) NOT NULL,
+    frequency INT          NOT NULL,
+    max_rank  FLOAT        DEFAULT 0 NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS `index` (
+    id       INT AUTO_INCREMENT PRIMARY KEY,
+    page_id  INT   NOT NULL REFERENCES page (id),
+    lemma_id INT   NOT NULL REFERENCES lemma (id),
+    `rank`   FLOAT NOT NULL
+);
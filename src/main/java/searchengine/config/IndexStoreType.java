@@ -0,0 +1,9 @@
+package searchengine.config;
+
+/**
+ * Где хранятся вхождения лемм: в таблице index через JPA или в сегментах на локальном диске.
+ */
+public enum IndexStoreType {
+    JPA,
+    SEGMENTS
+}
@@ -0,0 +1,13 @@
+package searchengine.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.PropertySource;
+
+/**
+ * Подключает настройки Actuator по умолчанию: эндпоинт /actuator/prometheus
+ * и гистограммы для таймеров обхода, пакетной записи и поиска.
+ */
+@Configuration
+@PropertySource("classpath:metrics.properties")
+public class MetricsConfig {
+}
@@ -0,0 +1,124 @@
+package searchengine.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+@Configuration
+@RequiredArgsConstructor
+public class PersistenceConfig {
+
+    private static final String MYSQL_URL_PREFIX = "jdbc:mysql:";
+
+    private final SearchEngineProperties properties;
+    private final DataSourceProperties dataSourceProperties;
+    private final Environment environment;
+
+    /**
+     * Пул записи: обход, лемматизация, пакетная запись и всё, что идёт вне
+     * транзакции readOnly. Размер — {@code writePoolSize}.
+     */
+    @Bean
+    public HikariDataSource writeDataSource() {
+        HikariDataSource dataSource = dataSourceProperties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+        return configurePool(dataSource, ReadWriteRoutingDataSource.WRITE, properties.getWritePoolSize());
+    }
+
+    /**
+     * Пул чтения для транзакций readOnly — поиска и статистики, размер {@code readPoolSize}.
+     * Обход, занявший все соединения записи, не задерживает поиск. С {@code readReplicaUrl}
+     * пул подключается к реплике; логин и пароль по умолчанию те же, что у основной БД.
+     */
+    @Bean
+    public HikariDataSource readDataSource() {
+        HikariDataSource dataSource = dataSourceProperties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+        if (hasText(properties.getReadReplicaUrl())) {
+            dataSource.setJdbcUrl(properties.getReadReplicaUrl());
+        }
+        if (hasText(properties.getReadReplicaUsername())) {
+            dataSource.setUsername(properties.getReadReplicaUsername());
+        }
+        if (hasText(properties.getReadReplicaPassword())) {
+            dataSource.setPassword(properties.getReadReplicaPassword());
+        }
+        dataSource.setReadOnly(true);
+        return configurePool(dataSource, ReadWriteRoutingDataSource.READ, properties.getReadPoolSize());
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("writeDataSource") HikariDataSource writeDataSource,
+                                 @Qualifier("readDataSource") HikariDataSource readDataSource) {
+        ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource();
+        routing.setTargetDataSources(Map.of(
+                ReadWriteRoutingDataSource.WRITE, writeDataSource,
+                ReadWriteRoutingDataSource.READ, readDataSource));
+        routing.setDefaultTargetDataSource(writeDataSource);
+        routing.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+
+    /**
+     * Общие настройки spring.datasource.hikari применяются к обоим пулам,
+     * имя и размер у каждого свои.
+     */
+    private HikariDataSource configurePool(HikariDataSource dataSource, String name, int size) {
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(dataSource));
+        dataSource.setPoolName(name);
+        dataSource.setMaximumPoolSize(size);
+        return dataSource;
+    }
+
+    private static boolean hasText(String value) {
+        return value != null && !value.isBlank();
+    }
+
+    /**
+     * Включает пакетную отправку INSERT/UPDATE в Hibernate,
+     * если она не задана явно в конфигурации.
+     */
+    @Bean
+    public HibernatePropertiesCustomizer batchingCustomizer() {
+        return hibernateProperties -> {
+            hibernateProperties.putIfAbsent("hibernate.jdbc.batch_size", properties.getBatchSize());
+            hibernateProperties.putIfAbsent("hibernate.order_inserts", true);
+            hibernateProperties.putIfAbsent("hibernate.order_updates", true);
+        };
+    }
+
+    /**
+     * Драйвер MySQL склеивает пакет в один многострочный INSERT
+     * только при включённом rewriteBatchedStatements.
+     */
+    @Bean
+    public static BeanPostProcessor mysqlBatchRewriter() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof HikariDataSource dataSource
+                        && dataSource.getJdbcUrl() != null
+                        && dataSource.getJdbcUrl().startsWith(MYSQL_URL_PREFIX)) {
+                    dataSource.addDataSourceProperty("rewriteBatchedStatements", "true");
+                }
+                return bean;
+            }
+        };
+    }
+}
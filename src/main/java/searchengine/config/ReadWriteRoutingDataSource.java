@@ -0,0 +1,21 @@
+package searchengine.config;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Отдаёт соединение пула чтения внутри транзакции readOnly и пула записи во всех
+ * остальных случаях. Флаг readOnly выставляется уже после начала транзакции,
+ * поэтому источник работает только за {@code LazyConnectionDataSourceProxy},
+ * который берёт соединение при первом запросе, а не при открытии транзакции.
+ */
+class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+    static final String WRITE = "write";
+    static final String READ = "read";
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return TransactionSynchronizationManager.isCurrentTransactionReadOnly() ? READ : WRITE;
+    }
+}
@@ -4,6 +4,7 @@ import lombok.Getter;
 import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
 
 import java.time.Duration;
 
@@ -22,4 +23,94 @@ public class SearchEngineProperties {
     private int timeout;
 
     private int maxDepth;
+
+    private boolean batchInsert = true;
+
+    private int batchSize = 100;
+
+    private Duration frequencyFlushInterval = Duration.ofSeconds(2);
+
+    private Duration pageQueueWindow = Duration.ofSeconds(1);
+
+    private int pageQueueThreads = 4;
+
+    private int pageQueueCapacity = 10_000;
+
+    private Duration pageJobRetention = Duration.ofMinutes(10);
+
+    private int morphologyCacheSize = 200_000;
+
+    private Duration progressInterval = Duration.ofSeconds(1);
+
+    private Duration statusTimeInterval = Duration.ofSeconds(30);
+
+    private Duration progressRetention = Duration.ofHours(1);
+
+    private Duration statisticsReconcileInterval = Duration.ofMinutes(5);
+
+    private Duration suggestRefreshInterval = Duration.ofMinutes(1);
+
+    private int searchThreads = 4;
+
+    private int searchLimitInitial = 10;
+
+    private int searchLimitMin = 2;
+
+    private int searchLimitMax = 64;
+
+    private int searchQueueCapacity = 100;
+
+    private int searchQueuePerClient = 10;
+
+    private Duration searchQueueTimeout = Duration.ofSeconds(2);
+
+    private int writePoolSize = 10;
+
+    private int readPoolSize = 10;
+
+    private String readReplicaUrl;
+
+    private String readReplicaUsername;
+
+    private String readReplicaPassword;
+
+    private String nodeId;
+
+    private Duration leaseDuration = Duration.ofSeconds(30);
+
+    private Duration leaseHeartbeatInterval = Duration.ofSeconds(10);
+
+    private Duration crawlClaimInterval = Duration.ofSeconds(5);
+
+    private int crawlSitesPerNode = 0;
+
+    private boolean respectRobots = true;
+
+    private Duration maxCrawlDelay = Duration.ofSeconds(10);
+
+    private int crawlConcurrencyInitial = 2;
+
+    private int crawlConcurrencyMin = 1;
+
+    private int crawlConcurrencyMax = 8;
+
+    private Duration maxRetryAfter = Duration.ofMinutes(1);
+
+    private int sitemapMaxUrls = 50_000;
+
+    private int nearDuplicateDistance = 3;
+
+    private DataSize maxBodySize = DataSize.ofMegabytes(2);
+
+    private IndexStoreType indexStore = IndexStoreType.JPA;
+
+    private String indexStorePath = "index-store";
+
+    private int segmentFlushPostings = 200_000;
+
+    private Duration segmentFlushInterval = Duration.ofSeconds(5);
+
+    private int segmentMergeFactor = 8;
+
+    private String suggestSnapshotPath = "suggest-snapshot";
 }
@@ -1,13 +1,24 @@
 package searchengine.controllers;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import searchengine.dto.indexing.PageIndexingJob;
+import searchengine.dto.indexing.SiteProgress;
+import searchengine.dto.response.IndexPageResponse;
 import searchengine.dto.response.IndexingResponse;
 import searchengine.dto.searching.SearchingResponse;
 import searchengine.dto.statistics.StatisticsResponse;
+import searchengine.dto.suggest.SuggestResponse;
+import searchengine.services.search.SearchAdmission;
 import searchengine.services.search.SearchService;
 import searchengine.services.indexing.IndexingService;
 import searchengine.services.statistics.impl.StatisticsServiceImpl;
+import searchengine.services.suggest.LemmaSuggester;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.List;
 
 @RestController
 @RequiredArgsConstructor
@@ -17,6 +28,8 @@ public class ApiController {
     private final IndexingService indexingService;
     private final StatisticsServiceImpl statisticsServiceImpl;
     private final SearchService searchService;
+    private final SearchAdmission searchAdmission;
+    private final LemmaSuggester lemmaSuggester;
 
     @GetMapping("/startIndexing")
     public IndexingResponse startIndexing() {
@@ -35,17 +48,43 @@ public class ApiController {
         return new IndexingResponse(true);
     }
 
+    @GetMapping("/indexing/progress")
+    public List<SiteProgress> indexingProgress() {
+        return indexingService.getProgress();
+    }
+
+    @GetMapping(value = "/indexing/progress/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter indexingProgressStream() {
+        return indexingService.subscribeProgress();
+    }
+
     @PostMapping("/indexPage")
-    public IndexingResponse indexPage(@RequestParam String url) {
-        indexingService.indexPage(url);
-        return new IndexingResponse(true);
+    public IndexPageResponse indexPage(@RequestParam String url) {
+        PageIndexingJob job = indexingService.indexPage(url);
+        return new IndexPageResponse(true, job.getId());
+    }
+
+    @GetMapping("/indexPage/{jobId}")
+    public PageIndexingJob indexPageStatus(@PathVariable String jobId) {
+        return indexingService.getPageJob(jobId);
     }
 
     @GetMapping("/search")
     public SearchingResponse search(@RequestParam String query,
                                     @RequestParam(defaultValue = "") String site,
                                     @RequestParam(defaultValue = "0") int offset,
-                                    @RequestParam(defaultValue = "20") int limit) {
-        return searchService.search(query, site, offset, limit);
+                                    @RequestParam(defaultValue = "20") int limit,
+                                    @RequestParam(defaultValue = "false") boolean explain,
+                                    @RequestParam(defaultValue = "false") boolean pruning,
+                                    HttpServletRequest request) {
+        return searchAdmission.call(request.getRemoteAddr(),
+                () -> searchService.search(query, site, offset, limit, explain, pruning));
+    }
+
+    @GetMapping("/suggest")
+    public SuggestResponse suggest(@RequestParam String query,
+                                   @RequestParam(defaultValue = "") String site,
+                                   @RequestParam(defaultValue = "10") int limit) {
+        return new SuggestResponse(true, lemmaSuggester.suggest(query, site, limit));
     }
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package searchengine.controllers;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -7,6 +8,7 @@ import org.springframework.web.bind.annotation.RestControllerAdvice;
 import searchengine.dto.response.ErrorResponse;
 import searchengine.exception.EntityNotFoundException;
 import searchengine.exception.IndexingException;
+import searchengine.exception.SearchRejectedException;
 
 @RestControllerAdvice
 public class ExceptionHandlerController {
@@ -20,4 +22,11 @@ public class ExceptionHandlerController {
     public ResponseEntity<ErrorResponse> notFound(EntityNotFoundException e) {
         return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ErrorResponse(false, e.getMessage()));
     }
+
+    @ExceptionHandler({SearchRejectedException.class})
+    public ResponseEntity<ErrorResponse> rejected(SearchRejectedException e) {
+        return ResponseEntity.status(e.isClientLimited() ? HttpStatus.TOO_MANY_REQUESTS : HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(new ErrorResponse(false, e.getMessage()));
+    }
 }
@@ -0,0 +1,17 @@
+package searchengine.dto.indexing;
+
+import java.util.List;
+
+/**
+ * Результат однопроходного разбора страницы: заголовок, видимый текст тела,
+ * абсолютные адреса ссылок и адрес из {@code <link rel="canonical">} (может быть null).
+ */
+public record HtmlContent(String title, String text, List<String> links, String canonical) {
+
+    /**
+     * Текст для лемматизации: заголовок и видимый текст страницы.
+     */
+    public String indexText() {
+        return title.isEmpty() ? text : title + " " + text;
+    }
+}
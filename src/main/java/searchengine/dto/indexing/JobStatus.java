@@ -0,0 +1,8 @@
+package searchengine.dto.indexing;
+
+public enum JobStatus {
+    QUEUED,
+    RUNNING,
+    DONE,
+    FAILED
+}
@@ -1,6 +1,4 @@
 package searchengine.dto.indexing;
 
-import org.jsoup.Connection;
-
-public record PageData(Connection connection, int statusCode) {
+public record PageData(String html, HtmlContent content, int statusCode) {
 }
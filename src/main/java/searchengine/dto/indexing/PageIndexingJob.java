@@ -0,0 +1,19 @@
+package searchengine.dto.indexing;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Задание на переиндексацию одной страницы. Поля меняются потоками очереди
+ * и читаются потоками http-запросов, поэтому объявлены volatile.
+ */
+@Data
+public class PageIndexingJob {
+    private final String id;
+    private final String url;
+    private final LocalDateTime submittedAt;
+    private volatile JobStatus status = JobStatus.QUEUED;
+    private volatile String error;
+    private volatile LocalDateTime finishedAt;
+}
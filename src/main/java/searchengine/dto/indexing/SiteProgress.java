@@ -0,0 +1,31 @@
+package searchengine.dto.indexing;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Снимок хода индексации сайта. pagesQueued — найденные, но ещё не обработанные
+ * страницы; etaSeconds считается по текущей скорости и известной очереди
+ * и отсутствует, пока скорость не определена.
+ */
+@Data
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SiteProgress {
+    private Integer siteId;
+    private String url;
+    private String name;
+    private boolean running;
+    private long pagesFetched;
+    private long pagesFailed;
+    private long pagesQueued;
+    private int currentDepth;
+    private long bytes;
+    private double pagesPerSecond;
+    private Long etaSeconds;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+}
@@ -0,0 +1,9 @@
+package searchengine.dto.indexing;
+
+import java.time.Instant;
+
+/**
+ * Адрес из sitemap.xml; lastmod может отсутствовать.
+ */
+public record SitemapEntry(String url, Instant lastmod) {
+}
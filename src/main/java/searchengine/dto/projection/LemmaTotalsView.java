@@ -0,0 +1,4 @@
+package searchengine.dto.projection;
+
+public record LemmaTotalsView(Long lemmas, Long frequency) {
+}
@@ -0,0 +1,4 @@
+package searchengine.dto.projection;
+
+public record LemmaView(Integer id, String lemma, Integer frequency, Integer siteId, Float maxRank) {
+}
@@ -0,0 +1,4 @@
+package searchengine.dto.projection;
+
+public record PagePostingView(Integer indexId, Integer lemmaId, String lemma, Float rank) {
+}
@@ -0,0 +1,4 @@
+package searchengine.dto.projection;
+
+public record PageView(Integer id, String path, Integer siteId) {
+}
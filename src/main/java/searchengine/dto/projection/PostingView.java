@@ -0,0 +1,4 @@
+package searchengine.dto.projection;
+
+public record PostingView(Integer pageId, Float rank) {
+}
@@ -0,0 +1,4 @@
+package searchengine.dto.projection;
+
+public record SiteCountsView(Integer siteId, Long pages, Long lemmas) {
+}
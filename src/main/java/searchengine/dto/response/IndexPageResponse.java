@@ -0,0 +1,15 @@
+package searchengine.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class IndexPageResponse {
+    private Boolean result;
+    private String jobId;
+}
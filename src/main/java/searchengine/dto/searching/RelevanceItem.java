@@ -1,10 +1,10 @@
 package searchengine.dto.searching;
 
 import lombok.Data;
-import searchengine.model.Page;
+import searchengine.dto.projection.PageView;
 
 @Data
 public class RelevanceItem {
-    private final Page page;
+    private final PageView page;
     private final double relevance;
 }
@@ -0,0 +1,57 @@
+package searchengine.dto.searching;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Разбор выполнения поискового запроса, возвращается при explain=true.
+ */
+@Data
+public class SearchExplain {
+    private List<String> queryLemmas;
+    private List<String> missingLemmas;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Pruning pruning;
+    private List<Phase> phases;
+    private List<SiteExplain> sites;
+    private double totalMillis;
+
+    /**
+     * Поиск по одному сайту. Сайты ищутся параллельно, поэтому время их этапов
+     * не складывается в totalMillis. missingLemmas — леммы запроса, которых нет на сайте;
+     * если какая-то из них найдена на другом сайте, страницы этого сайта в выдачу не входят.
+     */
+    public record SiteExplain(int siteId, List<String> missingLemmas, double frequencyThreshold,
+                              List<DroppedLemma> droppedLemmas, List<IntersectionStep> intersection,
+                              @JsonInclude(JsonInclude.Include.NON_NULL) Pruning pruning,
+                              List<Phase> phases) {
+    }
+
+    /**
+     * Этап запроса: суммарное время и число обработанных строк
+     * (лемм, вхождений, страниц или сниппетов — в зависимости от этапа).
+     */
+    public record Phase(String name, double millis, long rows) {
+    }
+
+    /**
+     * Лемма, отброшенная как встречающаяся более чем на 70% страниц своего сайта.
+     */
+    public record DroppedLemma(String lemma, int siteId, int frequency) {
+    }
+
+    /**
+     * Шаг пересечения: сколько вхождений у леммы и сколько страниц осталось после шага.
+     */
+    public record IntersectionStep(String lemma, int postings, int pagesLeft) {
+    }
+
+    /**
+     * Поиск с отсечением: размер top-k, число кандидатов по самой редкой лемме
+     * и сколько из них проверено полностью и подошло.
+     */
+    public record Pruning(int topK, int candidates, int matched, boolean exact) {
+    }
+}
@@ -1,5 +1,6 @@
 package searchengine.dto.searching;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -14,5 +15,12 @@ import java.util.List;
 public class SearchingResponse {
     private String result;
     private Long count;
+    /**
+     * false, если count — оценка: с отсечением проверены не все совпадения
+     * или не для всех совпадений построен сниппет.
+     */
+    private Boolean countExact;
     private List<SearchingData> data;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private SearchExplain explain;
 }
@@ -0,0 +1,8 @@
+package searchengine.dto.suggest;
+
+/**
+ * Дополнение запроса: text — запрос с дополненным последним словом,
+ * frequency — число страниц с леммой на выбранных сайтах.
+ */
+public record SuggestItem(String text, String lemma, int frequency) {
+}
@@ -0,0 +1,19 @@
+package searchengine.exception;
+
+import lombok.Getter;
+
+/**
+ * Поисковый запрос не принят: превышена очередь клиента (clientLimited)
+ * или общая очередь. retryAfterSeconds — через сколько стоит повторить.
+ */
+@Getter
+public class SearchRejectedException extends RuntimeException {
+    private final boolean clientLimited;
+    private final long retryAfterSeconds;
+
+    public SearchRejectedException(String message, boolean clientLimited, long retryAfterSeconds) {
+        super(message);
+        this.clientLimited = clientLimited;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -0,0 +1,28 @@
+package searchengine.indexing;
+
+import searchengine.config.SearchEngineProperties;
+import searchengine.model.Site;
+import searchengine.services.indexing.IndexingProgress;
+import searchengine.services.indexing.PageFetcher;
+import searchengine.services.lemmatization.LemmaService;
+import searchengine.services.metrics.SearchEngineMetrics;
+import searchengine.services.siteops.SiteDataService;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Общее для всех задач одного обхода сайта: сервисы, правила robots.txt,
+ * множество уже найденных путей и детектор дубликатов.
+ */
+public record CrawlContext(Site site,
+                           String root,
+                           ConcurrentHashMap<String, String> visited,
+                           SearchEngineProperties properties,
+                           LemmaService lemmaService,
+                           SiteDataService service,
+                           SearchEngineMetrics metrics,
+                           IndexingProgress progress,
+                           PageFetcher fetcher,
+                           RobotsRules robots,
+                           NearDuplicateDetector duplicates) {
+}
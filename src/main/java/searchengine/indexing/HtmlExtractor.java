@@ -0,0 +1,104 @@
+package searchengine.indexing;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.StreamParser;
+import searchengine.dto.indexing.HtmlContent;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Разбор страницы за один проход потоковым парсером Jsoup: ссылки, canonical,
+ * заголовок и видимый текст. Полное дерево документа не строится — закрытый
+ * элемент сразу раскрывается в родителя, так что в памяти остаются только
+ * открытые элементы и текстовые узлы.
+ */
+public final class HtmlExtractor {
+
+    private HtmlExtractor() {
+    }
+
+    public static HtmlContent extract(String html, String baseUri) {
+        try (StreamParser parser = new StreamParser(Parser.htmlParser()).parse(html, baseUri)) {
+            return extract(parser);
+        }
+    }
+
+    /**
+     * Разбирает документ по мере чтения из {@code html}, не дожидаясь конца тела.
+     * Ошибка чтения выбрасывается как {@link java.io.UncheckedIOException}.
+     */
+    public static HtmlContent extract(Reader html, String baseUri) {
+        try (StreamParser parser = new StreamParser(Parser.htmlParser()).parse(html, baseUri)) {
+            return extract(parser);
+        }
+    }
+
+    private static HtmlContent extract(StreamParser parser) {
+        String title = null;
+        String canonical = null;
+        List<String> links = new ArrayList<>();
+        Iterator<Element> elements = parser.iterator();
+        while (elements.hasNext()) {
+            Element element = elements.next();
+            if (element.parent() == null) continue;
+            switch (element.normalName()) {
+                case "a" -> {
+                    if (element.hasAttr("href")) links.add(resolve(element, "href"));
+                    flatten(element);
+                }
+                case "link" -> {
+                    if (canonical == null && element.attr("rel").equalsIgnoreCase("canonical")
+                            && element.hasAttr("href")) {
+                        canonical = resolve(element, "href");
+                    }
+                    element.remove();
+                }
+                case "title" -> {
+                    if (title == null) title = element.text();
+                    element.remove();
+                }
+                case "head", "script", "style", "template" -> element.remove();
+                case "br" -> element.replaceWith(new TextNode(" "));
+                default -> flatten(element);
+            }
+        }
+        return new HtmlContent(title == null ? "" : title, parser.document().text(), links,
+                canonical == null || canonical.isEmpty() ? null : canonical);
+    }
+
+    /**
+     * Переносит содержимое закрытого элемента в родителя без копирования текста.
+     * Блочный элемент отделяется пробелами, как в {@link Element#text()}.
+     */
+    private static void flatten(Element element) {
+        if (element.isBlock()) {
+            element.before(new TextNode(" "));
+            element.after(new TextNode(" "));
+        }
+        element.unwrap();
+    }
+
+    /**
+     * Абсолютный адрес из атрибута. Абсолютные и корневые ссылки собираются
+     * без разбора {@link java.net.URL}, остальные разрешает Jsoup.
+     */
+    private static String resolve(Element element, String attribute) {
+        String href = element.attr(attribute).trim();
+        if (href.startsWith("https://") || href.startsWith("http://")) return href;
+        if (href.startsWith("/") && !href.startsWith("//")) {
+            String base = element.baseUri();
+            int scheme = base.indexOf("://");
+            if (scheme > 0) {
+                int end = scheme + 3;
+                while (end < base.length() && "/?#".indexOf(base.charAt(end)) < 0) end++;
+                return base.substring(0, end) + href;
+            }
+        }
+        return element.absUrl(attribute);
+    }
+}
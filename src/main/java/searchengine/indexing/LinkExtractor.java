@@ -0,0 +1,60 @@
+package searchengine.indexing;
+
+import searchengine.dto.indexing.HtmlContent;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Отбирает среди ссылок разобранной страницы ссылки на страницы того же сайта
+ * и приводит их к каноническому относительному пути.
+ */
+public final class LinkExtractor {
+
+    private static final Pattern FILE_PATTERN =
+            Pattern.compile(".*\\.(pdf|jpg|jpeg|png|gif|bmp|doc|docx|xls|xlsx|ppt|pptx|webp)$"
+                    ,Pattern.CASE_INSENSITIVE);
+
+    private LinkExtractor() {
+    }
+
+    public static List<String> extractLinks(HtmlContent page, String root) {
+        Set<String> links = new LinkedHashSet<>();
+        for (String link : page.links()) {
+            String path = pagePath(link, root);
+            if (path != null) {
+                links.add(path);
+            }
+        }
+        return new ArrayList<>(links);
+    }
+
+    /**
+     * Канонический путь из {@code <link rel="canonical">}, если он указывает на страницу этого сайта.
+     */
+    public static String canonicalPath(HtmlContent page, String root) {
+        return page.canonical() == null ? null : pagePath(page.canonical(), root);
+    }
+
+    /**
+     * Канонический путь страницы этого сайта или null для внешних ссылок и файлов.
+     */
+    public static String pagePath(String absLink, String root) {
+        String path = UrlCanonicalizer.sitePath(absLink, root);
+        if (path == null) return null;
+        int query = path.indexOf('?');
+        return FILE_PATTERN.matcher(query < 0 ? path : path.substring(0, query)).matches() ? null : path;
+    }
+
+    public static String toShortLink(String link, String root) {
+        String shortLink = link.substring(root.length());
+
+        if (shortLink.isBlank()) shortLink = "/";
+        if (!shortLink.startsWith("/")) shortLink = "/" + shortLink;
+
+        return shortLink;
+    }
+}
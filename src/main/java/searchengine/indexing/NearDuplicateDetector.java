@@ -0,0 +1,108 @@
+package searchengine.indexing;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Поиск почти одинаковых страниц одного обхода по SimHash текста.
+ * Отпечаток — 64 бита, признаки — тройки соседних слов. Страницы считаются
+ * дубликатами, если отпечатки различаются не больше чем в {@code maxDistance} битах.
+ * Отпечаток разбит на maxDistance + 1 полос: у близких отпечатков хотя бы одна
+ * полоса совпадает, поэтому сравниваются только кандидаты из тех же полос.
+ */
+public final class NearDuplicateDetector {
+
+    private static final int SHINGLE = 3;
+    private static final int MIN_WORDS = 20;
+
+    private final int maxDistance;
+    private final int bands;
+    private final int bandBits;
+    private final List<Map<Long, List<Long>>> index = new ArrayList<>();
+
+    public NearDuplicateDetector(int maxDistance) {
+        this.maxDistance = maxDistance;
+        this.bands = Math.max(1, maxDistance + 1);
+        this.bandBits = (int) Math.ceil(64.0 / bands);
+        for (int i = 0; i < bands; i++) index.add(new HashMap<>());
+    }
+
+    /**
+     * Детектор, который ничего не считает дубликатом.
+     */
+    public static NearDuplicateDetector disabled() {
+        return new NearDuplicateDetector(-1);
+    }
+
+    /**
+     * Проверяет текст и, если близкого ещё не было, запоминает его отпечаток.
+     * Короткие тексты не проверяются: у них отпечаток определяется меню и шаблоном.
+     */
+    public boolean isDuplicate(String text) {
+        if (maxDistance < 0) return false;
+        String[] words = text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+");
+        if (words.length < MIN_WORDS) return false;
+        return checkAndAdd(simHash(words));
+    }
+
+    private synchronized boolean checkAndAdd(long fingerprint) {
+        for (int band = 0; band < bands; band++) {
+            List<Long> candidates = index.get(band).get(band(fingerprint, band));
+            if (candidates == null) continue;
+            for (long candidate : candidates) {
+                if (Long.bitCount(candidate ^ fingerprint) <= maxDistance) return true;
+            }
+        }
+        for (int band = 0; band < bands; band++) {
+            index.get(band).computeIfAbsent(band(fingerprint, band), key -> new ArrayList<>()).add(fingerprint);
+        }
+        return false;
+    }
+
+    private long band(long fingerprint, int band) {
+        int shift = band * bandBits;
+        if (shift >= 64) return 0;
+        long mask = bandBits >= 64 ? -1L : (1L << bandBits) - 1;
+        return (fingerprint >>> shift) & mask;
+    }
+
+    static long simHash(String[] words) {
+        int[] weights = new int[64];
+        int start = words[0].isEmpty() ? 1 : 0;
+        for (int i = start; i + SHINGLE <= words.length; i++) {
+            long hash = 0xcbf29ce484222325L;
+            for (int j = i; j < i + SHINGLE; j++) {
+                hash = fnv(hash, words[j]);
+                hash = (hash ^ ' ') * 0x100000001b3L;
+            }
+            hash = mix(hash);
+            for (int bit = 0; bit < 64; bit++) {
+                weights[bit] += ((hash >>> bit) & 1) == 1 ? 1 : -1;
+            }
+        }
+        long fingerprint = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (weights[bit] > 0) fingerprint |= 1L << bit;
+        }
+        return fingerprint;
+    }
+
+    private static long fnv(long hash, String word) {
+        for (int i = 0; i < word.length(); i++) {
+            hash = (hash ^ word.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Финальное перемешивание из SplitMix64: у FNV младшие биты распределены хуже.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
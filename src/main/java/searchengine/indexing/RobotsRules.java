@@ -0,0 +1,190 @@
+package searchengine.indexing;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Правила robots.txt для нашего user-agent (RFC 9309). Выбирается группа, имя
+ * агента которой без учёта регистра равно нашему токену продукта — первому слову
+ * user-agent или слову после «compatible;», из символов «a-zA-Z_-». Иначе группа «*». Из нескольких
+ * подходящих правил побеждает самое длинное, при равной длине — Allow.
+ * Группы с одинаковым агентом объединяются. Поддерживаются шаблоны «*» и «$»,
+ * Crawl-delay и строки Sitemap.
+ */
+public final class RobotsRules {
+
+    private static final Pattern PRODUCT_TOKEN = Pattern.compile("[A-Za-z_-]+");
+    private static final String COMPATIBLE = "compatible;";
+
+    private static final RobotsRules ALLOW_ALL = new RobotsRules(List.of(), null, List.of());
+    private static final RobotsRules DISALLOW_ALL =
+            new RobotsRules(List.of(new Rule("/", false, Pattern.compile("/.*"))), null, List.of());
+
+    private final List<Rule> rules;
+    private final Duration crawlDelay;
+    private final List<String> sitemaps;
+
+    private record Rule(String path, boolean allow, Pattern pattern) {
+    }
+
+    private RobotsRules(List<Rule> rules, Duration crawlDelay, List<String> sitemaps) {
+        this.rules = rules;
+        this.crawlDelay = crawlDelay;
+        this.sitemaps = sitemaps;
+    }
+
+    public static RobotsRules allowAll() {
+        return ALLOW_ALL;
+    }
+
+    public static RobotsRules disallowAll() {
+        return DISALLOW_ALL;
+    }
+
+    public static RobotsRules parse(String text, String userAgent) {
+        String agent = productToken(userAgent);
+        List<String> sitemaps = new ArrayList<>();
+        List<String> groupAgents = new ArrayList<>();
+        List<String[]> groupLines = new ArrayList<>();
+        boolean inRules = false;
+
+        String bestAgent = null;
+        List<String[]> bestLines = new ArrayList<>();
+
+        for (String raw : text.split("\r\n|\r|\n")) {
+            int comment = raw.indexOf('#');
+            String line = (comment >= 0 ? raw.substring(0, comment) : raw).trim();
+            int colon = line.indexOf(':');
+            if (colon <= 0) continue;
+            String key = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+
+            if (key.equals("sitemap")) {
+                if (!value.isEmpty()) sitemaps.add(value);
+                continue;
+            }
+            if (key.equals("user-agent")) {
+                if (inRules) {
+                    String matched = matchAgent(groupAgents, agent);
+                    if (isBetter(matched, bestAgent)) {
+                        bestAgent = matched;
+                        bestLines = groupLines;
+                    } else if (matched != null && matched.equals(bestAgent)) {
+                        bestLines.addAll(groupLines);
+                    }
+                    groupAgents = new ArrayList<>();
+                    groupLines = new ArrayList<>();
+                    inRules = false;
+                }
+                groupAgents.add(value.equals("*") ? value : productToken(value));
+                continue;
+            }
+            if (!groupAgents.isEmpty()) {
+                inRules = true;
+                groupLines.add(new String[]{key, value});
+            }
+        }
+        String matched = matchAgent(groupAgents, agent);
+        if (isBetter(matched, bestAgent)) {
+            bestLines = groupLines;
+        } else if (matched != null && matched.equals(bestAgent)) {
+            bestLines.addAll(groupLines);
+        }
+        return build(bestLines, sitemaps);
+    }
+
+    public boolean isAllowed(String path) {
+        if (rules.isEmpty() || path.equals("/robots.txt")) return true;
+        Rule best = null;
+        for (Rule rule : rules) {
+            if (!rule.pattern().matcher(path).matches()) continue;
+            if (best == null || rule.path().length() > best.path().length()
+                    || (rule.path().length() == best.path().length() && rule.allow())) {
+                best = rule;
+            }
+        }
+        return best == null || best.allow();
+    }
+
+    /**
+     * Задержка между запросами: не меньше настроенной, а Crawl-delay сайта
+     * учитывается не больше чем до {@code max}.
+     */
+    public Duration delay(Duration configured, Duration max) {
+        if (crawlDelay == null) return configured;
+        Duration requested = crawlDelay.compareTo(max) > 0 ? max : crawlDelay;
+        return requested.compareTo(configured) > 0 ? requested : configured;
+    }
+
+    public List<String> getSitemaps() {
+        return sitemaps;
+    }
+
+    private static RobotsRules build(List<String[]> lines, List<String> sitemaps) {
+        List<Rule> rules = new ArrayList<>();
+        Duration crawlDelay = null;
+        for (String[] line : lines) {
+            switch (line[0]) {
+                case "allow", "disallow" -> {
+                    if (line[1].isEmpty()) continue;
+                    rules.add(new Rule(line[1], line[0].equals("allow"), toPattern(line[1])));
+                }
+                case "crawl-delay" -> {
+                    try {
+                        crawlDelay = Duration.ofMillis((long) (Double.parseDouble(line[1]) * 1000));
+                    } catch (NumberFormatException e) {
+                        // нечисловой Crawl-delay игнорируется, как это делают основные поисковики
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+        return new RobotsRules(rules, crawlDelay, Collections.unmodifiableList(sitemaps));
+    }
+
+    private static Pattern toPattern(String path) {
+        boolean anchored = path.endsWith("$");
+        String body = anchored ? path.substring(0, path.length() - 1) : path;
+        StringBuilder regex = new StringBuilder();
+        for (String part : body.split("\\*", -1)) {
+            if (regex.length() > 0) regex.append(".*");
+            regex.append(Pattern.quote(part));
+        }
+        if (!anchored) regex.append(".*");
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    private static String matchAgent(List<String> groupAgents, String agent) {
+        String matched = null;
+        for (String groupAgent : groupAgents) {
+            if (groupAgent.equals("*")) {
+                if (matched == null) matched = groupAgent;
+            } else if (!agent.isEmpty() && groupAgent.equalsIgnoreCase(agent)) {
+                matched = groupAgent;
+            }
+        }
+        return matched;
+    }
+
+    private static boolean isBetter(String candidate, String best) {
+        if (candidate == null) return false;
+        if (best == null) return true;
+        if (best.equals("*")) return !candidate.equals("*");
+        return !candidate.equals("*") && candidate.length() > best.length();
+    }
+
+    private static String productToken(String userAgent) {
+        if (userAgent == null) return "";
+        String agent = userAgent.trim();
+        int compatible = agent.toLowerCase(Locale.ROOT).indexOf(COMPATIBLE);
+        if (compatible >= 0) agent = agent.substring(compatible + COMPATIBLE.length()).trim();
+        Matcher token = PRODUCT_TOKEN.matcher(agent);
+        return token.lookingAt() ? token.group().toLowerCase(Locale.ROOT) : "";
+    }
+}
@@ -0,0 +1,116 @@
+package searchengine.indexing;
+
+import lombok.extern.slf4j.Slf4j;
+import searchengine.dto.indexing.SitemapEntry;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Потоковый разбор sitemap.xml и sitemap-index через StAX: в памяти держится
+ * только текущий элемент, так что размер файла не ограничен памятью.
+ * Учитываются только {@code <url>} и {@code <sitemap>} — прямые потомки корня —
+ * и их прямые потомки {@code <loc>} и {@code <lastmod>}, все в пространстве имён
+ * корня. Расширения вроде {@code <image:loc>} и {@code <video:content_loc>}
+ * лежат глубже и в своём пространстве имён, поэтому адрес страницы не подменяют.
+ */
+@Slf4j
+public final class SitemapReader {
+
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    private SitemapReader() {
+    }
+
+    /**
+     * Читает документ и передаёт адреса страниц в {@code pages}, а адреса вложенных
+     * sitemap из sitemap-index — в {@code sitemaps}. Чтение прекращается,
+     * как только {@code pages} вернёт false.
+     */
+    public static void read(InputStream in, Predicate<SitemapEntry> pages, Consumer<String> sitemaps)
+            throws XMLStreamException {
+        XMLStreamReader reader = FACTORY.createXMLStreamReader(in);
+        try {
+            String namespace = null;
+            int depth = 0;
+            String loc = null;
+            String lastmod = null;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    if (depth == 1) {
+                        namespace = namespace(reader);
+                        continue;
+                    }
+                    if (!namespace.equals(namespace(reader))) continue;
+                    String name = reader.getLocalName();
+                    if (depth == 2 && (name.equals("url") || name.equals("sitemap"))) {
+                        loc = null;
+                        lastmod = null;
+                    } else if (depth == 3 && (name.equals("loc") || name.equals("lastmod"))) {
+                        String text = reader.getElementText().trim();
+                        depth--;
+                        if (name.equals("loc")) {
+                            loc = text;
+                        } else {
+                            lastmod = text;
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                    if (depth != 1 || loc == null || loc.isEmpty() || !namespace.equals(namespace(reader))) continue;
+                    String name = reader.getLocalName();
+                    if (name.equals("url")) {
+                        if (!pages.test(new SitemapEntry(loc, parseLastmod(lastmod)))) return;
+                        loc = null;
+                    } else if (name.equals("sitemap")) {
+                        sitemaps.accept(loc);
+                        loc = null;
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * lastmod в формате W3C Datetime: дата или дата со временем и смещением.
+     */
+    static Instant parseLastmod(String value) {
+        if (value == null || value.isEmpty()) return null;
+        try {
+            if (value.length() == 10) {
+                return LocalDate.parse(value).atStartOfDay().toInstant(ZoneOffset.UTC);
+            }
+            return OffsetDateTime.parse(value).toInstant();
+        } catch (DateTimeParseException e) {
+            log.debug("Unparseable sitemap lastmod {}", value);
+            return null;
+        }
+    }
+
+    private static String namespace(XMLStreamReader reader) {
+        String namespace = reader.getNamespaceURI();
+        return namespace == null ? "" : namespace;
+    }
+
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+}
@@ -0,0 +1,111 @@
+package searchengine.indexing;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Приведение адресов к канонической форме, чтобы варианты одной страницы
+ * загружались и индексировались один раз:
+ * схема и хост в нижнем регистре, без порта по умолчанию и фрагмента;
+ * путь без «.», «..», повторных и завершающего слэша;
+ * параметры запроса без меток отслеживания и отсортированы.
+ * Ссылки на тот же хост по http и https считаются ссылками на один сайт.
+ */
+public final class UrlCanonicalizer {
+
+    private static final Pattern URL = Pattern.compile("^([a-zA-Z][a-zA-Z0-9+.-]*)://([^/?#]*)([^?#]*)(\\?[^#]*)?");
+    private static final Pattern PERCENT = Pattern.compile("%[0-9a-fA-F]{2}");
+    private static final Set<String> TRACKING_PARAMS = Set.of(
+            "gclid", "fbclid", "yclid", "ysclid", "msclkid", "_openstat", "mc_cid", "mc_eid", "_ga", "_gl");
+
+    private UrlCanonicalizer() {
+    }
+
+    /**
+     * Канонический абсолютный адрес или null, если это не http(s)-адрес.
+     */
+    public static String canonicalize(String url) {
+        Matcher matcher = URL.matcher(url.trim());
+        if (!matcher.find()) return null;
+        String scheme = matcher.group(1).toLowerCase(Locale.ROOT);
+        if (!scheme.equals("http") && !scheme.equals("https")) return null;
+        return scheme + "://" + host(scheme, matcher.group(2)) + path(matcher.group(3)) + query(matcher.group(4));
+    }
+
+    /**
+     * Путь с параметрами относительно корня сайта или null, если адрес ведёт на другой сайт.
+     */
+    public static String sitePath(String url, String root) {
+        Matcher link = URL.matcher(url.trim());
+        Matcher site = URL.matcher(root.trim());
+        if (!link.find() || !site.find()) return null;
+        String scheme = link.group(1).toLowerCase(Locale.ROOT);
+        String siteScheme = site.group(1).toLowerCase(Locale.ROOT);
+        if (!scheme.equals("http") && !scheme.equals("https")) return null;
+        if (!hostName(host(scheme, link.group(2))).equals(hostName(host(siteScheme, site.group(2))))) {
+            return null;
+        }
+        String rootPath = path(site.group(3));
+        String path = path(link.group(3));
+        if (!rootPath.equals("/")) {
+            if (!path.equals(rootPath) && !path.startsWith(rootPath + "/")) return null;
+            path = path.equals(rootPath) ? "/" : path.substring(rootPath.length());
+        }
+        return path + query(link.group(4));
+    }
+
+    private static String host(String scheme, String authority) {
+        String host = authority.substring(authority.lastIndexOf('@') + 1).toLowerCase(Locale.ROOT);
+        if (host.endsWith(".")) host = host.substring(0, host.length() - 1);
+        if ((scheme.equals("http") && host.endsWith(":80")) || (scheme.equals("https") && host.endsWith(":443"))) {
+            host = host.substring(0, host.lastIndexOf(':'));
+        }
+        return host;
+    }
+
+    /**
+     * Хост без порта по умолчанию обеих схем: http://site и https://site — один сайт.
+     */
+    private static String hostName(String host) {
+        return host.endsWith(":80") || host.endsWith(":443") ? host.substring(0, host.lastIndexOf(':')) : host;
+    }
+
+    private static String path(String raw) {
+        Deque<String> segments = new ArrayDeque<>();
+        for (String segment : raw.split("/")) {
+            if (segment.isEmpty() || segment.equals(".")) continue;
+            if (segment.equals("..")) {
+                segments.pollLast();
+            } else {
+                segments.addLast(upperPercent(segment));
+            }
+        }
+        return "/" + String.join("/", segments);
+    }
+
+    private static String query(String raw) {
+        if (raw == null || raw.length() <= 1) return "";
+        List<String> params = new ArrayList<>();
+        for (String param : raw.substring(1).split("&")) {
+            if (param.isEmpty()) continue;
+            String name = param.substring(0, param.indexOf('=') < 0 ? param.length() : param.indexOf('='))
+                    .toLowerCase(Locale.ROOT);
+            if (name.startsWith("utm_") || TRACKING_PARAMS.contains(name)) continue;
+            params.add(upperPercent(param));
+        }
+        if (params.isEmpty()) return "";
+        params.sort(null);
+        return "?" + String.join("&", params);
+    }
+
+    private static String upperPercent(String value) {
+        if (value.indexOf('%') < 0) return value;
+        return PERCENT.matcher(value).replaceAll(match -> match.group().toUpperCase(Locale.ROOT));
+    }
+}
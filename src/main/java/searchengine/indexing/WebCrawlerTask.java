@@ -2,79 +2,116 @@ package searchengine.indexing;
 
 import lombok.*;
 import lombok.extern.slf4j.Slf4j;
-import org.jsoup.Connection;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
-import searchengine.config.SearchEngineProperties;
+import searchengine.dto.indexing.HtmlContent;
 import searchengine.dto.indexing.PageData;
 import searchengine.model.Page;
 import searchengine.model.Site;
-import searchengine.services.lemmatization.LemmaService;
-import searchengine.services.siteops.SiteDataService;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.RecursiveTask;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import static java.lang.Thread.sleep;
 
 @AllArgsConstructor
 @Slf4j
-@Builder
 public class WebCrawlerTask extends RecursiveTask<Void> {
 
-    private static final Pattern FILE_PATTERN =
-            Pattern.compile(".*\\.(pdf|jpg|jpeg|png|gif|bmp|doc|docx|xls|xlsx|ppt|pptx|webp)$"
-                    ,Pattern.CASE_INSENSITIVE);
+    private static final String ROBOTS_DISALLOWED = "Обход сайта запрещён в robots.txt";
+    private static final String INTERRUPTED = "Индексация была прервана";
 
-    private final ConcurrentHashMap<String, String> visited;
-    private final SearchEngineProperties properties;
+    private final CrawlContext context;
 
-    private final LemmaService lemmaService;
-    private final SiteDataService service;
-
-    private final Site site;
     private int currentDepth;
-    private final String root;
     private String path;
+    /**
+     * Переиндексация страниц seeds без обхода ссылок; первая же ошибка загрузки
+     * прерывает весь пакет.
+     */
     private boolean onePage;
+    /**
+     * Адреса из sitemap. У корневой задачи — все найденные, у задачи-пакета
+     * (path == null) — её часть; пакеты форкаются в порядке свежести lastmod.
+     */
+    private final List<String> seeds;
+    /**
+     * Ссылки со страницы path, извлечённые родителем при её сохранении,
+     * чтобы не загружать страницу второй раз.
+     */
+    private final List<String> links;
 
     @Override
     protected Void compute() {
-        log.info("Starting compute - {} by {}", Thread.currentThread().getName(), site.getName());
+        Site site = context.site();
+        log.debug("Starting compute - {} by {}", Thread.currentThread().getName(), site.getName());
         if (Thread.currentThread().isInterrupted()) {
             log.warn("Thread is interrupted");
             return null;
         }
-        if (currentDepth >= properties.getMaxDepth()) {
+        if (currentDepth >= context.properties().getMaxDepth()) {
             return null;
         }
         if (onePage) {
-            saveData(Collections.singletonList(path));
+            saveData(seeds);
+            return null;
+        }
+        if (path == null) {
+            List<String> batch = unvisited(seeds);
+            context.progress().discovered(site, batch.size(), currentDepth + 1);
+            Map<String, List<String>> found = saveData(batch);
+            joinAll(forkAll(batch, found));
             return null;
         }
+        List<WebCrawlerTask> subTasks = new ArrayList<>();
+        List<String> pageLinks = links;
         if (currentDepth == 0) {
-            saveData(Collections.singletonList(path));
+            subTasks.addAll(forkSeedBatches());
+            if (!context.robots().isAllowed(checkShortLink(checkAbsoluteLink(path)))) {
+                if (seeds.isEmpty()) {
+                    context.service().updateLastError(site, ROBOTS_DISALLOWED);
+                }
+                joinAll(subTasks);
+                return null;
+            }
+            pageLinks = saveData(Collections.singletonList(path)).getOrDefault(path, List.of());
         }
-        service.updateStatusTime(site);
-        log.debug("StatusTime updated successfully");
+        List<String> linkList = unvisited(pageLinks);
+        context.progress().discovered(site, linkList.size(), currentDepth + 1);
+        Map<String, List<String>> found = saveData(linkList);
 
-        List<WebCrawlerTask> subTasks = new ArrayList<>();
-        List<String> linkList = getChildLinks(path);
-        saveData(linkList);
+        subTasks.addAll(forkAll(linkList, found));
+        joinAll(subTasks);
+        log.debug("Finished compute - {} by {}", Thread.currentThread().getName(), site.getName());
+        return null;
+    }
 
+    private List<WebCrawlerTask> forkAll(List<String> linkList, Map<String, List<String>> found) {
+        List<WebCrawlerTask> subTasks = new ArrayList<>();
         for(String path : linkList) {
             log.debug("Forking subTask for {}", path);
-            WebCrawlerTask task = new WebCrawlerTask(visited, properties, lemmaService
-                    , service, site, currentDepth + 1, root, path, false);
+            WebCrawlerTask task = new WebCrawlerTask(context, currentDepth + 1, path, false,
+                    List.of(), found.getOrDefault(path, List.of()));
             task.fork();
             subTasks.add(task);
         }
+        return subTasks;
+    }
+
+    private List<WebCrawlerTask> forkSeedBatches() {
+        List<WebCrawlerTask> batches = new ArrayList<>();
+        int batchSize = context.properties().getBatchSize();
+        for (int from = 0; from < seeds.size(); from += batchSize) {
+            WebCrawlerTask task = new WebCrawlerTask(context, currentDepth, null, false,
+                    seeds.subList(from, Math.min(from + batchSize, seeds.size())), List.of());
+            task.fork();
+            batches.add(task);
+        }
+        return batches;
+    }
 
+    private void joinAll(List<WebCrawlerTask> subTasks) {
         for(WebCrawlerTask task : subTasks) {
             if (Thread.currentThread().isInterrupted()) {
                 log.warn("Thread is interrupted");
@@ -84,12 +121,26 @@ public class WebCrawlerTask extends RecursiveTask<Void> {
             task.join();
             log.debug("Joined subTask {}", task.path);
         }
-        log.info("Finished compute - {} by {}", Thread.currentThread().getName(), site.getName());
-        return null;
     }
 
-    private void saveData(List<String> linkList) {
+    /**
+     * Загружает и сохраняет страницы; возвращает ссылки с каждой загруженной страницы
+     * по её пути в linkList.
+     */
+    private Map<String, List<String>> saveData(List<String> linkList) {
+        context.metrics().pagesStarted(linkList.size());
+        try {
+            return savePages(linkList);
+        } finally {
+            context.metrics().pagesFinished(linkList.size());
+        }
+    }
+
+    private Map<String, List<String>> savePages(List<String> linkList) {
+        Site site = context.site();
+        Map<String, List<String>> found = new HashMap<>();
         List<Page> pages = new ArrayList<>();
+        Map<Page, String> texts = new IdentityHashMap<>();
         for (String path : linkList) {
             log.debug("Saving data from {} by - {}", path, Thread.currentThread().getName());
             String abs = checkAbsoluteLink(path);
@@ -97,103 +148,110 @@ public class WebCrawlerTask extends RecursiveTask<Void> {
 
             try {
                 PageData pageData = checkContent(abs);
-                if (pageData == null || pageData.connection() == null) {
-                    return;
+                if (pageData == null) {
+                    context.progress().skipped(site);
+                    continue;
                 }
-                Document doc = pageData.connection().get();
+                HtmlContent content = pageData.content();
                 int statusCode = pageData.statusCode();
+                if (!onePage) {
+                    found.put(path, LinkExtractor.extractLinks(content, context.root()));
+                    politenessDelay();
+                    String canonical = LinkExtractor.canonicalPath(content, context.root());
+                    if (canonical != null && !canonical.equals(min)) {
+                        if (!claimCanonical(canonical)) {
+                            log.debug("Page {} is a variant of {}", min, canonical);
+                            skipDuplicate("canonical");
+                            continue;
+                        }
+                        min = canonical;
+                    }
+                    if (context.duplicates().isDuplicate(content.text())) {
+                        log.debug("Page {} is a near-duplicate", min);
+                        skipDuplicate("content");
+                        continue;
+                    }
+                }
 
                 Page page = Page.builder()
                         .site(site)
                         .code(statusCode)
-                        .content(doc.html())
+                        .content(pageData.html())
                         .path(min)
                         .build();
-                log.info("Saving page {}", page.getPath());
+                log.debug("Saving page {}", page.getPath());
                 pages.add(page);
+                texts.put(page, content.indexText());
+                context.progress().fetched(site, page.getContent().getBytes(StandardCharsets.UTF_8).length);
             } catch (IOException e) {
                 log.warn("IOException : {}", e.getMessage());
-                service.updateLastError(site, e.getMessage());
+                context.progress().failed(site);
+                if (onePage) {
+                    throw new UncheckedIOException(e);
+                }
+                context.service().updateLastError(site, e.getMessage());
             }
         }
-        List<Page> saved = service.createPagesBatch(pages);
+        if (onePage) {
+            if (!texts.isEmpty()) context.lemmaService().reindexPages(site, texts);
+            return found;
+        }
+        List<Page> saved = context.service().createPagesBatch(pages);
         saved.stream().filter(Objects::nonNull)
-                .forEach(p -> lemmaService.saveLemmas(site, p, p.getContent()));
+                .forEach(p -> context.lemmaService().saveLemmas(site, p, texts.get(p)));
+        return found;
     }
 
-    private List<String> getChildLinks(String url) {
-        log.debug("Getting child links for {}", url);
-        List<String> links = new ArrayList<>();
-        String abs = checkAbsoluteLink(url);
-
+    private void politenessDelay() {
         try {
-            PageData pageData = checkContent(abs);
-            if (pageData == null || pageData.connection() == null) return links;
-
-            Document doc = pageData.connection().get();
-            Elements elements = doc.select("a[href]");
-
-            for (Element el : elements) {
-                String absLink = el.attr("abs:href");
-
-                if (!absLink.startsWith(root) ||
-                        FILE_PATTERN.matcher(absLink).matches() ||
-                        absLink.contains("#")) {
-                    log.debug("Skipping link {}", absLink);
-                    continue;
-                }
-                links.add(checkShortLink(absLink));
-            }
-
-            sleep(properties.getWaitingTime().toMillis());
-        } catch (IOException e) {
-            log.warn("Exception in method getChildLinks - {}", e.getMessage());
-            service.updateLastError(site, e.getMessage());
+            sleep(context.robots().delay(context.properties().getWaitingTime(),
+                    context.properties().getMaxCrawlDelay()).toMillis());
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
-            service.updateLastError(site, "Индексация была прервана");
+            context.service().updateLastError(context.site(), INTERRUPTED);
         }
+    }
+
+    /**
+     * Страница объявила каноническим другой адрес. Если его ещё никто не загружал,
+     * содержимое сохраняется под каноническим путём, иначе страница пропускается.
+     */
+    private boolean claimCanonical(String canonical) {
+        return context.robots().isAllowed(canonical)
+                && context.visited().putIfAbsent(canonical, canonical) == null
+                && context.service().checkExistingPages(context.site(), List.of(canonical)).isEmpty();
+    }
 
-        Set<String> existingPaths = service.checkExistingPages(links);
+    private void skipDuplicate(String kind) {
+        context.metrics().duplicateSkipped(context.site().getName(), kind);
+        context.progress().skipped(context.site());
+    }
+
+    private List<String> unvisited(List<String> links) {
+        Set<String> existingPaths = context.service().checkExistingPages(context.site(), links);
 
         return links.stream()
+                .filter(context.robots()::isAllowed)
                 .filter(link -> !existingPaths.contains(link))
-                .filter(link -> visited.putIfAbsent(link, link) == null)
+                .filter(link -> context.visited().putIfAbsent(link, link) == null)
                 .collect(Collectors.toList());
     }
 
     private String checkAbsoluteLink(String url) {
-        if (url.startsWith("https://")) {
+        if (url.startsWith("https://") || url.startsWith("http://")) {
             return url;
         }
         if (!url.startsWith("/")) {
             url = "/" + url;
         }
-        return root + url;
+        return context.root() + url;
     }
 
     private String checkShortLink(String link) {
-        String shortLink = link.substring(root.length());
-
-        if (shortLink.isBlank()) shortLink = "/";
-        if (!shortLink.startsWith("/")) shortLink = "/" + shortLink;
-
-        return shortLink;
+        return LinkExtractor.toShortLink(link, context.root());
     }
 
     private PageData checkContent(String abs) throws IOException {
-        Connection connection = Jsoup.connect(abs)
-                .userAgent(properties.getUserAgent())
-                .referrer(properties.getReferrer())
-                .timeout(properties.getTimeout());
-
-        Connection.Response response = connection.ignoreContentType(true).execute();
-
-        String contentType = response.contentType();
-        if (contentType == null || !contentType.startsWith("text/html")) {
-            log.warn("Skipping non-HTML content type: {} from {}", contentType, abs);
-            return null;
-        }
-        return new PageData(connection, response.statusCode());
+        return context.fetcher().fetchPage(context.site().getName(), abs);
     }
 }
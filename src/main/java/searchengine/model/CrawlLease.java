@@ -0,0 +1,33 @@
+package searchengine.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Аренда обхода: узел, который сейчас обходит сайт (name — адрес сайта),
+ * и срок, до которого он обязан продлить аренду. Просроченную аренду
+ * забирает другой узел.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "crawl_lease")
+public class CrawlLease {
+
+    @Id
+    @Column(nullable = false)
+    private String name;
+
+    @Column(nullable = false)
+    private String owner;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+}
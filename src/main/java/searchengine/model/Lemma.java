@@ -10,7 +10,8 @@ import javax.persistence.*;
 @NoArgsConstructor
 @Entity
 @EqualsAndHashCode(of = "lemma")
-@Table(name = "lemma")
+@Table(name = "lemma", uniqueConstraints = @UniqueConstraint(name = "uq_lemma_site_lemma",
+        columnNames = {"site_id", "lemma"}))
 public class Lemma {
 
     @Id
@@ -18,7 +19,8 @@ public class Lemma {
     @Column(nullable = false)
     private Integer id;
 
-    @ManyToOne
+    @ToString.Exclude
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "site_id", nullable = false)
     private Site site;
 
@@ -28,4 +30,11 @@ public class Lemma {
     @Column(nullable = false)
     private Integer frequency;
 
+    /**
+     * Верхняя граница ранга среди вхождений леммы: только растёт,
+     * после удаления страниц может быть больше фактического максимума.
+     */
+    @Column(name = "max_rank", nullable = false)
+    private Float maxRank;
+
 }
@@ -19,7 +19,8 @@ public class Page {
     @Column(nullable = false)
     private Integer id;
 
-    @ManyToOne
+    @ToString.Exclude
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "site_id", nullable = false)
     private Site site;
 
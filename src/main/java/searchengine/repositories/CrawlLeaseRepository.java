@@ -0,0 +1,54 @@
+package searchengine.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import searchengine.model.CrawlLease;
+
+import java.time.LocalDateTime;
+
+/**
+ * Каждая операция с арендой — отдельная транзакция: другие узлы должны увидеть
+ * захват сразу, а ошибка вставки занятой аренды не должна откатывать вызывающего.
+ */
+public interface CrawlLeaseRepository extends JpaRepository<CrawlLease, String> {
+
+    boolean existsByNameAndOwnerNotAndExpiresAtAfter(String name, String owner, LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO crawl_lease (name, owner, expires_at) VALUES (:name, :owner, :expiresAt)",
+            nativeQuery = true)
+    int insert(@Param("name") String name, @Param("owner") String owner,
+               @Param("expiresAt") LocalDateTime expiresAt);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE CrawlLease l SET l.owner = :owner, l.expiresAt = :expiresAt " +
+            "WHERE l.name = :name AND (l.owner = :owner OR l.expiresAt < :now)")
+    int takeOver(@Param("name") String name, @Param("owner") String owner,
+                 @Param("expiresAt") LocalDateTime expiresAt, @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE CrawlLease l SET l.expiresAt = :expiresAt WHERE l.name = :name AND l.owner = :owner")
+    int renew(@Param("name") String name, @Param("owner") String owner,
+              @Param("expiresAt") LocalDateTime expiresAt);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM CrawlLease l WHERE l.name = :name AND l.owner = :owner")
+    int release(@Param("name") String name, @Param("owner") String owner);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM CrawlLease l WHERE l.owner = :owner")
+    int releaseAll(@Param("owner") String owner);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM CrawlLease l")
+    int revokeAll();
+}
@@ -5,20 +5,39 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
+import searchengine.dto.projection.PagePostingView;
+import searchengine.dto.projection.PostingView;
 import searchengine.model.Index;
 import searchengine.model.Page;
 
+import java.util.Collection;
 import java.util.List;
-import java.util.Optional;
 
 public interface IndexRepository extends JpaRepository<Index, Integer> {
-    Optional<Index> findByLemmaIdAndPageId(Integer lemmaId, Integer pageId);
-
-    List<Index> findAllByLemmaId(Integer lemmaId);
     List<Index> findAllByPageId(Integer pageId);
 
     void deleteAllByPageId(Integer id);
 
+    @Query("SELECT new searchengine.dto.projection.PagePostingView(i.id, i.lemma.id, i.lemma.lemma, i.rank) " +
+            "FROM Index i WHERE i.page.id = :pageId")
+    List<PagePostingView> findPagePostingsByPageId(@Param("pageId") Integer pageId);
+
+    @Modifying
+    @Query("DELETE FROM Index i WHERE i.id IN :ids")
+    void deleteAllByIdIn(@Param("ids") Collection<Integer> ids);
+
+    @Query("SELECT DISTINCT i.lemma.id FROM Index i WHERE i.lemma.id IN :lemmaIds")
+    List<Integer> findLemmaIdsByLemmaIdIn(@Param("lemmaIds") Collection<Integer> lemmaIds);
+
+    @Query("SELECT new searchengine.dto.projection.PostingView(i.page.id, i.rank) " +
+            "FROM Index i WHERE i.lemma.id IN :lemmaIds")
+    List<PostingView> findPostingsByLemmaIdIn(@Param("lemmaIds") Collection<Integer> lemmaIds);
+
+    @Query("SELECT new searchengine.dto.projection.PostingView(i.page.id, i.rank) " +
+            "FROM Index i WHERE i.lemma.id IN :lemmaIds AND i.page.id IN :pageIds")
+    List<PostingView> findPostingsByLemmaIdInAndPageIdIn(@Param("lemmaIds") Collection<Integer> lemmaIds,
+                                                         @Param("pageIds") Collection<Integer> pageIds);
+
     @Modifying
     @Transactional
     @Query("DELETE FROM Index i WHERE i.page = :page")
@@ -0,0 +1,115 @@
+package searchengine.repositories;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import searchengine.config.SearchEngineProperties;
+import searchengine.model.Index;
+import searchengine.model.Page;
+import searchengine.services.metrics.SearchEngineMetrics;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@Repository
+@RequiredArgsConstructor
+public class JdbcBatchRepository {
+
+    private static final String INSERT_PAGE =
+            "INSERT INTO page (site_id, path, code, content) VALUES (?, ?, ?, ?)";
+    private static final String INSERT_INDEX =
+            "INSERT INTO `index` (page_id, lemma_id, `rank`) VALUES (?, ?, ?)";
+    private static final String UPDATE_RANK =
+            "UPDATE `index` SET `rank` = ? WHERE id = ?";
+    private static final String INCREMENT_FREQUENCY =
+            "UPDATE lemma SET frequency = frequency + ? WHERE id = ?";
+    private static final String RAISE_MAX_RANK =
+            "UPDATE lemma SET max_rank = GREATEST(max_rank, ?) WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SearchEngineProperties properties;
+    private final SearchEngineMetrics metrics;
+
+    /**
+     * Вставляет страницы пакетами и проставляет им сгенерированные id.
+     * Если драйвер вернул не по одному ключу на строку, бросает исключение,
+     * а не оставляет страницы без id или с чужими id.
+     */
+    public List<Page> insertPages(List<Page> pages) {
+        if (pages.isEmpty()) return pages;
+        return metrics.recordBatch("insert_pages", pages.size(), () -> insertPagesBatched(pages));
+    }
+
+    private List<Page> insertPagesBatched(List<Page> pages) {
+        return jdbcTemplate.execute((ConnectionCallback<List<Page>>) connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(INSERT_PAGE, Statement.RETURN_GENERATED_KEYS)) {
+                int batchSize = properties.getBatchSize();
+                for (int from = 0; from < pages.size(); from += batchSize) {
+                    List<Page> chunk = pages.subList(from, Math.min(from + batchSize, pages.size()));
+                    for (Page page : chunk) {
+                        ps.setInt(1, page.getSite().getId());
+                        ps.setString(2, page.getPath());
+                        ps.setInt(3, page.getCode());
+                        ps.setString(4, page.getContent());
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                    try (ResultSet keys = ps.getGeneratedKeys()) {
+                        int returned = 0;
+                        while (keys.next()) {
+                            if (returned < chunk.size()) chunk.get(returned).setId(keys.getInt(1));
+                            returned++;
+                        }
+                        if (returned != chunk.size()) {
+                            throw new IllegalStateException(String.format(
+                                    "Драйвер вернул %d сгенерированных ключей на %d вставленных страниц",
+                                    returned, chunk.size()));
+                        }
+                    }
+                }
+            }
+            return pages;
+        });
+    }
+
+    public void insertIndexes(List<Index> indexes) {
+        metrics.recordBatch("insert_indexes", indexes.size(), () ->
+                jdbcTemplate.batchUpdate(INSERT_INDEX, indexes, properties.getBatchSize(), (ps, index) -> {
+                    ps.setInt(1, index.getPage().getId());
+                    ps.setInt(2, index.getLemma().getId());
+                    ps.setFloat(3, index.getRank());
+                }));
+    }
+
+    public void incrementFrequencies(Map<Integer, Integer> deltas) {
+        metrics.recordBatch("increment_frequencies", deltas.size(), () ->
+                jdbcTemplate.batchUpdate(INCREMENT_FREQUENCY, new ArrayList<>(deltas.entrySet()),
+                        properties.getBatchSize(), (ps, delta) -> {
+                            ps.setInt(1, delta.getValue());
+                            ps.setInt(2, delta.getKey());
+                        }));
+    }
+
+    public void raiseMaxRanks(Map<Integer, Float> ranks) {
+        metrics.recordBatch("raise_max_ranks", ranks.size(), () ->
+                jdbcTemplate.batchUpdate(RAISE_MAX_RANK, new ArrayList<>(ranks.entrySet()),
+                        properties.getBatchSize(), (ps, rank) -> {
+                            ps.setFloat(1, rank.getValue());
+                            ps.setInt(2, rank.getKey());
+                        }));
+    }
+
+    public void updateRanks(Map<Integer, Float> ranks) {
+        metrics.recordBatch("update_ranks", ranks.size(), () ->
+                jdbcTemplate.batchUpdate(UPDATE_RANK, new ArrayList<>(ranks.entrySet()),
+                        properties.getBatchSize(), (ps, rank) -> {
+                            ps.setFloat(1, rank.getValue());
+                            ps.setInt(2, rank.getKey());
+                        }));
+    }
+}
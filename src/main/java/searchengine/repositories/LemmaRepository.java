@@ -4,33 +4,48 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import searchengine.dto.projection.LemmaTotalsView;
+import searchengine.dto.projection.LemmaView;
 import searchengine.model.Lemma;
-import searchengine.model.Site;
 
+import java.util.Collection;
 import java.util.List;
-import java.util.Optional;
 
 public interface LemmaRepository extends JpaRepository<Lemma, Integer> {
 
     @Modifying
-    @Query("UPDATE Lemma l SET l.frequency = l.frequency + 1 WHERE l.id = :id")
-    void incrementFrequencyById(@Param("id") Integer id);
+    @Query("UPDATE Lemma l SET l.frequency = l.frequency - 1 WHERE l.id IN :ids")
+    void decrementFrequencyByIdIn(@Param("ids") Collection<Integer> ids);
 
-    @Modifying
-    @Query("UPDATE Lemma l SET l.frequency = l.frequency - 1 WHERE l.id = :id")
-    void decrementFrequencyById(@Param("id") Integer id);
+    @Query("SELECT l.id FROM Lemma l WHERE l.id IN :ids AND l.frequency <= 0")
+    List<Integer> findIdsWithZeroFrequency(@Param("ids") Collection<Integer> ids);
 
     @Modifying
-    @Query("DELETE FROM Lemma l WHERE l.frequency <= 0")
-    void deleteAllByFrequencyZero();
+    @Query("DELETE FROM Lemma l WHERE l.site.id = :siteId AND l.id IN :ids AND l.frequency <= 0")
+    int deleteUnusedByIdIn(@Param("siteId") Integer siteId, @Param("ids") Collection<Integer> ids);
+
+    @Query("SELECT l.id FROM Lemma l WHERE l.id IN :ids")
+    List<Integer> findIdsByIdIn(@Param("ids") Collection<Integer> ids);
 
+    @Query("SELECT new searchengine.dto.projection.LemmaView(l.id, l.lemma, l.frequency, l.site.id, l.maxRank) " +
+            "FROM Lemma l WHERE l.site.id = :siteId AND l.lemma IN :lemmas")
+    List<LemmaView> findViewsBySiteIdAndLemmaIn(@Param("siteId") Integer siteId,
+                                                @Param("lemmas") Collection<String> lemmas);
 
-    List<Lemma> findAllByLemma(String lemma);
+    @Query("SELECT new searchengine.dto.projection.LemmaView(l.id, l.lemma, l.frequency, l.site.id, l.maxRank) " +
+            "FROM Lemma l WHERE l.id IN :ids")
+    List<LemmaView> findViewsByIdIn(@Param("ids") Collection<Integer> ids);
 
-    Optional<Lemma> findByLemmaAndSite(String lemma, Site site);
+    @Query("SELECT new searchengine.dto.projection.LemmaView(l.id, l.lemma, l.frequency, l.site.id, l.maxRank) " +
+            "FROM Lemma l WHERE l.site.id = :siteId")
+    List<LemmaView> findViewsBySiteId(@Param("siteId") Integer siteId);
 
     void deleteAllBySiteId(Integer siteId);
 
     Long countLemmaBySiteId(Integer siteId);
 
+    @Query("SELECT new searchengine.dto.projection.LemmaTotalsView(COUNT(l), COALESCE(SUM(l.frequency), 0L)) " +
+            "FROM Lemma l WHERE l.site.id = :siteId")
+    LemmaTotalsView findTotalsBySiteId(@Param("siteId") Integer siteId);
+
 }
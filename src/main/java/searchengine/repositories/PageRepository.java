@@ -1,11 +1,15 @@
 package searchengine.repositories;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import searchengine.dto.projection.PageView;
 import searchengine.model.Page;
 import searchengine.model.Site;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -21,6 +25,22 @@ public interface PageRepository extends JpaRepository<Page, Integer> {
 
     Optional<Page> findByPathAndSite(String path, Site site);
 
-    @Query("SELECT p.path FROM Page p WHERE p.path IN :paths")
-    List<String> findPathsByPathIn(List<String> paths);
+    @Query("SELECT p.path FROM Page p WHERE p.site.id = :siteId AND p.path IN :paths")
+    List<String> findPathsBySiteIdAndPathIn(@Param("siteId") Integer siteId, @Param("paths") Collection<String> paths);
+
+    @Query("SELECT new searchengine.dto.projection.PageView(p.id, p.path, p.site.id) " +
+            "FROM Page p WHERE p.id IN :ids")
+    List<PageView> findViewsByIdIn(@Param("ids") Collection<Integer> ids);
+
+    @Query("SELECT new searchengine.dto.projection.PageView(p.id, p.path, p.site.id) " +
+            "FROM Page p WHERE p.site.id = :siteId AND p.path IN :paths")
+    List<PageView> findViewsBySiteIdAndPathIn(@Param("siteId") Integer siteId,
+                                              @Param("paths") Collection<String> paths);
+
+    @Modifying
+    @Query("UPDATE Page p SET p.code = :code, p.content = :content WHERE p.id = :id")
+    void updateContent(@Param("id") Integer id, @Param("code") Integer code, @Param("content") String content);
+
+    @Query("SELECT p.content FROM Page p WHERE p.id = :id")
+    Optional<String> findContentById(@Param("id") Integer id);
 }
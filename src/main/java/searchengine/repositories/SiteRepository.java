@@ -1,10 +1,32 @@
 package searchengine.repositories;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import searchengine.dto.projection.SiteCountsView;
 import searchengine.model.Site;
+import searchengine.model.Status;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface SiteRepository extends JpaRepository<Site, Integer> {
 
     Optional<Site> findFirstByUrl(String url);
+
+    List<Site> findAllByStatus(Status status);
+
+    boolean existsByStatus(Status status);
+
+    @Modifying
+    @Query("UPDATE Site s SET s.statusTime = :time WHERE s.id IN :ids")
+    void updateStatusTime(@Param("ids") Collection<Integer> ids, @Param("time") LocalDateTime time);
+
+    @Query("SELECT new searchengine.dto.projection.SiteCountsView(s.id, " +
+            "(SELECT COUNT(p) FROM Page p WHERE p.site = s), " +
+            "(SELECT COUNT(l) FROM Lemma l WHERE l.site = s)) FROM Site s")
+    List<SiteCountsView> findSiteCounts();
 }
@@ -0,0 +1,76 @@
+package searchengine.services.indexing;
+
+/**
+ * Предел одновременных загрузок с одного хоста по схеме AIMD. Пока сервер отвечает
+ * быстро, каждый успешный ответ добавляет 1/limit, то есть примерно единицу за окно
+ * из limit запросов. Перегрузка (429, 502–504, тайм-аут) или рост сглаженной задержки
+ * больше чем в {@link #TOLERANCE} раз над базовой уменьшает предел вдвое, но не чаще
+ * раза за сглаженную задержку: ответы, начатые ещё при старом пределе, не снижают его
+ * повторно. Рост меньше {@link #LATENCY_SLACK_NANOS} не учитывается: у быстрых хостов
+ * это дрожание, а не очередь. Результат ограничен [min, max].
+ * <p>
+ * Базовая задержка — наименьшая наблюдавшаяся. Пока предел на минимуме, она медленно
+ * подтягивается к сглаженной: иначе сайт, ставший медленнее насовсем, так и держал бы
+ * предел на минимуме. Выше минимума базовая не растёт, чтобы нагрузка, которую создаёт
+ * сам обход, не принималась за новую норму.
+ * Не потокобезопасен: вызывающий держит свою блокировку.
+ */
+final class AimdLimit {
+
+    static final double TOLERANCE = 2.0;
+    static final double BACKOFF = 0.5;
+    static final long LATENCY_SLACK_NANOS = 5_000_000;
+    private static final double SMOOTHING = 0.2;
+    private static final double BASELINE_DRIFT = 0.01;
+
+    private final int min;
+    private final int max;
+    private double limit;
+    private double smoothedRtt;
+    private double baselineRtt;
+    private long lastDecrease;
+
+    AimdLimit(int initial, int min, int max) {
+        this.min = min;
+        this.max = max;
+        this.limit = Math.max(min, Math.min(max, initial));
+    }
+
+    int limit() {
+        return (int) limit;
+    }
+
+    /**
+     * Учитывает ответ без признаков перегрузки; inFlight — сколько загрузок шло вместе
+     * с этой. Пока предел не занят, задержка ничего не говорит о нём, и он не растёт.
+     * Возвращает false, если предел уменьшен из-за роста задержки.
+     */
+    boolean success(long rttNanos, int inFlight, long now) {
+        double rtt = Math.max(1, rttNanos);
+        smoothedRtt = smoothedRtt == 0 ? rtt : smoothedRtt * (1 - SMOOTHING) + rtt * SMOOTHING;
+        if (baselineRtt == 0 || rtt < baselineRtt) {
+            baselineRtt = rtt;
+        } else if (limit <= min) {
+            baselineRtt += (smoothedRtt - baselineRtt) * BASELINE_DRIFT;
+        }
+        if (smoothedRtt > baselineRtt * TOLERANCE && smoothedRtt - baselineRtt > LATENCY_SLACK_NANOS) {
+            return !decrease(now);
+        }
+        if (inFlight >= limit()) limit = Math.min(max, limit + 1 / limit);
+        return true;
+    }
+
+    /**
+     * Учитывает перегрузку; возвращает true, если предел уменьшен.
+     */
+    boolean overload(long now) {
+        return decrease(now);
+    }
+
+    private boolean decrease(long now) {
+        if (limit <= min || (lastDecrease != 0 && now - lastDecrease < smoothedRtt)) return false;
+        lastDecrease = now;
+        limit = Math.max(min, limit * BACKOFF);
+        return true;
+    }
+}
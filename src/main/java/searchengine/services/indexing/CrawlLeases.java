@@ -0,0 +1,86 @@
+package searchengine.services.indexing;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchEngineProperties;
+import searchengine.repositories.CrawlLeaseRepository;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Аренды обхода в таблице crawl_lease, общей для всех узлов с одной БД.
+ * Узел захватывает свободную или просроченную аренду, продлевает свои раз в
+ * {@code leaseHeartbeatInterval} и освобождает по окончании работы. Срок считается
+ * по часам узла, поэтому {@code leaseDuration} должен заметно превышать и интервал
+ * продления, и расхождение часов между узлами.
+ */
+@Component
+@Slf4j
+public class CrawlLeases {
+
+    private final CrawlLeaseRepository leaseRepository;
+    private final SearchEngineProperties properties;
+    @Getter
+    private final String nodeId;
+
+    public CrawlLeases(CrawlLeaseRepository leaseRepository, SearchEngineProperties properties) {
+        this.leaseRepository = leaseRepository;
+        this.properties = properties;
+        String configured = properties.getNodeId();
+        this.nodeId = configured == null || configured.isBlank()
+                ? ManagementFactory.getRuntimeMXBean().getName() + "-" + UUID.randomUUID().toString().substring(0, 8)
+                : configured;
+        log.info("Crawl node id: {}", nodeId);
+    }
+
+    /**
+     * Захватывает аренду, если её нет, она просрочена или уже принадлежит этому узлу.
+     */
+    public boolean tryClaim(String name) {
+        LocalDateTime now = LocalDateTime.now();
+        if (leaseRepository.takeOver(name, nodeId, expiresAt(now), now) > 0) return true;
+        try {
+            return leaseRepository.insert(name, nodeId, expiresAt(now)) > 0;
+        } catch (DataIntegrityViolationException e) {
+            log.debug("Lease {} is held by another node", name);
+            return false;
+        }
+    }
+
+    /**
+     * Продлевает аренду; false — аренду отозвали или забрал другой узел.
+     */
+    public boolean renew(String name) {
+        return leaseRepository.renew(name, nodeId, expiresAt(LocalDateTime.now())) > 0;
+    }
+
+    /**
+     * Держит ли аренду другой узел, и срок её ещё не истёк.
+     */
+    public boolean heldByOtherNode(String name) {
+        return leaseRepository.existsByNameAndOwnerNotAndExpiresAtAfter(name, nodeId, LocalDateTime.now());
+    }
+
+    public void release(String name) {
+        leaseRepository.release(name, nodeId);
+    }
+
+    public void releaseAll() {
+        leaseRepository.releaseAll(nodeId);
+    }
+
+    /**
+     * Отзывает аренды всех узлов: они заметят это при следующем продлении.
+     */
+    public void revokeAll() {
+        leaseRepository.revokeAll();
+    }
+
+    private LocalDateTime expiresAt(LocalDateTime now) {
+        return now.plus(properties.getLeaseDuration());
+    }
+}
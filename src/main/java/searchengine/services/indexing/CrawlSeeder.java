@@ -0,0 +1,111 @@
+package searchengine.services.indexing;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import searchengine.config.SearchEngineProperties;
+import searchengine.dto.indexing.SitemapEntry;
+import searchengine.indexing.LinkExtractor;
+import searchengine.indexing.RobotsRules;
+import searchengine.indexing.SitemapReader;
+import searchengine.model.Site;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Подготовка обхода сайта: правила robots.txt и стартовые адреса из sitemap.xml.
+ * Адреса из sitemap упорядочены по lastmod — сначала свежие, без даты — в конце.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CrawlSeeder {
+
+    private static final String ROBOTS_PATH = "/robots.txt";
+    private static final String SITEMAP_PATH = "/sitemap.xml";
+    private static final int ROBOTS_MAX_BYTES = 512 * 1024;
+    private static final long SITEMAP_MAX_BYTES = 50L * 1024 * 1024;
+
+    private final SearchEngineProperties properties;
+    private final PageFetcher fetcher;
+
+    /**
+     * Ответ 4xx означает отсутствие ограничений, ошибка сервера или сети —
+     * запрет всего сайта, как требует RFC 9309.
+     */
+    public RobotsRules robots(Site site) {
+        if (!properties.isRespectRobots()) {
+            return RobotsRules.allowAll();
+        }
+        String url = site.getUrl() + ROBOTS_PATH;
+        try (PageFetcher.Response response = fetcher.open(site.getName(), url, ROBOTS_MAX_BYTES)) {
+            int status = response.statusCode();
+            if (status >= 200 && status < 300) {
+                String text = new String(response.body().readAllBytes(), StandardCharsets.UTF_8);
+                RobotsRules rules = RobotsRules.parse(text, properties.getUserAgent());
+                log.info("robots.txt loaded for {}: {} sitemaps", site.getName(), rules.getSitemaps().size());
+                return rules;
+            }
+            if (status >= 400 && status < 500) {
+                return RobotsRules.allowAll();
+            }
+            log.warn("robots.txt of {} answered {}, crawling disallowed", site.getName(), status);
+        } catch (IOException e) {
+            log.warn("robots.txt of {} is unreachable, crawling disallowed: {}", site.getName(), e.getMessage());
+        }
+        return RobotsRules.disallowAll();
+    }
+
+    /**
+     * Адреса страниц сайта из sitemap, перечисленных в robots.txt, или из /sitemap.xml.
+     * Вложенные sitemap-index обходятся в ширину, всего собирается
+     * не больше {@code sitemapMaxUrls} адресов.
+     */
+    public List<String> sitemapSeeds(Site site, RobotsRules robots) {
+        int limit = properties.getSitemapMaxUrls();
+        if (limit <= 0) return List.of();
+
+        Deque<String> queue = new ArrayDeque<>(robots.getSitemaps().isEmpty()
+                ? List.of(site.getUrl() + SITEMAP_PATH) : robots.getSitemaps());
+        Set<String> seenSitemaps = new HashSet<>(queue);
+        Map<String, Instant> seeds = new LinkedHashMap<>();
+
+        while (!queue.isEmpty() && seeds.size() < limit) {
+            String sitemap = queue.poll();
+            readSitemap(site, sitemap, entry -> {
+                String path = LinkExtractor.pagePath(entry.url(), site.getUrl());
+                if (path != null && robots.isAllowed(path)) seeds.putIfAbsent(path, entry.lastmod());
+                return seeds.size() < limit;
+            }, nested -> {
+                if (seenSitemaps.add(nested)) queue.add(nested);
+            });
+        }
+        log.info("Seeded {} pages from sitemaps of {}", seeds.size(), site.getName());
+
+        return seeds.entrySet().stream()
+                .sorted(Map.Entry.comparingByValue(Comparator.nullsLast(Comparator.<Instant>reverseOrder())))
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    private void readSitemap(Site site, String url, Predicate<SitemapEntry> pages, Consumer<String> sitemaps) {
+        try (PageFetcher.Response response = fetcher.open(site.getName(), url, SITEMAP_MAX_BYTES)) {
+            if (response.statusCode() != 200) {
+                log.debug("Sitemap {} answered {}", url, response.statusCode());
+                return;
+            }
+            InputStream body = url.endsWith(".gz") ? new GZIPInputStream(response.body()) : response.body();
+            SitemapReader.read(body, pages, sitemaps);
+        } catch (IOException | XMLStreamException e) {
+            log.warn("Sitemap {} skipped: {}", url, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package searchengine.services.indexing;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchEngineProperties;
+import searchengine.services.metrics.SearchEngineMetrics;
+
+import java.io.Closeable;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ограничение одновременных загрузок с каждого хоста адаптивным пределом
+ * {@link AimdLimit} в границах [{@code crawlConcurrencyMin}, {@code crawlConcurrencyMax}].
+ * Загрузка занимает место до закрытия ответа, задержка считается до заголовков.
+ * Retry-After в ответе 429 или 503 приостанавливает все загрузки с хоста на указанное
+ * время, но не дольше {@code maxRetryAfter}. Потоки сверх предела ждут своей очереди.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class HostConcurrency {
+
+    private static final String INTERRUPTED = "Загрузка прервана";
+
+    private final SearchEngineProperties properties;
+    private final SearchEngineMetrics metrics;
+
+    private final Map<String, Host> hosts = new ConcurrentHashMap<>();
+
+    /**
+     * Место для одной загрузки с хоста; освобождается закрытием.
+     */
+    public final class Permit implements Closeable {
+        private final Host host;
+        private final long start = System.nanoTime();
+        private final int inFlight;
+        private long rtt;
+        private int status;
+        private Duration retryAfter;
+        private boolean timedOut;
+        private boolean released;
+
+        private Permit(Host host, int inFlight) {
+            this.host = host;
+            this.inFlight = inFlight;
+        }
+
+        /**
+         * Получены заголовки ответа; retryAfter — из заголовка Retry-After или null.
+         */
+        public void responded(int status, Duration retryAfter) {
+            this.rtt = System.nanoTime() - start;
+            this.status = status;
+            this.retryAfter = retryAfter;
+        }
+
+        public void timedOut() {
+            this.timedOut = true;
+        }
+
+        @Override
+        public void close() {
+            if (released) return;
+            released = true;
+            host.release(this);
+        }
+    }
+
+    /**
+     * Ждёт места для загрузки с хоста, в том числе конца паузы по Retry-After.
+     */
+    public Permit acquire(String host) throws InterruptedIOException {
+        Host state = hosts.computeIfAbsent(host, this::register);
+        try {
+            return state.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(INTERRUPTED);
+        }
+    }
+
+    private Host register(String host) {
+        Host state = new Host(host, new AimdLimit(properties.getCrawlConcurrencyInitial(),
+                properties.getCrawlConcurrencyMin(), properties.getCrawlConcurrencyMax()));
+        metrics.registerHostConcurrency(host, state::limit, state::inFlight);
+        return state;
+    }
+
+    private static boolean overloaded(int status) {
+        return status == 429 || status == 502 || status == 503 || status == 504;
+    }
+
+    private final class Host {
+        private final String name;
+        private final AimdLimit limit;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition available = lock.newCondition();
+        private int inFlight;
+        private boolean paused;
+        private long pausedUntil;
+
+        private Host(String name, AimdLimit limit) {
+            this.name = name;
+            this.limit = limit;
+        }
+
+        private Permit acquire() throws InterruptedException {
+            lock.lockInterruptibly();
+            try {
+                while (true) {
+                    long pause = pausedUntil - System.nanoTime();
+                    if (paused && pause > 0) {
+                        available.awaitNanos(pause);
+                    } else if (inFlight >= limit.limit()) {
+                        available.await();
+                    } else {
+                        paused = false;
+                        return new Permit(this, ++inFlight);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void release(Permit permit) {
+            lock.lock();
+            try {
+                inFlight--;
+                long now = System.nanoTime();
+                if (permit.timedOut) {
+                    backoff("timeout", limit.overload(now));
+                } else if (overloaded(permit.status)) {
+                    backoff(String.valueOf(permit.status), limit.overload(now));
+                    pause(permit.retryAfter, now);
+                } else if (permit.status > 0 && !limit.success(permit.rtt, permit.inFlight, now)) {
+                    backoff("latency", true);
+                }
+                available.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void backoff(String reason, boolean decreased) {
+            if (!decreased) return;
+            metrics.crawlBackoff(name, reason);
+            log.debug("Fetch concurrency for {} lowered to {} ({})", name, limit.limit(), reason);
+        }
+
+        private void pause(Duration retryAfter, long now) {
+            if (retryAfter == null || retryAfter.isNegative() || retryAfter.isZero()) return;
+            Duration capped = retryAfter.compareTo(properties.getMaxRetryAfter()) > 0
+                    ? properties.getMaxRetryAfter() : retryAfter;
+            long until = now + capped.toNanos();
+            if (!paused || until - pausedUntil > 0) pausedUntil = until;
+            paused = true;
+            log.info("Host {} asked to retry after {} s, pausing fetches for {} s", name,
+                    retryAfter.toSeconds(), capped.toSeconds());
+        }
+
+        private int limit() {
+            lock.lock();
+            try {
+                return limit.limit();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private int inFlight() {
+            lock.lock();
+            try {
+                return inFlight;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
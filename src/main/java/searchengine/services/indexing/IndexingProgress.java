@@ -0,0 +1,220 @@
+package searchengine.services.indexing;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import searchengine.config.SearchEngineProperties;
+import searchengine.dto.indexing.SiteProgress;
+import searchengine.model.Site;
+import searchengine.services.siteops.SiteDataService;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ход индексации по сайтам в памяти. Обходчик только увеличивает счётчики;
+ * фоновый поток раз в progressInterval рассылает снимки подписчикам SSE
+ * и раз в statusTimeInterval одним UPDATE обновляет status_time
+ * индексируемых сайтов, вместо записи в БД на каждую задачу обхода.
+ * Завершённый обход виден ещё progressRetention, а записи удалённых
+ * и сброшенных сайтов убираются сразу.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class IndexingProgress {
+
+    private final SiteDataService siteDataService;
+    private final SearchEngineProperties properties;
+
+    private final Map<Integer, Counters> sites = new ConcurrentHashMap<>();
+    private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService ticker;
+
+    @PostConstruct
+    public void start() {
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "indexing-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long broadcast = properties.getProgressInterval().toMillis();
+        long persist = properties.getStatusTimeInterval().toMillis();
+        ticker.scheduleWithFixedDelay(this::broadcastQuietly, broadcast, broadcast, TimeUnit.MILLISECONDS);
+        ticker.scheduleWithFixedDelay(this::persistQuietly, persist, persist, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        ticker.shutdown();
+        emitters.forEach(SseEmitter::complete);
+    }
+
+    public void started(Site site) {
+        Counters counters = new Counters(site);
+        counters.discovered.increment();
+        sites.put(site.getId(), counters);
+    }
+
+    public void finished(Site site) {
+        Counters counters = sites.get(site.getId());
+        if (counters != null) counters.finish();
+    }
+
+    public void finishedAll() {
+        sites.values().stream()
+                .filter(counters -> counters.finishedAt == null)
+                .forEach(Counters::finish);
+    }
+
+    /**
+     * Данные сайта удалены: его ход больше не показывается.
+     */
+    public void siteRemoved(Integer siteId) {
+        sites.remove(siteId);
+    }
+
+    /**
+     * Все сайты сбрасываются перед новой индексацией: завершённые обходы забываются.
+     */
+    public void clearFinished() {
+        sites.values().removeIf(counters -> counters.finishedAt != null);
+    }
+
+    public void discovered(Site site, int pages, int depth) {
+        Counters counters = running(site);
+        if (counters == null) return;
+        counters.discovered.add(pages);
+        counters.depth.accumulate(depth);
+    }
+
+    public void fetched(Site site, long bytes) {
+        Counters counters = running(site);
+        if (counters == null) return;
+        counters.fetched.increment();
+        counters.bytes.add(bytes);
+    }
+
+    public void skipped(Site site) {
+        Counters counters = running(site);
+        if (counters != null) counters.skipped.increment();
+    }
+
+    public void failed(Site site) {
+        Counters counters = running(site);
+        if (counters != null) counters.failed.increment();
+    }
+
+    public List<SiteProgress> snapshot() {
+        return sites.values().stream()
+                .map(Counters::toProgress)
+                .sorted(Comparator.comparing(SiteProgress::getSiteId))
+                .toList();
+    }
+
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(0L);
+        emitter.onCompletion(() -> emitters.remove(emitter));
+        emitter.onTimeout(() -> emitters.remove(emitter));
+        emitter.onError(e -> emitters.remove(emitter));
+        emitters.add(emitter);
+        send(emitter, snapshot());
+        return emitter;
+    }
+
+    private Counters running(Site site) {
+        Counters counters = sites.get(site.getId());
+        return counters == null || counters.finishedAt != null ? null : counters;
+    }
+
+    private void broadcastQuietly() {
+        evictFinished();
+        if (emitters.isEmpty()) return;
+        List<SiteProgress> progress = snapshot();
+        emitters.forEach(emitter -> send(emitter, progress));
+    }
+
+    private void send(SseEmitter emitter, List<SiteProgress> progress) {
+        try {
+            emitter.send(SseEmitter.event().name("progress").data(progress));
+        } catch (IOException | IllegalStateException e) {
+            emitters.remove(emitter);
+        }
+    }
+
+    private void evictFinished() {
+        LocalDateTime border = LocalDateTime.now().minus(properties.getProgressRetention());
+        sites.values().removeIf(counters -> counters.finishedAt != null && counters.finishedAt.isBefore(border));
+    }
+
+    private void persistQuietly() {
+        try {
+            siteDataService.updateStatusTime(sites.entrySet().stream()
+                    .filter(entry -> entry.getValue().finishedAt == null)
+                    .map(Map.Entry::getKey)
+                    .toList());
+        } catch (RuntimeException e) {
+            log.warn("Failed to persist status time: {}", e.getMessage());
+        }
+    }
+
+    private static final class Counters {
+        private final Site site;
+        private final long startedNanos = System.nanoTime();
+        private final LocalDateTime startedAt = LocalDateTime.now();
+        private final LongAdder discovered = new LongAdder();
+        private final LongAdder fetched = new LongAdder();
+        private final LongAdder skipped = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAccumulator depth = new LongAccumulator(Math::max, 0);
+        private volatile long finishedNanos;
+        private volatile LocalDateTime finishedAt;
+
+        private Counters(Site site) {
+            this.site = site;
+        }
+
+        private void finish() {
+            finishedNanos = System.nanoTime();
+            finishedAt = LocalDateTime.now();
+        }
+
+        private SiteProgress toProgress() {
+            long done = fetched.sum() + skipped.sum() + failed.sum();
+            long queued = finishedAt == null ? Math.max(0, discovered.sum() - done) : 0;
+            long until = finishedAt == null ? System.nanoTime() : finishedNanos;
+            double seconds = (until - startedNanos) / 1e9;
+            double rate = seconds > 0 ? done / seconds : 0;
+            Long eta = finishedAt == null && rate > 0 ? Math.round(queued / rate) : null;
+            return SiteProgress.builder()
+                    .siteId(site.getId())
+                    .url(site.getUrl())
+                    .name(site.getName())
+                    .running(finishedAt == null)
+                    .pagesFetched(fetched.sum())
+                    .pagesFailed(failed.sum())
+                    .pagesQueued(queued)
+                    .currentDepth((int) depth.get())
+                    .bytes(bytes.sum())
+                    .pagesPerSecond(Math.round(rate * 10) / 10.0)
+                    .etaSeconds(eta)
+                    .startedAt(startedAt)
+                    .finishedAt(finishedAt)
+                    .build();
+        }
+    }
+}
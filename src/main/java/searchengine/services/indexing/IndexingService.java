@@ -4,79 +4,249 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import searchengine.config.SearchEngineProperties;
 import searchengine.config.SiteConfig;
 import searchengine.config.SitesList;
+import searchengine.dto.indexing.PageIndexingJob;
+import searchengine.dto.indexing.SiteProgress;
 import searchengine.exception.IndexingException;
+import searchengine.indexing.CrawlContext;
+import searchengine.indexing.NearDuplicateDetector;
+import searchengine.indexing.RobotsRules;
+import searchengine.indexing.UrlCanonicalizer;
 import searchengine.indexing.WebCrawlerTask;
 import searchengine.model.*;
+import searchengine.repositories.PageRepository;
 import searchengine.repositories.SiteRepository;
 import searchengine.services.lemmatization.LemmaService;
+import searchengine.services.metrics.SearchEngineMetrics;
 import searchengine.services.siteops.SiteDataService;
+import searchengine.services.suggest.LemmaSuggester;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
+/**
+ * Полная индексация на одном или нескольких узлах с общей БД. Запуск только
+ * переводит сайты в INDEXING; обходит их тот узел, который захватил аренду сайта
+ * в {@link CrawlLeases}. Каждый узел раз в {@code crawlClaimInterval} берёт не больше
+ * одного сайта без живой аренды, так что сайты расходятся по узлам, и продлевает
+ * аренды своих обходов. Сайт узла, который перестал продлевать аренду, после её
+ * истечения забирает другой узел и обходит заново. Обход сайта целиком остаётся
+ * на одном узле: словарь лемм и счётчики частот сайта живут в его памяти.
+ * Для нескольких узлов нужно хранилище индекса JPA — сегменты лежат на диске узла.
+ * Переиндексация отдельной страницы сайта, который обходит другой узел, отклоняется:
+ * её леммы разошлись бы со словарём и частотами в памяти того узла.
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class IndexingService {
-    private static final AtomicBoolean RUNNING = new AtomicBoolean(false);
+    private static final String START_LEASE = "indexing-start";
 
     private static final String OUTSIDE_CONFIG_FILE =
             "Данная страница находится за пределами сайтов, указанных в конфигурационном файле";
     private static final String ALREADY_STARTED = "Индексация уже запущена";
     private static final String NOT_STARTED = "Индексация не запущена";
+    private static final String CRAWLED_ELSEWHERE = "Сайт индексируется другим узлом";
+    private static final String INTERRUPTED = "Индексация прервана";
 
     private final SearchEngineProperties properties;
     private final SiteDataService siteDataService;
     private final SiteRepository siteRepository;
     private final LemmaService lemmaService;
-
-    private ForkJoinPool pool = new ForkJoinPool();
+    private final SearchEngineMetrics metrics;
+    private final IndexingProgress progress;
+    private final PageIndexingQueue pageIndexingQueue;
+    private final CrawlSeeder crawlSeeder;
+    private final PageFetcher pageFetcher;
+    private final LemmaSuggester lemmaSuggester;
+    private final CrawlLeases leases;
+    private final PageRepository pageRepository;
 
     private final SitesList sites;
 
-    @Transactional
+    /**
+     * Обходы этого узла по адресу сайта.
+     */
+    private final Map<String, Crawl> crawls = new ConcurrentHashMap<>();
+    private ScheduledExecutorService coordinator;
+    private ExecutorService crawlers;
+
+    /**
+     * Обход одного сайта. Флаг lost поднимается, когда узел потерял аренду или обход
+     * остановлен: статус сайта тогда ведёт не этот обход, и аренду он не освобождает.
+     * Флаг принадлежит обходу, а не адресу, поэтому не достаётся следующему обходу сайта.
+     */
+    private record Crawl(ForkJoinPool pool, AtomicBoolean lost) {
+        private Crawl() {
+            this(new ForkJoinPool(), new AtomicBoolean());
+        }
+
+        private void abandon() {
+            lost.set(true);
+            pool.shutdownNow();
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        coordinator = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "crawl-coordinator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger counter = new AtomicInteger();
+        crawlers = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "site-crawler-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        long claim = properties.getCrawlClaimInterval().toMillis();
+        long heartbeat = properties.getLeaseHeartbeatInterval().toMillis();
+        coordinator.scheduleWithFixedDelay(this::claimQuietly, claim, claim, TimeUnit.MILLISECONDS);
+        coordinator.scheduleWithFixedDelay(this::heartbeatQuietly, heartbeat, heartbeat, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Останавливает обходы узла и освобождает его аренды, чтобы другие узлы
+     * забрали сайты сразу, не дожидаясь истечения срока.
+     */
+    @PreDestroy
+    public void stop() {
+        coordinator.shutdownNow();
+        crawls.values().forEach(Crawl::abandon);
+        crawlers.shutdownNow();
+        try {
+            leases.releaseAll();
+        } catch (RuntimeException e) {
+            log.warn("Failed to release crawl leases: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Запуск защищён короткой арендой, чтобы два узла не сбросили сайты одновременно.
+     */
     public void startIndexing() {
-        if (RUNNING.get()) {
+        if (!leases.tryClaim(START_LEASE)) {
             throw new IndexingException(ALREADY_STARTED);
         }
-        ExecutorService executorService = Executors.newFixedThreadPool(sites.getSites().size());
-
-        for (SiteConfig siteConfig : sites.getSites()) {
-            siteDataService.deleteAllBySite(siteConfig);
-            Site entity = siteDataService.createSite(siteConfig);
-            siteDataService.updateStatus(entity, Status.INDEXING);
-            executorService.submit(
-                    () -> indexing(entity, entity.getUrl(), false)
-            );
+        try {
+            if (isIndexing()) {
+                throw new IndexingException(ALREADY_STARTED);
+            }
+            progress.clearFinished();
+            for (SiteConfig siteConfig : sites.getSites()) {
+                siteDataService.deleteAllBySite(siteConfig);
+                siteDataService.createSite(siteConfig, Status.INDEXING);
+            }
+        } finally {
+            leases.release(START_LEASE);
         }
-        executorService.shutdown();
+        coordinator.execute(this::claimQuietly);
     }
 
-    private void indexing(Site entity, String url, boolean isSinglePage) {
-        RUNNING.set(true);
-        log.info("Running set true for - {}", entity.getName());
-        log.info("Indexing started for: {}", entity.getName());
+    /**
+     * Идёт ли индексация на каком-либо узле: у сайта статус INDEXING, пока его
+     * обход не закончен, в том числе пока сайт ждёт узла после сбоя прежнего.
+     */
+    public boolean isIndexing() {
+        return !crawls.isEmpty() || siteRepository.existsByStatus(Status.INDEXING);
+    }
+
+    /**
+     * Захватывает один сайт в INDEXING без живой аренды, если узел не занят
+     * {@code crawlSitesPerNode} обходами.
+     */
+    void claimSites() {
+        int limit = properties.getCrawlSitesPerNode();
+        if (limit > 0 && crawls.size() >= limit) return;
+        for (Site site : siteRepository.findAllByStatus(Status.INDEXING)) {
+            SiteConfig siteConfig = siteConfig(site.getUrl());
+            if (siteConfig == null || crawls.containsKey(site.getUrl()) || !leases.tryClaim(site.getUrl())) {
+                continue;
+            }
+            log.info("Node {} claimed {}", leases.getNodeId(), site.getUrl());
+            Crawl crawl = new Crawl();
+            crawls.put(site.getUrl(), crawl);
+            crawlers.execute(() -> crawl(site, siteConfig, crawl));
+            return;
+        }
+    }
 
+    /**
+     * Продлевает аренды обходов узла; обход, аренду которого отозвали
+     * или забрали, останавливается.
+     */
+    void heartbeat() {
+        for (Map.Entry<String, Crawl> crawl : crawls.entrySet()) {
+            if (!leases.renew(crawl.getKey())) {
+                log.warn("Node {} lost the lease for {}, stopping its crawl", leases.getNodeId(), crawl.getKey());
+                crawl.getValue().abandon();
+            }
+        }
+    }
 
-        if (pool.isShutdown() || pool.isTerminated()) {
-            pool = new ForkJoinPool();
-            log.info("ForkJoinPool restarted");
+    /**
+     * Сайт, у которого уже есть страницы, достался от упавшего узла:
+     * его данные сбрасываются, и обход начинается заново. Страницы считаются
+     * в БД — счётчики статистики знают только о записях своего узла.
+     * Обход убирается из crawls раньше, чем освобождается аренда: иначе продление
+     * успело бы не найти аренду и пометить обход потерянным уже после его конца.
+     */
+    private void crawl(Site site, SiteConfig siteConfig, Crawl crawl) {
+        Site entity = site;
+        try {
+            if (pageRepository.countPageBySiteId(site.getId()) > 0) {
+                log.info("Restarting crawl of {} left by another node", site.getUrl());
+                siteDataService.deleteAllBySite(siteConfig);
+                progress.siteRemoved(site.getId());
+                entity = siteDataService.createSite(siteConfig, Status.INDEXING);
+            }
+            progress.started(entity);
+            indexing(entity, crawl);
+        } catch (RuntimeException e) {
+            log.error("Crawl failed for {}", site.getUrl(), e);
+            if (failed(entity, crawl, e.getMessage())) {
+                progress.finished(entity);
+            }
+        } finally {
+            crawls.remove(site.getUrl(), crawl);
+            if (!crawl.lost().get()) {
+                leases.release(site.getUrl());
+            }
         }
+    }
+
+    private void indexing(Site entity, Crawl crawl) {
+        ForkJoinPool pool = crawl.pool();
+        log.info("Indexing started for: {}", entity.getName());
 
+        siteDataService.prepareLemmas(entity);
+        RobotsRules robots = crawlSeeder.robots(entity);
+        List<String> seeds = crawlSeeder.sitemapSeeds(entity, robots);
         ConcurrentHashMap<String, String> siteMap = new ConcurrentHashMap<>();
-        WebCrawlerTask task = new WebCrawlerTask(
-                siteMap, properties, lemmaService, siteDataService,
-                entity, 0, entity.getUrl(), url, isSinglePage
-        );
+        CrawlContext context = new CrawlContext(entity, entity.getUrl(), siteMap, properties,
+                lemmaService, siteDataService, metrics, progress, pageFetcher, robots,
+                new NearDuplicateDetector(properties.getNearDuplicateDistance()));
+        WebCrawlerTask task = new WebCrawlerTask(context, 0, entity.getUrl(), false, seeds, List.of());
 
         log.info("FJP Invoked tree {} with root {}", task, entity.getName());
-        pool.invoke(task);
+        try {
+            pool.invoke(task);
+        } catch (RuntimeException e) {
+            log.error("Indexing failed for {}", entity.getName(), e);
+            failed(entity, crawl, e.getMessage());
+        }
         pool.shutdown();
 
         try {
@@ -84,25 +254,52 @@ public class IndexingService {
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             log.warn("Indexing interrupted for {}", entity.getName(), e);
+            if (failed(entity, crawl, INTERRUPTED)) {
+                progress.finished(entity);
+            }
             return;
         } finally {
-            RUNNING.set(false);
-            log.info("RUNNING SET FALSE");
+            siteDataService.flushLemmas();
+        }
+        if (crawl.lost().get()) {
+            log.info("Indexing of {} abandoned after losing its lease", entity.getName());
+            return;
         }
         log.info("Indexing finished for: {}", entity.getName());
 
         Site updated = siteRepository.findFirstByUrl(entity.getUrl()).orElse(entity);
-      //        =  siteRepository.findByUrl(entity.getUrl()).orElse(entity);
         Status finalStatus = updated.getStatus().equals(Status.FAILED) ? Status.FAILED : Status.INDEXED;
         siteDataService.updateStatus(updated, finalStatus);
+        progress.finished(updated);
+        lemmaSuggester.rebuild(updated.getId());
+    }
+
+    /**
+     * Сайт обхода, закончившегося ошибкой, переводится в FAILED: в статусе INDEXING
+     * его снова захватил бы какой-нибудь узел, стёр и обошёл заново, и та же ошибка
+     * повторялась бы по кругу. Сайт обхода, потерявшего аренду, остаётся как есть —
+     * его статус ведёт новый владелец или остановка индексации. Возвращает true,
+     * если статус выставлен.
+     */
+    private boolean failed(Site entity, Crawl crawl, String error) {
+        if (crawl.lost().get()) return false;
+        siteDataService.updateLastError(entity, error);
+        return true;
     }
 
+    /**
+     * Останавливает индексацию на всех узлах: аренды отзываются, и остальные узлы
+     * прекращают свои обходы при следующем продлении. Свои обходы помечаются
+     * потерявшими аренду, чтобы они не перезаписали выставленный здесь статус.
+     */
     @Transactional
     public void stopFullIndexing() {
-        if (!RUNNING.get()) {
+        if (!isIndexing()) {
             throw new IndexingException(NOT_STARTED);
         }
-        pool.shutdownNow();
+        crawls.values().forEach(Crawl::abandon);
+        siteDataService.flushLemmas();
+        progress.finishedAll();
 
         for (Site site : siteRepository.findAll()) {
             if (site.getStatus() != Status.INDEXED) {
@@ -111,29 +308,69 @@ public class IndexingService {
             }
             site.setStatusTime(LocalDateTime.now());
             siteRepository.save(site);
+            lemmaSuggester.rebuild(site.getId());
         }
-        RUNNING.set(false);
+        leases.revokeAll();
     }
 
-    @Transactional
-    public void indexPage(String url) {
+    private SiteConfig siteConfig(String url) {
+        return sites.getSites().stream()
+                .filter(siteConfig -> siteConfig.getUrl().equals(url))
+                .findFirst()
+                .orElse(null);
+    }
+
+    private void claimQuietly() {
+        try {
+            claimSites();
+        } catch (RuntimeException e) {
+            log.warn("Crawl claim failed: {}", e.getMessage());
+        }
+    }
+
+    private void heartbeatQuietly() {
+        try {
+            heartbeat();
+        } catch (RuntimeException e) {
+            log.warn("Crawl lease heartbeat failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Ставит страницу в очередь переиндексации и сразу возвращает задание;
+     * статус сайта и флаг полной индексации не меняются. Сайт, которого ещё нет в БД,
+     * создаётся в статусе INDEXED, чтобы узлы не приняли его за сайт, ждущий полного
+     * обхода. Пока сайт обходит другой узел, запрос отклоняется.
+     */
+    public PageIndexingJob indexPage(String url) {
 
         Optional<SiteConfig> found = sites.getSites().stream()
-                .filter(siteConfig -> url.startsWith(siteConfig.getUrl()))
+                .filter(siteConfig -> UrlCanonicalizer.sitePath(url, siteConfig.getUrl()) != null)
                 .findFirst();
         if (found.isEmpty()) {
             throw new IndexingException(OUTSIDE_CONFIG_FILE);
         }
 
-    //    Site entity = siteRepository.findByUrl(found.get().getUrl()).orElseThrow();
-        Site entity = siteRepository.findFirstByUrl(url).orElse(null);
-
-        String path = url.substring(found.get().getUrl().length());
-        if (!path.startsWith("/")) {
-            path = "/" + path;
+        if (leases.heldByOtherNode(found.get().getUrl())) {
+            throw new IndexingException(CRAWLED_ELSEWHERE);
         }
-        siteDataService.deleteDataByPage(path, entity);
-        siteDataService.updateStatus(entity, Status.INDEXING);
-        indexing(entity, path, true);
+
+        Site entity = siteRepository.findFirstByUrl(found.get().getUrl())
+                .orElseGet(() -> siteDataService.createSite(found.get(), Status.INDEXED));
+
+        String path = UrlCanonicalizer.sitePath(url, found.get().getUrl());
+        return pageIndexingQueue.submit(entity, path);
+    }
+
+    public List<SiteProgress> getProgress() {
+        return progress.snapshot();
+    }
+
+    public SseEmitter subscribeProgress() {
+        return progress.subscribe();
+    }
+
+    public PageIndexingJob getPageJob(String jobId) {
+        return pageIndexingQueue.getJob(jobId);
     }
 }
@@ -0,0 +1,429 @@
+package searchengine.services.indexing;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.jsoup.HttpStatusException;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchEngineProperties;
+import searchengine.dto.indexing.HtmlContent;
+import searchengine.dto.indexing.PageData;
+import searchengine.indexing.HtmlExtractor;
+import searchengine.services.metrics.SearchEngineMetrics;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Загрузка страниц общим {@link HttpClient}: HTTP/2 там, где сервер его поддерживает,
+ * повторное использование соединений с хостом, сжатие gzip и deflate.
+ * Тело обрезается на {@code maxBodySize}. {@code timeout} ограничивает всю загрузку
+ * вместе с чтением тела, как у Jsoup: HttpClient сам ждёт с ним только заголовков,
+ * а медленно отдающий тело сервер иначе держал бы поток обхода и место загрузки с хоста.
+ * Поток обхода, ожидающий ответа, отпускается через {@link ForkJoinPool#managedBlock},
+ * чтобы пул индексации на это время мог запустить другую задачу.
+ * Число одновременных загрузок с одного хоста ограничивает {@link HostConcurrency}.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class PageFetcher {
+
+    private static final Pattern CHARSET = Pattern.compile("charset=\"?([^\\s;\"]+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern META_CHARSET =
+            Pattern.compile("<meta[^>]+charset\\s*=\\s*[\"']?([\\w.:-]+)", Pattern.CASE_INSENSITIVE);
+    private static final int META_SNIFF_BYTES = 1024;
+    private static final int FETCH_ATTEMPTS = 2;
+
+    private final SearchEngineProperties properties;
+    private final SearchEngineMetrics metrics;
+    private final HostConcurrency hostConcurrency;
+
+    private HttpClient client;
+    private ScheduledExecutorService deadlines;
+
+    /**
+     * Ответ сервера с распакованным и ограниченным по размеру телом; закрывается вызывающим.
+     * retryAfter — значение заголовка Retry-After или null.
+     */
+    public record Response(String url, int statusCode, String contentType, Duration retryAfter,
+                           InputStream body) implements Closeable {
+        @Override
+        public void close() throws IOException {
+            body.close();
+        }
+
+        public boolean isHtml() {
+            return contentType != null && contentType.toLowerCase(Locale.ROOT).startsWith("text/html");
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofMillis(properties.getTimeout()))
+                .build();
+        deadlines = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fetch-deadline");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        deadlines.shutdownNow();
+    }
+
+    /**
+     * Загружает HTML-страницу и разбирает её за один проход {@link HtmlExtractor}
+     * по мере получения тела; текст страницы для сохранения копируется при разборе.
+     * Ответ 4xx/5xx приводит к {@link HttpStatusException}, как при загрузке через Jsoup;
+     * для прочих типов содержимого возвращается null, тело при этом не скачивается.
+     * Ответ 429 или 503 с Retry-After повторяется один раз после паузы, которую
+     * выдерживает {@link HostConcurrency}.
+     */
+    public PageData fetchPage(String site, String url) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try (Response response = open(site, url)) {
+                if (response.statusCode() >= 400) {
+                    if (attempt < FETCH_ATTEMPTS && response.retryAfter() != null
+                            && (response.statusCode() == 429 || response.statusCode() == 503)) {
+                        log.debug("Retrying {} after {}", url, response.statusCode());
+                        continue;
+                    }
+                    throw new HttpStatusException("HTTP error fetching URL", response.statusCode(), url);
+                }
+                if (!response.isHtml()) {
+                    log.debug("Skipping non-HTML content type: {} from {}", response.contentType(), url);
+                    return null;
+                }
+                CopyingReader html = new CopyingReader(reader(response.body(), response.contentType()));
+                try {
+                    HtmlContent content = HtmlExtractor.extract(new BufferedReader(html), response.url());
+                    html.skipRemaining();
+                    return new PageData(html.copy(), content, response.statusCode());
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            }
+        }
+    }
+
+    /**
+     * Выполняет GET и возвращает ответ с любым статусом; тело ограничено {@code maxBodySize}.
+     */
+    public Response open(String site, String url) throws IOException {
+        return open(site, url, properties.getMaxBodySize().toBytes());
+    }
+
+    public Response open(String site, String url, long maxBytes) throws IOException {
+        HttpRequest request;
+        try {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                    .timeout(Duration.ofMillis(properties.getTimeout()))
+                    .header("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8")
+                    .header("Accept-Encoding", "gzip, deflate")
+                    .GET();
+            if (properties.getUserAgent() != null) builder.header("User-Agent", properties.getUserAgent());
+            if (properties.getReferrer() != null) builder.header("Referer", properties.getReferrer());
+            request = builder.build();
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Некорректный адрес: " + url, e);
+        }
+
+        HostConcurrency.Permit permit = hostConcurrency.acquire(request.uri().getAuthority());
+        long start = System.nanoTime();
+        HttpResponse<InputStream> response;
+        try {
+            response = await(client.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream()));
+        } catch (IOException e) {
+            if (e instanceof HttpTimeoutException) permit.timedOut();
+            permit.close();
+            metrics.recordFetch(site, 0, start);
+            throw e;
+        }
+        metrics.recordFetch(site, response.statusCode(), start);
+        Duration retryAfter = retryAfter(response.headers());
+        permit.responded(response.statusCode(), retryAfter);
+
+        String contentType = response.headers().firstValue("Content-Type").orElse(null);
+        InputStream body;
+        try {
+            body = decode(response.body(), response.headers().firstValue("Content-Encoding").orElse(""));
+        } catch (IOException e) {
+            response.body().close();
+            permit.close();
+            throw e;
+        }
+        BodyStream limited = new BodyStream(body, response.body(), maxBytes, permit);
+        long timeout = TimeUnit.MILLISECONDS.toNanos(properties.getTimeout());
+        limited.expireAfter(deadlines, timeout - (System.nanoTime() - start));
+        return new Response(response.uri().toString(), response.statusCode(), contentType, retryAfter, limited);
+    }
+
+    /**
+     * Retry-After в секундах или HTTP-датой; null, если заголовка нет или он не разобран.
+     */
+    private static Duration retryAfter(HttpHeaders headers) {
+        String value = headers.firstValue("Retry-After").map(String::trim).orElse(null);
+        if (value == null || value.isEmpty()) return null;
+        try {
+            return Duration.ofSeconds(Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            // не число — значит, дата
+        }
+        try {
+            Instant until = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return Duration.between(Instant.now(), until);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                @Override
+                public boolean block() throws InterruptedException {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        // причина будет получена ниже из get
+                    }
+                    return true;
+                }
+
+                @Override
+                public boolean isReleasable() {
+                    return future.isDone();
+                }
+            });
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Загрузка прервана");
+        }
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            throw new IOException(e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Загрузка прервана");
+        }
+    }
+
+    private static InputStream decode(InputStream body, String encoding) throws IOException {
+        return switch (encoding.trim().toLowerCase(Locale.ROOT)) {
+            case "gzip", "x-gzip" -> new GZIPInputStream(body);
+            case "deflate" -> new InflaterInputStream(body);
+            default -> body;
+        };
+    }
+
+    /**
+     * Читает тело страницы как текст. Кодировка берётся из BOM, затем из Content-Type,
+     * затем из {@code <meta charset>} в начале документа; по умолчанию — UTF-8.
+     */
+    private static Reader reader(InputStream body, String contentType) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(body);
+        in.mark(META_SNIFF_BYTES);
+        byte[] head = in.readNBytes(META_SNIFF_BYTES);
+        in.reset();
+        if (head.length >= 3 && (head[0] & 0xff) == 0xef && (head[1] & 0xff) == 0xbb && (head[2] & 0xff) == 0xbf) {
+            in.skipNBytes(3);
+            return new InputStreamReader(in, StandardCharsets.UTF_8);
+        }
+        if (head.length >= 2 && (head[0] & 0xff) == 0xfe && (head[1] & 0xff) == 0xff) {
+            in.skipNBytes(2);
+            return new InputStreamReader(in, StandardCharsets.UTF_16BE);
+        }
+        if (head.length >= 2 && (head[0] & 0xff) == 0xff && (head[1] & 0xff) == 0xfe) {
+            in.skipNBytes(2);
+            return new InputStreamReader(in, StandardCharsets.UTF_16LE);
+        }
+        Charset charset = charset(contentType == null ? null : CHARSET.matcher(contentType));
+        if (charset == null) {
+            charset = charset(META_CHARSET.matcher(new String(head, StandardCharsets.ISO_8859_1)));
+        }
+        return new InputStreamReader(in, charset == null ? StandardCharsets.UTF_8 : charset);
+    }
+
+    private static Charset charset(Matcher matcher) {
+        if (matcher == null || !matcher.find()) return null;
+        try {
+            return Charset.isSupported(matcher.group(1)) ? Charset.forName(matcher.group(1)) : null;
+        } catch (IllegalCharsetNameException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Тело ответа: обрезается на заданном размере, как maxBodySize у Jsoup, и читается
+     * не дольше срока загрузки. По истечении срока поток {@code fetch-deadline} закрывает
+     * исходный поток HttpClient, что прерывает и заблокированное чтение, и чтение
+     * завершается {@link HttpTimeoutException}. Закрытие освобождает место загрузки с хоста.
+     */
+    private static final class BodyStream extends FilterInputStream {
+        private final InputStream raw;
+        private final HostConcurrency.Permit permit;
+        private long remaining;
+        private volatile boolean expired;
+        private ScheduledFuture<?> deadline;
+
+        private BodyStream(InputStream in, InputStream raw, long limit, HostConcurrency.Permit permit) {
+            super(in);
+            this.raw = raw;
+            this.remaining = limit;
+            this.permit = permit;
+        }
+
+        private void expireAfter(ScheduledExecutorService deadlines, long nanos) {
+            deadline = deadlines.schedule(this::expire, Math.max(0, nanos), TimeUnit.NANOSECONDS);
+        }
+
+        private void expire() {
+            expired = true;
+            try {
+                raw.close();
+            } catch (IOException e) {
+                log.debug("Failed to abort a response body: {}", e.getMessage());
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (deadline != null) deadline.cancel(false);
+            try {
+                super.close();
+            } finally {
+                permit.close();
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) return -1;
+            try {
+                int value = super.read();
+                if (value >= 0) {
+                    remaining--;
+                } else if (expired) {
+                    throw timedOut();
+                }
+                return value;
+            } catch (IOException e) {
+                throw expired ? timedOut() : e;
+            }
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) return -1;
+            try {
+                int read = super.read(buffer, offset, (int) Math.min(length, remaining));
+                if (read > 0) {
+                    remaining -= read;
+                } else if (read < 0 && expired) {
+                    throw timedOut();
+                }
+                return read;
+            } catch (IOException e) {
+                throw expired ? timedOut() : e;
+            }
+        }
+
+        private HttpTimeoutException timedOut() {
+            permit.timedOut();
+            return new HttpTimeoutException("Время загрузки страницы истекло");
+        }
+    }
+
+    /**
+     * Копирует прочитанный парсером текст, чтобы сохранить страницу без второго чтения тела.
+     * Jsoup требует mark и reset, поэтому читает его через {@link BufferedReader}:
+     * возвраты идут в его буфере, и каждый символ проходит здесь ровно один раз.
+     * Закрытие, которым парсер завершает разбор, пропускается: тело после него
+     * дочитывается, а закрывает его {@link Response}.
+     */
+    private static final class CopyingReader extends FilterReader {
+        private final StringBuilder copy = new StringBuilder();
+
+        private CopyingReader(Reader in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value >= 0) copy.append((char) value);
+            return value;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) copy.append(buffer, offset, read);
+            return read;
+        }
+
+        @Override
+        public void close() {
+            // тело закрывает Response
+        }
+
+        /**
+         * Дочитывает то, что парсер не запросил, чтобы сохранённая страница была полной.
+         */
+        private void skipRemaining() throws IOException {
+            char[] buffer = new char[8192];
+            while (read(buffer, 0, buffer.length) >= 0) {
+                // копия пополняется в read
+            }
+        }
+
+        private String copy() {
+            return copy.toString();
+        }
+    }
+}
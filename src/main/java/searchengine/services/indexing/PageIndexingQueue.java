@@ -0,0 +1,236 @@
+package searchengine.services.indexing;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import searchengine.config.SearchEngineProperties;
+import searchengine.dto.indexing.JobStatus;
+import searchengine.dto.indexing.PageIndexingJob;
+import searchengine.exception.EntityNotFoundException;
+import searchengine.exception.IndexingException;
+import searchengine.indexing.CrawlContext;
+import searchengine.indexing.NearDuplicateDetector;
+import searchengine.indexing.RobotsRules;
+import searchengine.indexing.WebCrawlerTask;
+import searchengine.model.Site;
+import searchengine.services.lemmatization.LemmaService;
+import searchengine.services.metrics.SearchEngineMetrics;
+import searchengine.services.siteops.SiteDataService;
+import searchengine.services.suggest.LemmaSuggester;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Очередь переиндексации отдельных страниц. Повторные запросы того же url, ещё не
+ * взятого в работу, сливаются в одно задание. Страницы обрабатываются собственным
+ * пулом из {@code pageQueueThreads} потоков, не затрагивая пул полной индексации.
+ * Накопившиеся за окно {@code pageQueueWindow} страницы одного сайта обрабатываются
+ * пакетами до {@code batchSize} страниц: страницы и их вхождения записываются
+ * одной транзакцией. Если пакет не удался, его страницы переиндексируются по одной,
+ * чтобы ошибка одной страницы не отменяла остальные.
+ * <p>
+ * Страница попадает в пакет, только когда есть свободный поток и этот url сейчас не
+ * обрабатывается; до тех пор она остаётся в очереди, размер которой ограничен
+ * {@code pageQueueCapacity}. Так одну страницу никогда не переиндексируют два потока
+ * сразу, а запрос, пришедший во время обработки, выполняется после неё.
+ * Частоты лемм сбрасываются в БД, когда пул простаивает, и не реже раза за окно;
+ * словари подсказок изменённых сайтов перестраиваются не чаще раза за
+ * {@code suggestRefreshInterval}. Задание, дождавшееся очереди, когда сайт уже
+ * захватил для обхода другой узел, завершается ошибкой, не трогая страницу.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PageIndexingQueue {
+
+    private static final String QUEUE_FULL = "Очередь индексации страниц переполнена";
+    private static final String JOB_NOT_FOUND = "Задание не найдено";
+    private static final String CRAWLED_ELSEWHERE = "Сайт индексируется другим узлом";
+
+    private final SearchEngineProperties properties;
+    private final LemmaService lemmaService;
+    private final SearchEngineMetrics metrics;
+    private final IndexingProgress progress;
+    private final SiteDataService siteDataService;
+    private final PageFetcher pageFetcher;
+    private final LemmaSuggester lemmaSuggester;
+    private final CrawlLeases leases;
+
+    private final Map<String, QueuedPage> pending = new ConcurrentHashMap<>();
+    private final Map<String, PageIndexingJob> jobs = new ConcurrentHashMap<>();
+    private final Set<String> running = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger busy = new AtomicInteger();
+    private final Set<Integer> dirtySites = new HashSet<>();
+    private final Set<Integer> staleSuggestions = new HashSet<>();
+    private long lastFlush = System.nanoTime();
+    private long lastSuggestRefresh;
+
+    private ScheduledExecutorService drainer;
+    private ExecutorService workers;
+
+    private record QueuedPage(Site site, String path, PageIndexingJob job) {
+    }
+
+    @PostConstruct
+    public void start() {
+        drainer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "page-queue-drainer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger counter = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(properties.getPageQueueThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "page-indexer-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        lastSuggestRefresh = System.nanoTime() - properties.getSuggestRefreshInterval().toNanos();
+        long window = properties.getPageQueueWindow().toMillis();
+        drainer.scheduleWithFixedDelay(this::drainQuietly, window, window, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        drainer.shutdown();
+        workers.shutdown();
+    }
+
+    /**
+     * Ставит страницу в очередь. Если этот url уже ждёт обработки,
+     * возвращается существующее задание.
+     */
+    public PageIndexingJob submit(Site site, String path) {
+        String url = site.getUrl() + path;
+        return pending.computeIfAbsent(url, key -> {
+            if (pending.size() >= properties.getPageQueueCapacity()) {
+                throw new IndexingException(QUEUE_FULL);
+            }
+            PageIndexingJob job = new PageIndexingJob(UUID.randomUUID().toString(), key, LocalDateTime.now());
+            jobs.put(job.getId(), job);
+            return new QueuedPage(site, path, job);
+        }).job();
+    }
+
+    public PageIndexingJob getJob(String id) {
+        return Optional.ofNullable(jobs.get(id))
+                .orElseThrow(() -> new EntityNotFoundException(JOB_NOT_FOUND));
+    }
+
+    private void drainQuietly() {
+        try {
+            evictFinishedJobs();
+            drain();
+        } catch (RuntimeException e) {
+            log.warn("Page queue drain failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Выполняется только в потоке drainer, поэтому running растёт только здесь.
+     */
+    private void drain() {
+        int free = properties.getPageQueueThreads() - busy.get();
+        Map<Integer, List<QueuedPage>> open = new HashMap<>();
+        List<List<QueuedPage>> batches = new ArrayList<>();
+        for (QueuedPage queued : pending.values()) {
+            List<QueuedPage> batch = open.get(queued.site().getId());
+            boolean full = batch == null || batch.size() >= properties.getBatchSize();
+            if (full && batches.size() >= free) continue;
+            String url = queued.job().getUrl();
+            if (running.contains(url) || !pending.remove(url, queued)) continue;
+            if (full) {
+                batch = new ArrayList<>();
+                open.put(queued.site().getId(), batch);
+                batches.add(batch);
+            }
+            running.add(url);
+            batch.add(queued);
+        }
+        for (List<QueuedPage> batch : batches) {
+            Site site = batch.get(0).site();
+            busy.incrementAndGet();
+            dirtySites.add(site.getId());
+            workers.execute(() -> {
+                try {
+                    process(site, batch);
+                } finally {
+                    batch.forEach(queued -> running.remove(queued.job().getUrl()));
+                    busy.decrementAndGet();
+                    if (!drainer.isShutdown()) drainer.execute(this::drainQuietly);
+                }
+            });
+        }
+        long now = System.nanoTime();
+        if (!dirtySites.isEmpty()
+                && (running.isEmpty() || now - lastFlush >= properties.getPageQueueWindow().toNanos())) {
+            lastFlush = now;
+            siteDataService.flushLemmas();
+            staleSuggestions.addAll(dirtySites);
+            dirtySites.clear();
+        }
+        if (!staleSuggestions.isEmpty()
+                && now - lastSuggestRefresh >= properties.getSuggestRefreshInterval().toNanos()) {
+            lastSuggestRefresh = now;
+            staleSuggestions.forEach(lemmaSuggester::rebuild);
+            staleSuggestions.clear();
+        }
+    }
+
+    private void process(Site site, List<QueuedPage> batch) {
+        batch.forEach(queued -> queued.job().setStatus(JobStatus.RUNNING));
+        try {
+            if (leases.heldByOtherNode(site.getUrl())) {
+                throw new IndexingException(CRAWLED_ELSEWHERE);
+            }
+            CrawlContext context = new CrawlContext(site, site.getUrl(), new ConcurrentHashMap<>(),
+                    properties, lemmaService, siteDataService, metrics, progress, pageFetcher,
+                    RobotsRules.allowAll(), NearDuplicateDetector.disabled());
+            List<String> paths = batch.stream().map(QueuedPage::path).toList();
+            new WebCrawlerTask(context, 0, null, true, paths, List.of()).invoke();
+            batch.forEach(queued -> finish(queued.job(), null));
+        } catch (RuntimeException e) {
+            String message = e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
+            if (batch.size() > 1 && !(e instanceof IndexingException)) {
+                log.debug("Batch of {} pages of {} failed, indexing them one by one: {}",
+                        batch.size(), site.getName(), message);
+                batch.forEach(queued -> process(site, List.of(queued)));
+                return;
+            }
+            batch.forEach(queued -> {
+                log.warn("Page indexing failed for {}: {}", queued.job().getUrl(), message);
+                finish(queued.job(), message);
+            });
+        }
+    }
+
+    private static void finish(PageIndexingJob job, String error) {
+        if (error == null) {
+            job.setStatus(JobStatus.DONE);
+        } else {
+            job.setError(error);
+            job.setStatus(JobStatus.FAILED);
+        }
+        job.setFinishedAt(LocalDateTime.now());
+    }
+
+    private void evictFinishedJobs() {
+        LocalDateTime border = LocalDateTime.now().minus(properties.getPageJobRetention());
+        jobs.values().removeIf(job -> job.getFinishedAt() != null && job.getFinishedAt().isBefore(border));
+    }
+}
@@ -0,0 +1,52 @@
+package searchengine.services.indexstore;
+
+import searchengine.dto.projection.PagePostingView;
+import searchengine.dto.projection.PostingView;
+import searchengine.model.Index;
+import searchengine.model.Page;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Хранилище вхождений лемм в страницы. Страницы, леммы и их частоты остаются в БД,
+ * хранилище отвечает только за списки вхождений, через которые работают запись
+ * индексации и поиск. Реализация выбирается настройкой {@code search-engine.index-store}.
+ */
+public interface IndexStore {
+
+    /**
+     * Записывает вхождения; у каждого Index заданы id страницы и леммы.
+     */
+    void addPostings(List<Index> indexes);
+
+    List<PostingView> findPostings(Collection<Integer> lemmaIds);
+
+    List<PostingView> findPostings(Collection<Integer> lemmaIds, Collection<Integer> pageIds);
+
+    /**
+     * Вхождения страницы вместе с текстом лемм; indexId заполняют только хранилища со строками index.
+     */
+    List<PagePostingView> findPagePostings(Integer pageId);
+
+    /**
+     * Удаляет вхождения removed и меняет ранг у changed; оба списка получены из {@link #findPagePostings}.
+     */
+    void updatePagePostings(Integer pageId, List<PagePostingView> removed, Map<PagePostingView, Float> changed);
+
+    void deletePages(List<Page> pages);
+
+    /**
+     * Те из lemmaIds, у которых ещё есть вхождения: такие леммы удалять нельзя.
+     */
+    Set<Integer> findReferencedLemmas(Collection<Integer> lemmaIds);
+
+    /**
+     * Делает записанное долговечным; вызывается вместе со сбросом частот лемм.
+     */
+    void flush();
+
+    long count();
+}
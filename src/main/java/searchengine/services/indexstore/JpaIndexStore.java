@@ -0,0 +1,89 @@
+package searchengine.services.indexstore;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import searchengine.config.SearchEngineProperties;
+import searchengine.dto.projection.PagePostingView;
+import searchengine.dto.projection.PostingView;
+import searchengine.model.Index;
+import searchengine.model.Page;
+import searchengine.repositories.IndexRepository;
+import searchengine.repositories.JdbcBatchRepository;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Вхождения в таблице index; вставка — пакетами JDBC или через saveAll по настройке batchInsert.
+ */
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "search-engine", name = "index-store", havingValue = "jpa", matchIfMissing = true)
+public class JpaIndexStore implements IndexStore {
+
+    private final IndexRepository indexRepository;
+    private final JdbcBatchRepository batchRepository;
+    private final SearchEngineProperties properties;
+
+    @Override
+    @Transactional
+    public void addPostings(List<Index> indexes) {
+        if (properties.isBatchInsert()) {
+            batchRepository.insertIndexes(indexes);
+            return;
+        }
+        indexRepository.saveAll(indexes);
+    }
+
+    @Override
+    public List<PostingView> findPostings(Collection<Integer> lemmaIds) {
+        return indexRepository.findPostingsByLemmaIdIn(lemmaIds);
+    }
+
+    @Override
+    public List<PostingView> findPostings(Collection<Integer> lemmaIds, Collection<Integer> pageIds) {
+        return indexRepository.findPostingsByLemmaIdInAndPageIdIn(lemmaIds, pageIds);
+    }
+
+    @Override
+    public List<PagePostingView> findPagePostings(Integer pageId) {
+        return indexRepository.findPagePostingsByPageId(pageId);
+    }
+
+    @Override
+    public void updatePagePostings(Integer pageId, List<PagePostingView> removed, Map<PagePostingView, Float> changed) {
+        if (!removed.isEmpty()) {
+            indexRepository.deleteAllByIdIn(removed.stream().map(PagePostingView::indexId).toList());
+        }
+        if (!changed.isEmpty()) {
+            Map<Integer, Float> ranks = new HashMap<>();
+            changed.forEach((posting, rank) -> ranks.put(posting.indexId(), rank));
+            batchRepository.updateRanks(ranks);
+        }
+    }
+
+    @Override
+    public void deletePages(List<Page> pages) {
+        pages.forEach(indexRepository::deleteAllByPage);
+    }
+
+    @Override
+    public Set<Integer> findReferencedLemmas(Collection<Integer> lemmaIds) {
+        return new HashSet<>(indexRepository.findLemmaIdsByLemmaIdIn(lemmaIds));
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public long count() {
+        return indexRepository.count();
+    }
+}
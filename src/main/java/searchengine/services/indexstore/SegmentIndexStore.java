@@ -0,0 +1,179 @@
+package searchengine.services.indexstore;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import searchengine.config.SearchEngineProperties;
+import searchengine.dto.projection.LemmaView;
+import searchengine.dto.projection.PagePostingView;
+import searchengine.dto.projection.PostingView;
+import searchengine.model.Index;
+import searchengine.model.Page;
+import searchengine.repositories.LemmaRepository;
+import searchengine.repositories.PageRepository;
+import searchengine.services.indexstore.segment.SegmentIndex;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Вхождения в сегментах {@link SegmentIndex} в каталоге {@code indexStorePath}.
+ * Изменения применяются после фиксации транзакции БД, в которой записаны страницы,
+ * поэтому поиск не находит страниц, которых нет в таблице page. Фоновый поток сбрасывает
+ * буфер раз в {@code segmentFlushInterval} или при {@code segmentFlushPostings} вхождениях
+ * и сливает сегменты.
+ * <p>
+ * Каталог принадлежит одной БД: если таблица page пуста, а сегменты есть,
+ * они остались от другой БД и удаляются при запуске.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+@ConditionalOnProperty(prefix = "search-engine", name = "index-store", havingValue = "segments")
+public class SegmentIndexStore implements IndexStore {
+
+    private final SearchEngineProperties properties;
+    private final LemmaRepository lemmaRepository;
+    private final PageRepository pageRepository;
+
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private SegmentIndex index;
+    private ScheduledExecutorService maintenance;
+
+    @PostConstruct
+    public void start() throws IOException {
+        index = SegmentIndex.open(Path.of(properties.getIndexStorePath()), properties.getSegmentMergeFactor());
+        if (index.postingCount() > 0 && pageRepository.count() == 0) {
+            log.warn("Page table is empty, clearing stale segment index at {}", properties.getIndexStorePath());
+            index.clear();
+        }
+        maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "segment-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = properties.getSegmentFlushInterval().toMillis();
+        maintenance.scheduleWithFixedDelay(this::maintainQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        maintenance.shutdownNow();
+        index.close();
+    }
+
+    @Override
+    public void addPostings(List<Index> indexes) {
+        Map<Integer, Map<Integer, Float>> pages = new HashMap<>();
+        for (Index posting : indexes) {
+            pages.computeIfAbsent(posting.getPage().getId(), id -> new HashMap<>())
+                    .put(posting.getLemma().getId(), posting.getRank());
+        }
+        afterCommit(() -> {
+            pages.forEach(index::add);
+            if (index.bufferedPostings() >= properties.getSegmentFlushPostings()
+                    && flushScheduled.compareAndSet(false, true)) {
+                maintenance.execute(this::maintainQuietly);
+            }
+        });
+    }
+
+    @Override
+    public List<PostingView> findPostings(Collection<Integer> lemmaIds) {
+        return index.postings(lemmaIds, null);
+    }
+
+    @Override
+    public List<PostingView> findPostings(Collection<Integer> lemmaIds, Collection<Integer> pageIds) {
+        return index.postings(lemmaIds, pageIds);
+    }
+
+    @Override
+    public List<PagePostingView> findPagePostings(Integer pageId) {
+        Map<Integer, Float> postings = index.page(pageId);
+        if (postings.isEmpty()) return List.of();
+        Map<Integer, String> lemmas = lemmaRepository.findViewsByIdIn(postings.keySet()).stream()
+                .collect(Collectors.toMap(LemmaView::id, LemmaView::lemma));
+        List<PagePostingView> result = new ArrayList<>(postings.size());
+        postings.forEach((lemmaId, rank) -> {
+            String lemma = lemmas.get(lemmaId);
+            if (lemma != null) result.add(new PagePostingView(null, lemmaId, lemma, rank));
+        });
+        return result;
+    }
+
+    /**
+     * Сегменты не изменяются, поэтому страница записывается заново целиком.
+     */
+    @Override
+    public void updatePagePostings(Integer pageId, List<PagePostingView> removed, Map<PagePostingView, Float> changed) {
+        if (removed.isEmpty() && changed.isEmpty()) return;
+        afterCommit(() -> {
+            Map<Integer, Float> postings = index.page(pageId);
+            removed.forEach(posting -> postings.remove(posting.lemmaId()));
+            changed.forEach((posting, rank) -> postings.put(posting.lemmaId(), rank));
+            index.replacePage(pageId, postings);
+        });
+    }
+
+    @Override
+    public void deletePages(List<Page> pages) {
+        List<Integer> pageIds = pages.stream().map(Page::getId).toList();
+        afterCommit(() -> index.deletePages(pageIds));
+    }
+
+    @Override
+    public Set<Integer> findReferencedLemmas(Collection<Integer> lemmaIds) {
+        return index.referencedLemmas(lemmaIds);
+    }
+
+    @Override
+    public void flush() {
+        try {
+            index.flush();
+        } catch (IOException e) {
+            log.warn("Segment index flush failed: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public long count() {
+        return index.postingCount();
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private void maintainQuietly() {
+        flushScheduled.set(false);
+        try {
+            index.flush();
+            while (index.merge()) {
+                log.debug("Segment index has {} segments", index.segmentCount());
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Segment index maintenance failed: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package searchengine.services.indexstore.segment;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Неизменяемый сегмент индекса: файл, отображённый в память.
+ * <pre>
+ * заголовок  magic, generation, terms, postings, pages
+ * термины    terms × (lemmaId, offset, count), по возрастанию lemmaId
+ * вхождения  postings × (pageId, rank), внутри термина по возрастанию pageId
+ * страницы   pages × (pageId, offset, count), по возрастанию pageId
+ * прямой     postings × (lemmaId, rank), внутри страницы по возрастанию lemmaId
+ * </pre>
+ * Поиск читает вхождения термина, переиндексация и слияние — прямой список страницы.
+ * Файл пишет {@link SegmentBuilder}. Чтение идёт абсолютными get и не меняет
+ * состояние буфера, поэтому безопасно из разных потоков.
+ */
+final class Segment {
+
+    static final int MAGIC = 0x53454731;
+    static final int HEADER_BYTES = 4 + 8 + 4 + 4 + 4;
+    static final int ENTRY_BYTES = 12;
+    static final int POSTING_BYTES = 8;
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final long generation;
+    private final int terms;
+    private final int postings;
+    private final int pages;
+    private final int postingsStart;
+    private final int pagesStart;
+    private final int forwardStart;
+
+    /**
+     * Приёмник вхождений: id страницы или леммы и ранг.
+     */
+    interface PostingConsumer {
+        void accept(int id, float rank);
+    }
+
+    private Segment(Path path, MappedByteBuffer buffer) throws IOException {
+        this.path = path;
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Файл не является сегментом индекса: " + path);
+        }
+        generation = buffer.getLong(4);
+        terms = buffer.getInt(12);
+        postings = buffer.getInt(16);
+        pages = buffer.getInt(20);
+        postingsStart = HEADER_BYTES + terms * ENTRY_BYTES;
+        pagesStart = postingsStart + postings * POSTING_BYTES;
+        forwardStart = pagesStart + pages * ENTRY_BYTES;
+        if (forwardStart + (long) postings * POSTING_BYTES != buffer.capacity()) {
+            throw new IOException("Сегмент индекса повреждён: " + path);
+        }
+    }
+
+    static Segment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new Segment(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    Path path() {
+        return path;
+    }
+
+    long generation() {
+        return generation;
+    }
+
+    int postingCount() {
+        return postings;
+    }
+
+    int pageCount() {
+        return pages;
+    }
+
+    long sizeBytes() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Вхождения леммы; при pageIds != null — только на этих страницах.
+     */
+    void postings(int lemmaId, PageFilter pageIds, PostingConsumer consumer) {
+        int term = find(HEADER_BYTES, terms, lemmaId);
+        if (term < 0) return;
+        int entry = HEADER_BYTES + term * ENTRY_BYTES;
+        int from = buffer.getInt(entry + 4);
+        int count = buffer.getInt(entry + 8);
+        if (pageIds == null || !pageIds.probe(count)) {
+            for (int i = from; i < from + count; i++) {
+                int pageId = pageAt(i);
+                if (pageIds == null || pageIds.contains(pageId)) consumer.accept(pageId, rankAt(i));
+            }
+            return;
+        }
+        for (int pageId : pageIds.sorted()) {
+            int i = findPosting(from, count, pageId);
+            if (i >= 0) consumer.accept(pageId, rankAt(i));
+        }
+    }
+
+    /**
+     * Леммы страницы с рангами в порядке возрастания lemmaId.
+     */
+    boolean page(int pageId, PostingConsumer consumer) {
+        int page = find(pagesStart, pages, pageId);
+        if (page < 0) return false;
+        int entry = pagesStart + page * ENTRY_BYTES;
+        int from = buffer.getInt(entry + 4);
+        int count = buffer.getInt(entry + 8);
+        for (int i = from; i < from + count; i++) {
+            int offset = forwardStart + i * POSTING_BYTES;
+            consumer.accept(buffer.getInt(offset), buffer.getFloat(offset + 4));
+        }
+        return true;
+    }
+
+    int pageIdAt(int page) {
+        return buffer.getInt(pagesStart + page * ENTRY_BYTES);
+    }
+
+    private int pageAt(int posting) {
+        return buffer.getInt(postingsStart + posting * POSTING_BYTES);
+    }
+
+    private float rankAt(int posting) {
+        return buffer.getFloat(postingsStart + posting * POSTING_BYTES + 4);
+    }
+
+    /**
+     * Двоичный поиск по первому полю записей раздела из ENTRY_BYTES-записей.
+     */
+    private int find(int start, int count, int key) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int value = buffer.getInt(start + middle * ENTRY_BYTES);
+            if (value < key) {
+                low = middle + 1;
+            } else if (value > key) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private int findPosting(int from, int count, int pageId) {
+        int low = from;
+        int high = from + count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int value = pageAt(middle);
+            if (value < pageId) {
+                low = middle + 1;
+            } else if (value > pageId) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Ограничение поиска набором страниц. Короткий набор проверяется двоичным поиском
+     * в списке вхождений, длинный — проходом по списку с проверкой по множеству.
+     */
+    static final class PageFilter {
+        private final Set<Integer> pageIds;
+        private final int[] sorted;
+
+        PageFilter(Collection<Integer> pageIds) {
+            this.pageIds = pageIds instanceof Set<Integer> set ? set : new HashSet<>(pageIds);
+            this.sorted = this.pageIds.stream().mapToInt(Integer::intValue).sorted().toArray();
+        }
+
+        boolean contains(int pageId) {
+            return pageIds.contains(pageId);
+        }
+
+        int[] sorted() {
+            return sorted;
+        }
+
+        /**
+         * Двоичный поиск выгоднее, если страниц в наборе намного меньше, чем вхождений.
+         */
+        boolean probe(int postings) {
+            return (long) sorted.length * 16 < postings;
+        }
+    }
+}
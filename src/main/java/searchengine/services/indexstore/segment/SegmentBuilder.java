@@ -0,0 +1,111 @@
+package searchengine.services.indexstore.segment;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Сборка сегмента из страниц, добавляемых по возрастанию pageId.
+ * Прямой список копится сразу; списки вхождений терминов получаются из него
+ * сортировкой подсчётом, поэтому внутри термина страницы тоже идут по возрастанию.
+ */
+final class SegmentBuilder {
+
+    private int[] pageIds = new int[64];
+    private int[] pageCounts = new int[64];
+    private int[] lemmaIds = new int[1024];
+    private float[] ranks = new float[1024];
+    private int pages;
+    private int postings;
+
+    /**
+     * Добавляет страницу; леммы должны идти по возрастанию id.
+     */
+    void addPage(int pageId, int[] pageLemmas, float[] pageRanks, int count) {
+        if (count == 0) return;
+        if (pages > 0 && pageIds[pages - 1] >= pageId) {
+            throw new IllegalArgumentException("Страницы сегмента должны идти по возрастанию id");
+        }
+        if (pages == pageIds.length) {
+            pageIds = Arrays.copyOf(pageIds, pages * 2);
+            pageCounts = Arrays.copyOf(pageCounts, pages * 2);
+        }
+        if (postings + count > lemmaIds.length) {
+            int capacity = Math.max(lemmaIds.length * 2, postings + count);
+            lemmaIds = Arrays.copyOf(lemmaIds, capacity);
+            ranks = Arrays.copyOf(ranks, capacity);
+        }
+        pageIds[pages] = pageId;
+        pageCounts[pages++] = count;
+        System.arraycopy(pageLemmas, 0, lemmaIds, postings, count);
+        System.arraycopy(pageRanks, 0, ranks, postings, count);
+        postings += count;
+    }
+
+    int postingCount() {
+        return postings;
+    }
+
+    /**
+     * Записывает сегмент во временный файл и переносит его на место, так что
+     * по пути path лежит либо целый сегмент, либо ничего.
+     */
+    Segment write(Path path, long generation) throws IOException {
+        int[] terms = Arrays.stream(lemmaIds, 0, postings).distinct().sorted().toArray();
+        int[] termCounts = new int[terms.length];
+        for (int i = 0; i < postings; i++) {
+            termCounts[Arrays.binarySearch(terms, lemmaIds[i])]++;
+        }
+        int[] termOffsets = new int[terms.length];
+        for (int i = 1; i < terms.length; i++) {
+            termOffsets[i] = termOffsets[i - 1] + termCounts[i - 1];
+        }
+
+        int[] next = termOffsets.clone();
+        int[] postingPages = new int[postings];
+        float[] postingRanks = new float[postings];
+        int position = 0;
+        for (int page = 0; page < pages; page++) {
+            for (int i = position; i < position + pageCounts[page]; i++) {
+                int slot = next[Arrays.binarySearch(terms, lemmaIds[i])]++;
+                postingPages[slot] = pageIds[page];
+                postingRanks[slot] = ranks[i];
+            }
+            position += pageCounts[page];
+        }
+
+        long size = Segment.HEADER_BYTES + (long) terms.length * Segment.ENTRY_BYTES
+                + (long) postings * Segment.POSTING_BYTES * 2 + (long) pages * Segment.ENTRY_BYTES;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Сегмент индекса больше 2 ГБ: " + path);
+        }
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            out.putInt(Segment.MAGIC).putLong(generation).putInt(terms.length).putInt(postings).putInt(pages);
+            for (int i = 0; i < terms.length; i++) {
+                out.putInt(terms[i]).putInt(termOffsets[i]).putInt(termCounts[i]);
+            }
+            for (int i = 0; i < postings; i++) {
+                out.putInt(postingPages[i]).putFloat(postingRanks[i]);
+            }
+            position = 0;
+            for (int page = 0; page < pages; page++) {
+                out.putInt(pageIds[page]).putInt(position).putInt(pageCounts[page]);
+                position += pageCounts[page];
+            }
+            for (int i = 0; i < postings; i++) {
+                out.putInt(lemmaIds[i]).putFloat(ranks[i]);
+            }
+            out.force();
+        }
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+        return Segment.open(path);
+    }
+}
@@ -0,0 +1,633 @@
+package searchengine.services.indexstore.segment;
+
+import lombok.extern.slf4j.Slf4j;
+import searchengine.dto.projection.PostingView;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Индекс вхождений лемм на локальном диске: неизменяемые сегменты, отображённые в память,
+ * и буфер свежих записей в памяти. Буфер сбрасывается в новый сегмент вызовом {@link #flush()},
+ * мелкие сегменты объединяются {@link #merge()}.
+ * <p>
+ * Сегменты не изменяются, поэтому удаление страницы — это отметка с номером поколения:
+ * вхождения страницы видны только в сегментах не старше отметки. Буфер, принимающий записи
+ * после удаления, имеет то же поколение, что и отметка, и остаётся видимым. Слияние
+ * отбрасывает скрытые вхождения, а отметки, которые больше ничего не скрывают, забываются.
+ * <p>
+ * Состав сегментов, отметки и текущее поколение хранятся в файле manifest, который
+ * перезаписывается атомарно после каждого сброса и слияния. Каждое изменение буфера
+ * сначала сбрасывается на диск в {@link WriteAheadLog} его поколения; при открытии журналы
+ * буферов, не попавших в сегменты, повторяются и сразу сбрасываются в сегмент.
+ */
+@Slf4j
+public final class SegmentIndex implements Closeable {
+
+    private static final String MANIFEST = "manifest";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final long MAX_SEGMENT_BYTES = 1L << 30;
+
+    private final Path directory;
+    private final int mergeFactor;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object maintenance = new Object();
+
+    private final List<Segment> segments = new ArrayList<>();
+    private final List<Memtable> frozen = new ArrayList<>();
+    private final Map<Integer, Long> tombstones = new HashMap<>();
+    private Memtable memtable;
+    private WriteAheadLog wal;
+    private boolean dirty;
+    private long sequence = System.currentTimeMillis();
+
+    private SegmentIndex(Path directory, int mergeFactor) {
+        this.directory = directory;
+        this.mergeFactor = Math.max(2, mergeFactor);
+    }
+
+    /**
+     * Открывает индекс в каталоге, создавая его при необходимости. Файлы сегментов,
+     * не упомянутые в manifest, остались от прерванного сброса или слияния и удаляются.
+     */
+    public static SegmentIndex open(Path directory, int mergeFactor) throws IOException {
+        Files.createDirectories(directory);
+        SegmentIndex index = new SegmentIndex(directory, mergeFactor);
+        long generation = 1;
+        Set<String> listed = new HashSet<>();
+        Path manifest = directory.resolve(MANIFEST);
+        if (Files.exists(manifest)) {
+            for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+                String[] parts = line.split(" ");
+                switch (parts[0]) {
+                    case "generation" -> generation = Long.parseLong(parts[1]);
+                    case "segment" -> {
+                        Segment segment = Segment.open(directory.resolve(parts[1]));
+                        index.segments.add(segment);
+                        listed.add(parts[1]);
+                        generation = Math.max(generation, segment.generation() + 1);
+                    }
+                    case "tombstone" -> index.tombstones.put(Integer.parseInt(parts[1]), Long.parseLong(parts[2]));
+                    default -> throw new IOException("Неизвестная строка manifest: " + line);
+                }
+            }
+        }
+        index.segments.sort(Comparator.comparingLong(Segment::generation));
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(SEGMENT_PREFIX) && !listed.contains(name)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        index.recover(generation);
+        log.info("Segment index opened at {}: {} segments, {} postings",
+                directory, index.segments.size(), index.postingCount());
+        return index;
+    }
+
+    /**
+     * Повторяет журналы буферов новее последнего сегмента в порядке поколений и сбрасывает
+     * восстановленное в сегмент; журналы уже сброшенных буферов удаляются. Буфер получает
+     * поколение не меньше любого журнала, чтобы новый журнал не затёр ещё нужный.
+     */
+    private void recover(long generation) throws IOException {
+        long flushed = segments.stream().mapToLong(Segment::generation).max().orElse(0);
+        List<Long> logs = WriteAheadLog.generations(directory);
+        for (long logged : logs) generation = Math.max(generation, logged);
+        memtable = new Memtable(generation);
+
+        int replayed = 0;
+        for (long logged : logs) {
+            if (logged <= flushed) {
+                WriteAheadLog.delete(directory, logged);
+                continue;
+            }
+            replayed += WriteAheadLog.replay(directory, logged, new WriteAheadLog.Replay() {
+                @Override
+                public void add(int pageId, Map<Integer, Float> postings) {
+                    memtable.add(pageId, postings);
+                }
+
+                @Override
+                public void replace(int pageId, Map<Integer, Float> postings) {
+                    SegmentIndex.this.delete(pageId);
+                    memtable.add(pageId, postings);
+                }
+
+                @Override
+                public void delete(Collection<Integer> pageIds) {
+                    pageIds.forEach(SegmentIndex.this::delete);
+                }
+            });
+        }
+        if (replayed == 0) {
+            logs.forEach(logged -> WriteAheadLog.delete(directory, logged));
+            wal = WriteAheadLog.create(directory, memtable.generation);
+            return;
+        }
+        log.info("Replayed {} write-ahead log records into {} buffered postings", replayed, memtable.postings);
+        flush();
+    }
+
+    /**
+     * Добавляет вхождения страницы (lemmaId → ранг) к уже записанным.
+     */
+    public void add(int pageId, Map<Integer, Float> postings) {
+        if (postings.isEmpty()) return;
+        WriteAheadLog logged;
+        lock.writeLock().lock();
+        try {
+            journal(() -> wal.add(pageId, postings));
+            memtable.add(pageId, postings);
+            logged = wal;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        sync(logged);
+    }
+
+    /**
+     * Заменяет все вхождения страницы одним действием: поиск видит либо старый набор, либо новый.
+     */
+    public void replacePage(int pageId, Map<Integer, Float> postings) {
+        WriteAheadLog logged;
+        lock.writeLock().lock();
+        try {
+            journal(() -> wal.replace(pageId, postings));
+            delete(pageId);
+            memtable.add(pageId, postings);
+            logged = wal;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        sync(logged);
+    }
+
+    public void deletePages(Collection<Integer> pageIds) {
+        if (pageIds.isEmpty()) return;
+        WriteAheadLog logged;
+        lock.writeLock().lock();
+        try {
+            journal(() -> wal.delete(pageIds));
+            pageIds.forEach(this::delete);
+            logged = wal;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        sync(logged);
+    }
+
+    private interface JournalWrite {
+        void write() throws IOException;
+    }
+
+    /**
+     * Изменение применяется к буферу, только если записано в журнал.
+     */
+    private static void journal(JournalWrite write) {
+        try {
+            write.write();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось записать изменение в журнал индекса", e);
+        }
+    }
+
+    private static void sync(WriteAheadLog logged) {
+        journal(logged::sync);
+    }
+
+    private void delete(int pageId) {
+        memtable.remove(pageId);
+        tombstones.put(pageId, memtable.generation);
+        dirty = true;
+    }
+
+    /**
+     * Видимые вхождения страницы: lemmaId → ранг.
+     */
+    public Map<Integer, Float> page(int pageId) {
+        Map<Integer, Float> result = new TreeMap<>();
+        lock.readLock().lock();
+        try {
+            for (Segment segment : segments) {
+                if (visible(pageId, segment.generation())) segment.page(pageId, result::put);
+            }
+            for (Memtable table : frozen) {
+                if (visible(pageId, table.generation)) table.page(pageId, result::put);
+            }
+            memtable.page(pageId, result::put);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Вхождения лемм; pageIds == null — на всех страницах.
+     */
+    public List<PostingView> postings(Collection<Integer> lemmaIds, Collection<Integer> pageIds) {
+        List<PostingView> result = new ArrayList<>();
+        Segment.PageFilter filter = pageIds == null ? null : new Segment.PageFilter(pageIds);
+        lock.readLock().lock();
+        try {
+            for (Integer lemmaId : lemmaIds) {
+                for (Segment segment : segments) {
+                    long generation = segment.generation();
+                    segment.postings(lemmaId, filter, (pageId, rank) -> {
+                        if (visible(pageId, generation)) result.add(new PostingView(pageId, rank));
+                    });
+                }
+                for (Memtable table : frozen) {
+                    table.postings(lemmaId, filter, (pageId, rank) -> {
+                        if (visible(pageId, table.generation)) result.add(new PostingView(pageId, rank));
+                    });
+                }
+                memtable.postings(lemmaId, filter, (pageId, rank) -> result.add(new PostingView(pageId, rank)));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Те из lemmaIds, у которых есть видимые вхождения.
+     */
+    public Set<Integer> referencedLemmas(Collection<Integer> lemmaIds) {
+        Set<Integer> referenced = new HashSet<>();
+        for (Integer lemmaId : lemmaIds) {
+            if (!postings(List.of(lemmaId), null).isEmpty()) referenced.add(lemmaId);
+        }
+        return referenced;
+    }
+
+    private boolean visible(int pageId, long generation) {
+        Long deleted = tombstones.get(pageId);
+        return deleted == null || generation >= deleted;
+    }
+
+    public int bufferedPostings() {
+        lock.readLock().lock();
+        try {
+            return memtable.postings;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Число записанных вхождений, включая скрытые удалением и ещё не отброшенные слиянием.
+     */
+    public long postingCount() {
+        lock.readLock().lock();
+        try {
+            long count = memtable.postings;
+            for (Segment segment : segments) count += segment.postingCount();
+            for (Memtable table : frozen) count += table.postings;
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int segmentCount() {
+        lock.readLock().lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Сбрасывает буфер в новый сегмент. На время записи буфер остаётся доступным поиску,
+     * а новые записи идут в следующий буфер.
+     */
+    public void flush() throws IOException {
+        synchronized (maintenance) {
+            Memtable flushing;
+            WriteAheadLog flushingLog;
+            lock.writeLock().lock();
+            try {
+                if (memtable.postings == 0) {
+                    if (dirty) {
+                        writeManifest();
+                        if (wal != null) wal.truncate();
+                    }
+                    if (wal == null) wal = WriteAheadLog.create(directory, memtable.generation);
+                    return;
+                }
+                WriteAheadLog next = WriteAheadLog.create(directory, memtable.generation + 1);
+                flushing = memtable;
+                flushingLog = wal;
+                frozen.add(flushing);
+                memtable = new Memtable(flushing.generation + 1);
+                wal = next;
+                if (flushingLog != null) flushingLog.close();
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            Segment segment;
+            try {
+                segment = flushing.builder().write(segmentPath(flushing.generation), flushing.generation);
+            } catch (IOException | RuntimeException e) {
+                lock.writeLock().lock();
+                try {
+                    frozen.remove(flushing);
+                    restore(flushing);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                throw e;
+            }
+
+            lock.writeLock().lock();
+            try {
+                segments.add(segment);
+                frozen.remove(flushing);
+                writeManifest();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            for (long logged : WriteAheadLog.generations(directory)) {
+                if (logged <= flushing.generation) WriteAheadLog.delete(directory, logged);
+            }
+            log.debug("Flushed {} postings of {} pages to {}",
+                    segment.postingCount(), segment.pageCount(), segment.path().getFileName());
+        }
+    }
+
+    /**
+     * Возвращает в буфер записи, которые не удалось сбросить. Страницы, удалённые
+     * во время сброса, пропускаются, а записи, сделанные после него, важнее.
+     * Возвращённое дописывается в журнал текущего буфера; журнал несброшенного
+     * удаляется, только если это удалось, иначе он повторится при открытии.
+     */
+    private void restore(Memtable failed) {
+        Map<Integer, Map<Integer, Float>> restored = new TreeMap<>();
+        failed.pages.forEach((pageId, page) -> {
+            if (!visible(pageId, failed.generation)) return;
+            Map<Integer, Float> older = new HashMap<>(page);
+            TreeMap<Integer, Float> newer = memtable.pages.get(pageId);
+            if (newer != null) older.keySet().removeAll(newer.keySet());
+            if (!older.isEmpty()) restored.put(pageId, older);
+        });
+        restored.forEach(memtable::add);
+        try {
+            for (Map.Entry<Integer, Map<Integer, Float>> page : restored.entrySet()) {
+                wal.add(page.getKey(), page.getValue());
+            }
+            WriteAheadLog.delete(directory, failed.generation);
+        } catch (IOException e) {
+            log.warn("Write-ahead log of generation {} kept: {}", failed.generation, e.getMessage());
+        }
+    }
+
+    /**
+     * Объединяет mergeFactor самых мелких сегментов, если их набралось столько,
+     * отбрасывая вхождения удалённых страниц. Возвращает true, если слияние было.
+     */
+    public boolean merge() throws IOException {
+        synchronized (maintenance) {
+            List<Segment> inputs;
+            Map<Integer, Long> deleted;
+            lock.readLock().lock();
+            try {
+                if (segments.size() < mergeFactor) return false;
+                inputs = new ArrayList<>();
+                long size = 0;
+                List<Segment> bySize = new ArrayList<>(segments);
+                bySize.sort(Comparator.comparingLong(Segment::sizeBytes));
+                for (Segment segment : bySize) {
+                    if (inputs.size() == mergeFactor || size + segment.sizeBytes() > MAX_SEGMENT_BYTES) break;
+                    inputs.add(segment);
+                    size += segment.sizeBytes();
+                }
+                if (inputs.size() < 2) return false;
+                deleted = new HashMap<>(tombstones);
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            inputs.sort(Comparator.comparingLong(Segment::generation));
+            long generation = inputs.get(inputs.size() - 1).generation();
+            Segment merged = mergeSegments(inputs, deleted, generation);
+
+            lock.writeLock().lock();
+            try {
+                segments.removeAll(inputs);
+                segments.add(merged);
+                segments.sort(Comparator.comparingLong(Segment::generation));
+                long oldest = segments.stream().mapToLong(Segment::generation).min().orElse(Long.MAX_VALUE);
+                for (Memtable table : frozen) oldest = Math.min(oldest, table.generation);
+                long visibleFrom = oldest;
+                tombstones.values().removeIf(tombstone -> tombstone <= visibleFrom);
+                writeManifest();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            for (Segment input : inputs) {
+                deleteQuietly(input.path());
+            }
+            log.debug("Merged {} segments into {} with {} postings",
+                    inputs.size(), merged.path().getFileName(), merged.postingCount());
+            return true;
+        }
+    }
+
+    /**
+     * Слияние идёт по страницам в порядке id: у каждой страницы берутся видимые вхождения
+     * из всех входных сегментов, при совпадении леммы — из более нового.
+     * Новый сегмент получает поколение самого нового входного: видимые вхождения остаются видимыми.
+     */
+    private Segment mergeSegments(List<Segment> inputs, Map<Integer, Long> deleted, long generation)
+            throws IOException {
+        SegmentBuilder builder = new SegmentBuilder();
+        int[] cursors = new int[inputs.size()];
+        TreeMap<Integer, Float> page = new TreeMap<>();
+        int[] lemmas = new int[64];
+        float[] ranks = new float[64];
+        while (true) {
+            int pageId = Integer.MAX_VALUE;
+            boolean found = false;
+            for (int i = 0; i < inputs.size(); i++) {
+                if (cursors[i] < inputs.get(i).pageCount()) {
+                    pageId = Math.min(pageId, inputs.get(i).pageIdAt(cursors[i]));
+                    found = true;
+                }
+            }
+            if (!found) break;
+
+            page.clear();
+            for (int i = 0; i < inputs.size(); i++) {
+                Segment input = inputs.get(i);
+                if (cursors[i] < input.pageCount() && input.pageIdAt(cursors[i]) == pageId) {
+                    cursors[i]++;
+                    Long tombstone = deleted.get(pageId);
+                    if (tombstone == null || input.generation() >= tombstone) input.page(pageId, page::put);
+                }
+            }
+            if (page.size() > lemmas.length) {
+                lemmas = new int[page.size() * 2];
+                ranks = new float[page.size() * 2];
+            }
+            int count = 0;
+            for (Map.Entry<Integer, Float> posting : page.entrySet()) {
+                lemmas[count] = posting.getKey();
+                ranks[count++] = posting.getValue();
+            }
+            builder.addPage(pageId, lemmas, ranks, count);
+        }
+        return builder.write(segmentPath(generation), generation);
+    }
+
+    /**
+     * Удаляет все сегменты и отметки.
+     */
+    public void clear() throws IOException {
+        synchronized (maintenance) {
+            List<Segment> removed;
+            lock.writeLock().lock();
+            try {
+                removed = new ArrayList<>(segments);
+                segments.clear();
+                tombstones.clear();
+                wal.close();
+                for (long logged : WriteAheadLog.generations(directory)) {
+                    WriteAheadLog.delete(directory, logged);
+                }
+                memtable = new Memtable(memtable.generation + 1);
+                wal = WriteAheadLog.create(directory, memtable.generation);
+                writeManifest();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            removed.forEach(segment -> deleteQuietly(segment.path()));
+            log.info("Segment index at {} cleared", directory);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        lock.writeLock().lock();
+        try {
+            wal.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Слитый сегмент получает поколение одного из входных, поэтому имя файла
+     * дополняется порядковым номером записи.
+     */
+    private Path segmentPath(long generation) {
+        return directory.resolve(SEGMENT_PREFIX + generation + "-" + (++sequence) + SEGMENT_SUFFIX);
+    }
+
+    private void writeManifest() throws IOException {
+        StringBuilder manifest = new StringBuilder();
+        manifest.append("generation ").append(memtable.generation).append('\n');
+        for (Segment segment : segments) {
+            manifest.append("segment ").append(segment.path().getFileName()).append('\n');
+        }
+        tombstones.forEach((pageId, generation) ->
+                manifest.append("tombstone ").append(pageId).append(' ').append(generation).append('\n'));
+        Path temporary = directory.resolve(MANIFEST + ".tmp");
+        Files.writeString(temporary, manifest, StandardCharsets.UTF_8);
+        Files.move(temporary, directory.resolve(MANIFEST),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        dirty = false;
+    }
+
+    /**
+     * Отображение файла остаётся действительным до сборки буфера, поэтому файл
+     * удаляется сразу; если ОС этого не позволяет, его уберёт следующее открытие.
+     */
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Segment file {} not deleted: {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * Буфер свежих записей: прямой список страниц и обратный — страницы каждой леммы.
+     */
+    private static final class Memtable {
+        private final long generation;
+        private final TreeMap<Integer, TreeMap<Integer, Float>> pages = new TreeMap<>();
+        private final Map<Integer, Set<Integer>> terms = new HashMap<>();
+        private int postings;
+
+        private Memtable(long generation) {
+            this.generation = generation;
+        }
+
+        private void add(int pageId, Map<Integer, Float> lemmaRanks) {
+            TreeMap<Integer, Float> page = pages.computeIfAbsent(pageId, id -> new TreeMap<>());
+            lemmaRanks.forEach((lemmaId, rank) -> {
+                if (page.put(lemmaId, rank) == null) postings++;
+                terms.computeIfAbsent(lemmaId, id -> new HashSet<>()).add(pageId);
+            });
+        }
+
+        private void remove(int pageId) {
+            TreeMap<Integer, Float> page = pages.remove(pageId);
+            if (page == null) return;
+            for (Integer lemmaId : page.keySet()) {
+                Set<Integer> pageIds = terms.get(lemmaId);
+                pageIds.remove(pageId);
+                if (pageIds.isEmpty()) terms.remove(lemmaId);
+            }
+            postings -= page.size();
+        }
+
+        private void page(int pageId, Segment.PostingConsumer consumer) {
+            TreeMap<Integer, Float> page = pages.get(pageId);
+            if (page != null) page.forEach(consumer::accept);
+        }
+
+        private void postings(int lemmaId, Segment.PageFilter filter, Segment.PostingConsumer consumer) {
+            Set<Integer> pageIds = terms.get(lemmaId);
+            if (pageIds == null) return;
+            for (Integer pageId : pageIds) {
+                if (filter == null || filter.contains(pageId)) consumer.accept(pageId, pages.get(pageId).get(lemmaId));
+            }
+        }
+
+        private SegmentBuilder builder() {
+            SegmentBuilder builder = new SegmentBuilder();
+            int[] lemmas = new int[64];
+            float[] ranks = new float[64];
+            for (Map.Entry<Integer, TreeMap<Integer, Float>> page : pages.entrySet()) {
+                if (page.getValue().size() > lemmas.length) {
+                    lemmas = new int[page.getValue().size() * 2];
+                    ranks = new float[page.getValue().size() * 2];
+                }
+                int count = 0;
+                for (Map.Entry<Integer, Float> posting : page.getValue().entrySet()) {
+                    lemmas[count] = posting.getKey();
+                    ranks[count++] = posting.getValue();
+                }
+                builder.addPage(page.getKey(), lemmas, ranks, count);
+            }
+            return builder;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package searchengine.services.indexstore.segment;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * Журнал изменений буфера сегментного индекса: по файлу {@code wal-<поколение>} на каждый
+ * буфер. Запись дописывается в конец под блокировкой индекса, а на диск сбрасывается
+ * {@link #sync()} уже без неё, чтобы поиск не ждал fsync; вызов изменения возвращается
+ * только после сброса. После аварийной остановки буфер восстанавливается повторением
+ * журналов. Журналы поколений, уже лежащих в сегментах, удаляются.
+ * <pre>
+ * A pageId count (lemmaId rank) × count crc   добавление вхождений страницы
+ * R pageId count (lemmaId rank) × count crc   замена вхождений страницы
+ * D count pageId × count crc                  удаление страниц
+ * </pre>
+ * crc — CRC32 байтов записи до него. Запись применяется только целиком и с верной суммой:
+ * на первой недописанной, обнулённой или испорченной записи чтение журнала заканчивается,
+ * и она вместе с остатком файла отбрасывается. Вызов изменения такой записи не вернулся,
+ * так что потерянным она считаться не может.
+ */
+@Slf4j
+final class WriteAheadLog implements AutoCloseable {
+
+    static final String PREFIX = "wal-";
+
+    private static final byte ADD = 'A';
+    private static final byte REPLACE = 'R';
+    private static final byte DELETE = 'D';
+
+    private final long generation;
+    private final FileChannel channel;
+
+    /**
+     * Получатель повторяемых записей.
+     */
+    interface Replay {
+        void add(int pageId, Map<Integer, Float> postings);
+
+        void replace(int pageId, Map<Integer, Float> postings);
+
+        void delete(Collection<Integer> pageIds);
+    }
+
+    private WriteAheadLog(long generation, FileChannel channel) {
+        this.generation = generation;
+        this.channel = channel;
+    }
+
+    /**
+     * Начинает пустой журнал поколения, затирая прежний файл с тем же именем.
+     */
+    static WriteAheadLog create(Path directory, long generation) throws IOException {
+        FileChannel channel = FileChannel.open(path(directory, generation), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        return new WriteAheadLog(generation, channel);
+    }
+
+    long generation() {
+        return generation;
+    }
+
+    void add(int pageId, Map<Integer, Float> postings) throws IOException {
+        append(pagePostings(ADD, pageId, postings));
+    }
+
+    void replace(int pageId, Map<Integer, Float> postings) throws IOException {
+        append(pagePostings(REPLACE, pageId, postings));
+    }
+
+    void delete(Collection<Integer> pageIds) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(5 + pageIds.size() * 4);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(DELETE);
+        out.writeInt(pageIds.size());
+        for (Integer pageId : pageIds) out.writeInt(pageId);
+        append(bytes);
+    }
+
+    /**
+     * Сбрасывает на диск всё дописанное. Журнал, закрытый сменой буфера, был сброшен
+     * при закрытии.
+     */
+    void sync() throws IOException {
+        try {
+            channel.force(false);
+        } catch (ClosedChannelException e) {
+            log.trace("Write-ahead log {} already closed", generation);
+        }
+    }
+
+    /**
+     * Забывает записи: их содержимое уже сохранено в другом месте.
+     */
+    void truncate() throws IOException {
+        channel.truncate(0);
+        channel.force(true);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel.isOpen()) channel.force(false);
+        channel.close();
+    }
+
+    /**
+     * Поколения журналов в каталоге по возрастанию.
+     */
+    static List<Long> generations(Path directory) throws IOException {
+        List<Long> generations = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*")) {
+            for (Path file : files) {
+                try {
+                    generations.add(Long.parseLong(file.getFileName().toString().substring(PREFIX.length())));
+                } catch (NumberFormatException e) {
+                    log.warn("Unexpected file {} in segment index directory", file);
+                }
+            }
+        }
+        generations.sort(Comparator.naturalOrder());
+        return generations;
+    }
+
+    /**
+     * Повторяет записи журнала поколения до первой повреждённой; возвращает число повторённых.
+     */
+    static int replay(Path directory, long generation, Replay target) throws IOException {
+        Path path = path(directory, generation);
+        long size = Files.size(path);
+        int records = 0;
+        CheckedInputStream checked = new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(path)), new CRC32());
+        try (DataInputStream in = new DataInputStream(checked)) {
+            while (true) {
+                checked.getChecksum().reset();
+                int type = in.read();
+                if (type < 0) break;
+                if (!replayRecord(type, in, checked, size, target)) {
+                    log.warn("Dropped corrupted tail of {} after {} records", path.getFileName(), records);
+                    break;
+                }
+                records++;
+            }
+        } catch (EOFException e) {
+            log.warn("Dropped truncated last record of {} after {} records", path.getFileName(), records);
+        }
+        return records;
+    }
+
+    /**
+     * Читает одну запись и применяет её, если она цела. Число вхождений проверяется
+     * по размеру файла до выделения памяти под них: в испорченной записи там может быть что угодно.
+     */
+    private static boolean replayRecord(int type, DataInputStream in, CheckedInputStream checked,
+                                        long size, Replay target) throws IOException {
+        if (type == DELETE) {
+            int count = in.readInt();
+            if (count < 0 || count * 4L > size) return false;
+            List<Integer> pageIds = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) pageIds.add(in.readInt());
+            if (!checksumMatches(in, checked)) return false;
+            target.delete(pageIds);
+            return true;
+        }
+        if (type != ADD && type != REPLACE) return false;
+        int pageId = in.readInt();
+        int count = in.readInt();
+        if (count < 0 || count * 8L > size) return false;
+        Map<Integer, Float> postings = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) postings.put(in.readInt(), in.readFloat());
+        if (!checksumMatches(in, checked)) return false;
+        if (type == ADD) {
+            target.add(pageId, postings);
+        } else {
+            target.replace(pageId, postings);
+        }
+        return true;
+    }
+
+    private static boolean checksumMatches(DataInputStream in, CheckedInputStream checked) throws IOException {
+        int expected = (int) checked.getChecksum().getValue();
+        return in.readInt() == expected;
+    }
+
+    static void delete(Path directory, long generation) {
+        try {
+            Files.deleteIfExists(path(directory, generation));
+        } catch (IOException e) {
+            log.warn("Write-ahead log {} not deleted: {}", path(directory, generation), e.getMessage());
+        }
+    }
+
+    private static Path path(Path directory, long generation) {
+        return directory.resolve(PREFIX + generation);
+    }
+
+    private static ByteArrayOutputStream pagePostings(byte type, int pageId, Map<Integer, Float> postings)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(9 + postings.size() * 8);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(type);
+        out.writeInt(pageId);
+        out.writeInt(postings.size());
+        for (Map.Entry<Integer, Float> posting : postings.entrySet()) {
+            out.writeInt(posting.getKey());
+            out.writeFloat(posting.getValue());
+        }
+        return bytes;
+    }
+
+    /**
+     * Дописывает запись вместе с её CRC32 одним буфером.
+     */
+    private void append(ByteArrayOutputStream record) throws IOException {
+        byte[] body = record.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        ByteBuffer buffer = ByteBuffer.allocate(body.length + 4).put(body).putInt((int) crc.getValue()).flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+    }
+}
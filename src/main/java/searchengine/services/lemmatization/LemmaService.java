@@ -4,17 +4,18 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.lucene.morphology.LuceneMorphology;
 import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
-import org.jsoup.Jsoup;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Propagation;
-import org.springframework.transaction.annotation.Transactional;
+import searchengine.config.SearchEngineProperties;
 import searchengine.model.Page;
 import searchengine.model.Site;
+import searchengine.services.metrics.SearchEngineMetrics;
 import searchengine.services.siteops.SiteDataService;
+import searchengine.services.startup.StartupTasks;
 
 import javax.annotation.PostConstruct;
-import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -23,23 +24,40 @@ import java.util.regex.Pattern;
 @Slf4j
 public class LemmaService {
 
+    private static final String SERVICE_WORD = "";
+
     private final SiteDataService service;
+    private final SearchEngineMetrics metrics;
+    private final SearchEngineProperties properties;
+    private final StartupTasks startupTasks;
+
+    /**
+     * Словари морфологии читаются секунды, поэтому загружаются в фоне после старта;
+     * первый разбор текста до окончания загрузки её дожидается.
+     */
+    private CompletableFuture<LuceneMorphology> morphology;
 
-    public LuceneMorphology morphology;
+    /**
+     * Кэш словоформа -> лемма; для служебных частей речи хранится пустая строка.
+     * Словарь сайта быстро насыщается, поэтому после заполнения кэш не растёт,
+     * а новые формы разбираются морфологией без кэширования.
+     */
+    private final Map<String, String> morphologyCache = new ConcurrentHashMap<>();
 
     @PostConstruct
     public void init() {
-        try {
-            morphology = new RussianLuceneMorphology();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        morphology = startupTasks.submit("morphology", RussianLuceneMorphology::new);
+        metrics.registerMorphologyCache(morphologyCache);
     }
 
+    /**
+     * Леммы текста с числом вхождений. Ожидается уже очищенный от разметки текст:
+     * страницы разбирает {@link searchengine.indexing.HtmlExtractor} при загрузке.
+     */
     public Map<String, Integer> getLemmas(String text) {
         log.debug("Calling method getLemmas - LemmaService");
         Map<String, Integer> lemmas = new HashMap<>();
-        text = cleanTags(text).toLowerCase(Locale.ROOT);
+        text = text.toLowerCase(Locale.ROOT);
 
         String regex = "\\b[а-яА-ЯёЁ]+\\b";
         Pattern pattern = Pattern.compile(regex);
@@ -50,11 +68,8 @@ public class LemmaService {
             while (matcher.find()) {
 
                 String word = matcher.group();
-                if (filter(word)) continue;
-
-                List<String> wordBaseForms =
-                        morphology.getNormalForms(word);
-                String base = wordBaseForms.get(0);
+                String base = normalForm(word);
+                if (base.isEmpty()) continue;
 
                 if (lemmas.containsKey(base)) {
                     log.debug("Found lemma {} in database", base);
@@ -72,19 +87,40 @@ public class LemmaService {
         return lemmas;
     }
 
-    @Transactional(propagation = Propagation.REQUIRES_NEW)
-    public void saveLemmas(Site site, Page page, String html) {
+    public void saveLemmas(Site site, Page page, String text) {
         log.debug("Calling method saveLemmas - LemmaService by {}", site.getName());
-        Map<String, Integer> lemmaCounts = getLemmas(html);
-        for (Map.Entry<String, Integer> entry : lemmaCounts.entrySet()) {
-            String lemma = entry.getKey();
-            Integer count = entry.getValue();
-            service.saveLemma(site, page, lemma, count);
+        Map<String, Integer> lemmas = getLemmas(text);
+        metrics.recordLemmasPerPage(lemmas.size());
+        service.savePostings(site, page, lemmas);
+    }
+
+    public void reindexPages(Site site, Map<Page, String> texts) {
+        log.debug("Calling method reindexPages - LemmaService for {} pages", texts.size());
+        Map<Page, Map<String, Integer>> lemmas = new IdentityHashMap<>();
+        texts.forEach((page, text) -> {
+            Map<String, Integer> counts = getLemmas(text);
+            metrics.recordLemmasPerPage(counts.size());
+            lemmas.put(page, counts);
+        });
+        service.reindexPages(site, lemmas);
+    }
+
+    private String normalForm(String word) {
+        String cached = morphologyCache.get(word);
+        if (cached != null) {
+            metrics.morphologyCacheHit();
+            return cached;
         }
+        metrics.morphologyCacheMiss();
+        String base = filter(word) ? SERVICE_WORD : morphology.join().getNormalForms(word).get(0);
+        if (morphologyCache.size() < properties.getMorphologyCacheSize()) {
+            morphologyCache.put(word, base);
+        }
+        return base;
     }
 
     public boolean filter(String word) {
-        List<String> morphInfoList = morphology.getMorphInfo(word);
+        List<String> morphInfoList = morphology.join().getMorphInfo(word);
         for (String info : morphInfoList) {
             if (info.contains("СОЮЗ") || info.contains("МЕЖД") || info.contains("ПРЕДЛ") || info.contains("ЧАСТ")) {
                 return true;
@@ -92,8 +128,4 @@ public class LemmaService {
         }
         return false;
     }
-
-    public String cleanTags(String text) {
-        return Jsoup.parse(text).text();
-    }
 }
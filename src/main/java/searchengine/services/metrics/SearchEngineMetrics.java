@@ -0,0 +1,140 @@
+package searchengine.services.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Метрики обхода, лемматизации, пакетной записи и поиска.
+ * Имена метрик собраны здесь, чтобы сервисы не зависели от Micrometer напрямую.
+ */
+@Component
+public class SearchEngineMetrics {
+
+    private final MeterRegistry registry;
+    private final AtomicInteger pagesInFlight = new AtomicInteger();
+    private final DistributionSummary lemmasPerPage;
+    private final Counter morphologyHits;
+    private final Counter morphologyMisses;
+
+    public SearchEngineMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        Gauge.builder("searchengine.crawler.pages.inflight", pagesInFlight, AtomicInteger::get)
+                .description("Страницы, загружаемые или ожидающие записи")
+                .register(registry);
+        this.lemmasPerPage = DistributionSummary.builder("searchengine.indexing.page.lemmas")
+                .description("Число различных лемм на странице")
+                .register(registry);
+        this.morphologyHits = Counter.builder("searchengine.morphology.cache")
+                .tag("result", "hit").register(registry);
+        this.morphologyMisses = Counter.builder("searchengine.morphology.cache")
+                .tag("result", "miss").register(registry);
+    }
+
+    public void recordFetch(String site, int status, long startNanos) {
+        Timer.builder("searchengine.crawler.fetch")
+                .tag("site", site)
+                .tag("status", status > 0 ? String.valueOf(status) : "IO_ERROR")
+                .register(registry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void duplicateSkipped(String site, String kind) {
+        Counter.builder("searchengine.crawler.duplicates")
+                .description("Страницы, пропущенные как варианты или почти дубликаты уже загруженных")
+                .tag("site", site)
+                .tag("kind", kind)
+                .register(registry)
+                .increment();
+    }
+
+    public void registerHostConcurrency(String host, Supplier<Number> limit, Supplier<Number> inFlight) {
+        Gauge.builder("searchengine.crawler.concurrency.limit", limit)
+                .description("Текущий адаптивный предел одновременных загрузок с хоста")
+                .tag("host", host)
+                .register(registry);
+        Gauge.builder("searchengine.crawler.concurrency.inflight", inFlight)
+                .tag("host", host)
+                .register(registry);
+    }
+
+    public void crawlBackoff(String host, String reason) {
+        Counter.builder("searchengine.crawler.backoff")
+                .description("Уменьшения предела загрузок с хоста из-за перегрузки или роста задержки")
+                .tag("host", host)
+                .tag("reason", reason)
+                .register(registry)
+                .increment();
+    }
+
+    public void pagesStarted(int count) {
+        pagesInFlight.addAndGet(count);
+    }
+
+    public void pagesFinished(int count) {
+        pagesInFlight.addAndGet(-count);
+    }
+
+    public void recordLemmasPerPage(int count) {
+        lemmasPerPage.record(count);
+    }
+
+    public void morphologyCacheHit() {
+        morphologyHits.increment();
+    }
+
+    public void morphologyCacheMiss() {
+        morphologyMisses.increment();
+    }
+
+    public void registerMorphologyCache(Map<?, ?> cache) {
+        Gauge.builder("searchengine.morphology.cache.size", cache, Map::size).register(registry);
+    }
+
+    public <T> T recordBatch(String operation, int size, Supplier<T> action) {
+        DistributionSummary.builder("searchengine.db.batch.size")
+                .tag("operation", operation)
+                .register(registry)
+                .record(size);
+        return Timer.builder("searchengine.db.batch")
+                .tag("operation", operation)
+                .register(registry)
+                .record(action);
+    }
+
+    public void registerSearchLimiter(Supplier<Number> limit, Supplier<Number> inFlight, Supplier<Number> queued) {
+        Gauge.builder("searchengine.search.limit", limit)
+                .description("Текущий адаптивный предел одновременных поисковых запросов")
+                .register(registry);
+        Gauge.builder("searchengine.search.inflight", inFlight).register(registry);
+        Gauge.builder("searchengine.search.queued", queued).register(registry);
+    }
+
+    public void searchRejected(String reason) {
+        Counter.builder("searchengine.search.rejected")
+                .tag("reason", reason)
+                .register(registry)
+                .increment();
+    }
+
+    public void recordSearchQueueWait(long nanos) {
+        Timer.builder("searchengine.search.queue.wait")
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public <T> T recordSearchPhase(String phase, Supplier<T> action) {
+        return Timer.builder("searchengine.search.phase")
+                .tag("phase", phase)
+                .register(registry)
+                .record(action);
+    }
+}
@@ -0,0 +1,68 @@
+package searchengine.services.search;
+
+/**
+ * Адаптивный предел одновременных запросов по градиенту задержки.
+ * Оценка задержки без нагрузки — наименьшая задержка с последней проверки.
+ * Если текущая задержка выше неё больше чем в {@link #TOLERANCE} раз, предел
+ * уменьшается пропорционально, иначе растёт на корень из предела — запас на
+ * небольшую очередь. Изменение сглаживается, результат ограничен [min, max].
+ * <p>
+ * Под постоянной нагрузкой наименьшая задержка уже не показывает задержку без
+ * нагрузки, поэтому раз в {@link #PROBE_SAMPLES} запросов оценка сбрасывается,
+ * а предел уменьшается вдвое: на меньшей параллельности оценка снова снимается
+ * ближе к настоящей, и рост задержки вместе с данными тоже учитывается.
+ * Не потокобезопасен: вызывающий держит свою блокировку.
+ */
+final class GradientLimit {
+
+    static final double TOLERANCE = 1.5;
+    static final int PROBE_SAMPLES = 1000;
+    private static final double SMOOTHING = 0.2;
+
+    private final int min;
+    private final int max;
+    private double limit;
+    private long noLoadRtt;
+    private long lastRtt;
+    private int samples;
+
+    GradientLimit(int initial, int min, int max) {
+        this.min = min;
+        this.max = max;
+        this.limit = Math.max(min, Math.min(max, initial));
+    }
+
+    int limit() {
+        return (int) limit;
+    }
+
+    /**
+     * Последняя задержка успешного запроса; 0 — запросов ещё не было.
+     */
+    long lastRttNanos() {
+        return lastRtt;
+    }
+
+    /**
+     * Учитывает задержку завершённого запроса; inFlight — сколько запросов
+     * выполнялось, когда он начался. Пока занято меньше половины предела,
+     * задержка не говорит о пределе, и он не растёт.
+     */
+    void sample(long rttNanos, int inFlight) {
+        long rtt = Math.max(1, rttNanos);
+        lastRtt = rtt;
+        if (++samples >= PROBE_SAMPLES) {
+            samples = 0;
+            noLoadRtt = 0;
+            limit = Math.max(min, limit / 2);
+            return;
+        }
+        if (noLoadRtt == 0 || rtt < noLoadRtt) noLoadRtt = rtt;
+        if (inFlight < limit / 2) return;
+
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * noLoadRtt / rtt));
+        double next = limit * gradient + Math.sqrt(limit);
+        next = limit * (1 - SMOOTHING) + next * SMOOTHING;
+        limit = Math.max(min, Math.min(max, next));
+    }
+}
@@ -0,0 +1,137 @@
+package searchengine.services.search;
+
+import searchengine.dto.projection.PostingView;
+
+import java.util.*;
+
+/**
+ * Отбор k лучших страниц по сумме рангов лемм запроса с динамическим отсечением
+ * по схеме MaxScore. Для каждой леммы известна верхняя граница ранга (lemma.max_rank),
+ * поэтому оценка страницы сверху — уже набранная сумма плюс границы непроверенных лемм.
+ * <p>
+ * Кандидаты берутся из вхождений самой редкой леммы и обходятся по убыванию её ранга.
+ * Вхождения остальных лемм загружаются только для пачки кандидатов, ещё способных войти
+ * в top-k, и после каждой леммы пачка снова сверяется с k-й суммой. Страницы, отброшенные
+ * по границе, не могли войти в top-k, поэтому первые k результатов совпадают с полным
+ * перебором, включая порядок при равных суммах.
+ */
+public final class MaxScoreRanker {
+
+    static final int PROBE_BATCH = 500;
+
+    /**
+     * Больше сумма, при равенстве — меньше id: тот же порядок, что у полного перебора.
+     */
+    private static final Comparator<Map.Entry<Integer, Double>> BEST_FIRST =
+            Map.Entry.<Integer, Double>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey());
+
+    private MaxScoreRanker() {
+    }
+
+    /**
+     * Лемма запроса: её id на всех выбранных сайтах и наибольшая из их границ ранга.
+     */
+    public record Term(String lemma, List<Integer> lemmaIds, double maxRank) {
+    }
+
+    /**
+     * Суммы рангов отобранных страниц; matched — сколько страниц проверено полностью
+     * и содержит все леммы. Если отсечение что-то отбросило, matched — оценка снизу.
+     */
+    public record Result(Map<Integer, Double> ranks, int candidates, int matched, boolean exact) {
+    }
+
+    /**
+     * Источник вхождений: pageIds == null — все вхождения лемм.
+     */
+    public interface Postings {
+        List<PostingView> find(Collection<Integer> lemmaIds, Collection<Integer> pageIds);
+    }
+
+    public static Result topK(List<Term> terms, int k, Postings postings, SearchProfiler profiler) {
+        if (terms.isEmpty() || k <= 0) return new Result(Map.of(), 0, 0, true);
+
+        Map<Integer, Double> first = sumRanks(postings.find(terms.get(0).lemmaIds(), null));
+        profiler.rows("top_k", first.size());
+        List<Map.Entry<Integer, Double>> candidates = new ArrayList<>(first.entrySet());
+        candidates.sort(BEST_FIRST);
+
+        PriorityQueue<Map.Entry<Integer, Double>> top = new PriorityQueue<>(k, BEST_FIRST.reversed());
+        int matched = 0;
+        boolean exact = true;
+        int next = 0;
+        while (next < candidates.size()) {
+            Map.Entry<Integer, Double> worst = top.size() < k ? null : top.peek();
+            Map<Integer, Double> batch = new LinkedHashMap<>();
+            while (next < candidates.size() && batch.size() < PROBE_BATCH) {
+                Map.Entry<Integer, Double> candidate = candidates.get(next++);
+                if (cannotEnter(candidate.getKey(), candidate.getValue(), terms, 1, worst)) {
+                    exact = false;
+                } else {
+                    batch.put(candidate.getKey(), candidate.getValue());
+                }
+            }
+
+            for (int i = 1; i < terms.size() && !batch.isEmpty(); i++) {
+                List<PostingView> found = postings.find(terms.get(i).lemmaIds(), batch.keySet());
+                profiler.rows("top_k", found.size());
+                Map<Integer, Double> ranks = sumRanks(found);
+                batch.keySet().retainAll(ranks.keySet());
+                batch.replaceAll((pageId, sum) -> sum + ranks.get(pageId));
+                int checked = i + 1;
+                if (batch.entrySet().removeIf(e -> cannotEnter(e.getKey(), e.getValue(), terms, checked, worst))) {
+                    exact = false;
+                }
+            }
+
+            for (Map.Entry<Integer, Double> scored : batch.entrySet()) {
+                matched++;
+                if (top.size() < k) {
+                    top.add(Map.entry(scored.getKey(), scored.getValue()));
+                } else if (BEST_FIRST.compare(scored, top.peek()) < 0) {
+                    top.poll();
+                    top.add(Map.entry(scored.getKey(), scored.getValue()));
+                }
+            }
+        }
+
+        Map<Integer, Double> ranks = new HashMap<>();
+        top.forEach(entry -> ranks.put(entry.getKey(), entry.getValue()));
+        return new Result(ranks, candidates.size(), matched, exact);
+    }
+
+    /**
+     * k лучших страниц из уже посчитанных сумм в том же порядке, что у topK.
+     */
+    public static Map<Integer, Double> best(Map<Integer, Double> ranks, int k) {
+        Map<Integer, Double> best = new HashMap<>();
+        ranks.entrySet().stream()
+                .sorted(BEST_FIRST)
+                .limit(k)
+                .forEach(entry -> best.put(entry.getKey(), entry.getValue()));
+        return best;
+    }
+
+    /**
+     * Страница не войдёт в top-k, даже если у непроверенных лемм (с from) у неё
+     * наибольшие ранги. Границы прибавляются в том же порядке, что и ранги при подсчёте
+     * суммы, поэтому округление double не делает оценку сверху меньше точной суммы.
+     */
+    private static boolean cannotEnter(int pageId, double sum, List<Term> terms, int from,
+                                       Map.Entry<Integer, Double> worst) {
+        if (worst == null) return false;
+        double bound = sum;
+        for (int i = from; i < terms.size(); i++) {
+            bound += terms.get(i).maxRank();
+        }
+        return bound < worst.getValue() || (bound == worst.getValue() && pageId > worst.getKey());
+    }
+
+    private static Map<Integer, Double> sumRanks(List<PostingView> postings) {
+        Map<Integer, Double> ranks = new HashMap<>();
+        for (PostingView posting : postings) {
+            ranks.merge(posting.pageId(), posting.rank().doubleValue(), Double::sum);
+        }
+        return ranks;
+    }
+}
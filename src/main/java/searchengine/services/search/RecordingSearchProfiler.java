@@ -0,0 +1,132 @@
+package searchengine.services.search;
+
+import searchengine.dto.projection.LemmaView;
+import searchengine.dto.searching.SearchExplain;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Профилировщик одного запроса; используется из одного потока.
+ * Время этапов с одинаковым именем суммируется. Поиск по каждому сайту
+ * пишет в собственный профилировщик из {@link #site(int)}, который
+ * используется только потоком этого сайта.
+ */
+class RecordingSearchProfiler implements SearchProfiler {
+
+    private final long started = System.nanoTime();
+    private final Map<String, long[]> phases = new LinkedHashMap<>();
+    private final Map<Integer, RecordingSearchProfiler> sites = new ConcurrentSkipListMap<>();
+    private final List<SearchExplain.DroppedLemma> dropped = new ArrayList<>();
+    private final List<SearchExplain.IntersectionStep> steps = new ArrayList<>();
+    private List<String> queryLemmas = List.of();
+    private List<String> missingLemmas;
+    private List<String> intersectionOrder = List.of();
+    private double threshold;
+    private SearchExplain.Pruning pruning;
+
+    @Override
+    public SearchProfiler site(int siteId) {
+        return sites.computeIfAbsent(siteId, id -> {
+            RecordingSearchProfiler site = new RecordingSearchProfiler();
+            site.queryLemmas = queryLemmas;
+            return site;
+        });
+    }
+
+    @Override
+    public <T> T phase(String name, Supplier<T> action) {
+        long[] phase = phase(name);
+        long start = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            phase[0] += System.nanoTime() - start;
+        }
+    }
+
+    @Override
+    public void rows(String phase, long rows) {
+        phase(phase)[1] += rows;
+    }
+
+    @Override
+    public void queryLemmas(List<String> lemmas) {
+        this.queryLemmas = lemmas;
+    }
+
+    @Override
+    public void lemmasFound(List<LemmaView> lemmas, double threshold) {
+        this.threshold = threshold;
+        Set<String> found = lemmas.stream().map(LemmaView::lemma).collect(Collectors.toSet());
+        this.missingLemmas = queryLemmas.stream().filter(lemma -> !found.contains(lemma)).toList();
+    }
+
+    @Override
+    public void dropped(LemmaView lemma) {
+        dropped.add(new SearchExplain.DroppedLemma(lemma.lemma(), lemma.siteId(), lemma.frequency()));
+    }
+
+    @Override
+    public void intersectionOrder(List<String> lemmas) {
+        this.intersectionOrder = lemmas;
+    }
+
+    @Override
+    public void intersectionStep(int postings, int pagesLeft) {
+        String lemma = steps.size() < intersectionOrder.size() ? intersectionOrder.get(steps.size()) : null;
+        steps.add(new SearchExplain.IntersectionStep(lemma, postings, pagesLeft));
+    }
+
+    @Override
+    public void pruning(int topK, int candidates, int matched, boolean exact) {
+        this.pruning = new SearchExplain.Pruning(topK, candidates, matched, exact);
+    }
+
+    /**
+     * Общие для запроса missingLemmas — леммы, которых нет ни на одном из сайтов.
+     */
+    @Override
+    public SearchExplain explain() {
+        SearchExplain explain = new SearchExplain();
+        explain.setQueryLemmas(queryLemmas);
+        explain.setMissingLemmas(queryLemmas.stream()
+                .filter(lemma -> sites.values().stream().allMatch(site -> site.missing().contains(lemma)))
+                .toList());
+        explain.setPruning(pruning);
+        explain.setPhases(phases());
+        explain.setSites(sites.entrySet().stream()
+                .map(e -> e.getValue().siteExplain(e.getKey()))
+                .toList());
+        explain.setTotalMillis(millis(System.nanoTime() - started));
+        return explain;
+    }
+
+    private SearchExplain.SiteExplain siteExplain(int siteId) {
+        return new SearchExplain.SiteExplain(siteId, missing(), threshold, dropped, steps, pruning, phases());
+    }
+
+    private List<String> missing() {
+        return missingLemmas == null ? queryLemmas : missingLemmas;
+    }
+
+    private List<SearchExplain.Phase> phases() {
+        return phases.entrySet().stream()
+                .map(e -> new SearchExplain.Phase(e.getKey(), millis(e.getValue()[0]), e.getValue()[1]))
+                .toList();
+    }
+
+    private long[] phase(String name) {
+        return phases.computeIfAbsent(name, key -> new long[2]);
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1_000.0) / 1_000.0;
+    }
+}
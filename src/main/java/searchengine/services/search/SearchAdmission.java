@@ -0,0 +1,171 @@
+package searchengine.services.search;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchEngineProperties;
+import searchengine.exception.IndexingException;
+import searchengine.exception.SearchRejectedException;
+import searchengine.services.metrics.SearchEngineMetrics;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Допуск поисковых запросов перед {@link SearchService}. Одновременно выполняется
+ * не больше запросов, чем разрешает {@link GradientLimit}; остальные ждут в
+ * ограниченной очереди не дольше {@code searchQueueTimeout}. Очередь разбита
+ * по клиентам, и освободившееся место отдаётся клиентам по кругу, так что клиент
+ * с сотней запросов не задерживает клиента с одним. Клиент, у которого в очереди
+ * уже {@code searchQueuePerClient} запросов, получает 429, переполнение общей
+ * очереди и истечение ожидания — 503; в обоих случаях с Retry-After.
+ */
+@Component
+@Slf4j
+public class SearchAdmission {
+
+    private static final String CLIENT_LIMITED = "Слишком много поисковых запросов, повторите позже";
+    private static final String OVERLOADED = "Сервер перегружен поисковыми запросами, повторите позже";
+    private static final String INTERRUPTED = "Поиск был прерван";
+
+    private final SearchEngineProperties properties;
+    private final SearchEngineMetrics metrics;
+    private final GradientLimit limit;
+    /**
+     * Очереди клиентов в порядке обслуживания: клиент, получивший место,
+     * переходит в конец.
+     */
+    private final Map<String, ArrayDeque<CompletableFuture<Void>>> waiting = new LinkedHashMap<>();
+    private int queued;
+    private int inFlight;
+
+    public SearchAdmission(SearchEngineProperties properties, SearchEngineMetrics metrics) {
+        this.properties = properties;
+        this.metrics = metrics;
+        this.limit = new GradientLimit(properties.getSearchLimitInitial(),
+                properties.getSearchLimitMin(), properties.getSearchLimitMax());
+        metrics.registerSearchLimiter(this::limit, this::inFlight, this::queued);
+    }
+
+    /**
+     * Выполняет поиск, когда для него есть место. Задержка учитывается в пределе
+     * только у успешных запросов: ошибка ничего не говорит о нагрузке.
+     */
+    public <T> T call(String client, Supplier<T> search) {
+        int startedWith = acquire(client);
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            T result = search.get();
+            success = true;
+            return result;
+        } finally {
+            release(success ? System.nanoTime() - start : -1, startedWith);
+        }
+    }
+
+    public synchronized int limit() {
+        return limit.limit();
+    }
+
+    public synchronized int inFlight() {
+        return inFlight;
+    }
+
+    public synchronized int queued() {
+        return queued;
+    }
+
+    /**
+     * Возвращает число выполнявшихся запросов на момент допуска, включая этот.
+     */
+    private int acquire(String client) {
+        CompletableFuture<Void> ticket = new CompletableFuture<>();
+        synchronized (this) {
+            if (queued == 0 && inFlight < limit.limit()) {
+                return ++inFlight;
+            }
+            ArrayDeque<CompletableFuture<Void>> own = waiting.get(client);
+            if (own != null && own.size() >= properties.getSearchQueuePerClient()) {
+                throw reject("client", true);
+            }
+            if (queued >= properties.getSearchQueueCapacity()) {
+                throw reject("queue", false);
+            }
+            waiting.computeIfAbsent(client, key -> new ArrayDeque<>()).add(ticket);
+            queued++;
+        }
+
+        long waitStart = System.nanoTime();
+        try {
+            ticket.get(properties.getSearchQueueTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            synchronized (this) {
+                if (withdraw(client, ticket)) throw reject("timeout", false);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            synchronized (this) {
+                if (!withdraw(client, ticket)) releaseSlot();
+            }
+            throw new IndexingException(INTERRUPTED);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            metrics.recordSearchQueueWait(System.nanoTime() - waitStart);
+        }
+        synchronized (this) {
+            return inFlight;
+        }
+    }
+
+    private synchronized void release(long rttNanos, int startedWith) {
+        if (rttNanos >= 0) limit.sample(rttNanos, startedWith);
+        releaseSlot();
+    }
+
+    /**
+     * Освобождает место и раздаёт свободные места ожидающим по кругу клиентов;
+     * место передаётся ожидающему сразу, и inFlight не опускается между запросами.
+     */
+    private void releaseSlot() {
+        inFlight--;
+        while (queued > 0 && inFlight < limit.limit()) {
+            Map.Entry<String, ArrayDeque<CompletableFuture<Void>>> next = waiting.entrySet().iterator().next();
+            CompletableFuture<Void> ticket = next.getValue().poll();
+            waiting.remove(next.getKey());
+            if (!next.getValue().isEmpty()) waiting.put(next.getKey(), next.getValue());
+            queued--;
+            inFlight++;
+            ticket.complete(null);
+        }
+    }
+
+    /**
+     * Убирает билет из очереди; false — место ему уже отдано.
+     */
+    private boolean withdraw(String client, CompletableFuture<Void> ticket) {
+        ArrayDeque<CompletableFuture<Void>> own = waiting.get(client);
+        if (own == null || !own.remove(ticket)) return false;
+        if (own.isEmpty()) waiting.remove(client);
+        queued--;
+        return true;
+    }
+
+    /**
+     * Retry-After: сколько займёт разбор очереди при текущем пределе
+     * и средней задержке, но не меньше секунды.
+     */
+    private SearchRejectedException reject(String reason, boolean clientLimited) {
+        metrics.searchRejected(reason);
+        double batches = (double) queued / Math.max(1, limit.limit()) + 1;
+        long retryAfter = Math.max(1, (long) Math.ceil(limit.lastRttNanos() * batches / 1e9));
+        log.debug("Search rejected ({}): inFlight={}, queued={}, limit={}", reason, inFlight, queued, limit.limit());
+        return new SearchRejectedException(clientLimited ? CLIENT_LIMITED : OVERLOADED, clientLimited, retryAfter);
+    }
+}
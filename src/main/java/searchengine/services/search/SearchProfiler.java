@@ -0,0 +1,53 @@
+package searchengine.services.search;
+
+import searchengine.dto.projection.LemmaView;
+import searchengine.dto.searching.SearchExplain;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Сбор разбора поискового запроса. Методы по умолчанию ничего не делают:
+ * без explain используется {@link #DISABLED}, и поиск не платит за профилирование.
+ */
+public interface SearchProfiler {
+
+    SearchProfiler DISABLED = new SearchProfiler() {
+    };
+
+    /**
+     * Профилировщик поиска по одному сайту; используется из потока, который ищет по этому сайту.
+     */
+    default SearchProfiler site(int siteId) {
+        return this;
+    }
+
+    default <T> T phase(String name, Supplier<T> action) {
+        return action.get();
+    }
+
+    default void rows(String phase, long rows) {
+    }
+
+    default void queryLemmas(List<String> lemmas) {
+    }
+
+    default void lemmasFound(List<LemmaView> lemmas, double threshold) {
+    }
+
+    default void dropped(LemmaView lemma) {
+    }
+
+    default void intersectionOrder(List<String> lemmas) {
+    }
+
+    default void intersectionStep(int postings, int pagesLeft) {
+    }
+
+    default void pruning(int topK, int candidates, int matched, boolean exact) {
+    }
+
+    default SearchExplain explain() {
+        return null;
+    }
+}
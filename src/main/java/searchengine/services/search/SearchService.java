@@ -2,26 +2,31 @@ package searchengine.services.search;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import searchengine.dto.indexing.HtmlContent;
+import searchengine.dto.projection.LemmaView;
+import searchengine.dto.projection.PageView;
+import searchengine.dto.projection.PostingView;
 import searchengine.dto.searching.RelevanceItem;
 import searchengine.dto.searching.SearchingResponse;
 import searchengine.dto.searching.SearchingData;
 import searchengine.exception.IndexingException;
-import searchengine.model.Index;
-import searchengine.model.Lemma;
-import searchengine.model.Page;
-import searchengine.repositories.IndexRepository;
+import searchengine.indexing.HtmlExtractor;
+import searchengine.model.Site;
 import searchengine.repositories.LemmaRepository;
 import searchengine.repositories.PageRepository;
+import searchengine.repositories.SiteRepository;
+import searchengine.services.indexstore.IndexStore;
 import searchengine.services.lemmatization.LemmaService;
+import searchengine.services.metrics.SearchEngineMetrics;
 
 import java.util.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Service
@@ -31,85 +36,234 @@ public class SearchService {
 
     private final PageRepository pageRepository;
     private final LemmaRepository lemmaRepository;
-    private final IndexRepository indexRepository;
+    private final IndexStore indexStore;
+    private final SiteRepository siteRepository;
     private final LemmaService lemmaService;
+    private final SearchEngineMetrics metrics;
+    private final SiteSearchExecutor siteSearchExecutor;
 
     private static final String EMPTY_QUERY = "Задан пустой поисковый запрос";
-
+    private static final MaxScoreRanker.Result NOTHING = new MaxScoreRanker.Result(Map.of(), 0, 0, true);
+
+    /**
+     * С pruning=true страницы отбираются {@link MaxScoreRanker} только до offset + limit;
+     * выдача та же, что при полном переборе. В обоих режимах сниппеты строятся только
+     * до конца запрошенной страницы, поэтому count — число совпадений без страниц,
+     * чей сниппет оказался пуст, точное лишь при countExact=true.
+     */
     @Transactional(readOnly = true)
-    public SearchingResponse search(String query, String site, int offset, int limit) {
+    public SearchingResponse search(String query, String site, int offset, int limit, boolean explain,
+                                    boolean pruning) {
         if (query.isEmpty()) {
             throw new IndexingException(EMPTY_QUERY);
         }
+        SearchProfiler profiler = explain ? new RecordingSearchProfiler() : SearchProfiler.DISABLED;
 
-        List<SearchingData> data = search(query, site);
+        log.debug("Search query: {}", query);
+        log.debug("Search site: {}", site);
+        List<String> lemmas = phase("query_lemmas", profiler,
+                () -> List.copyOf(lemmaService.getLemmas(query).keySet()));
+        profiler.queryLemmas(lemmas);
+        profiler.rows("query_lemmas", lemmas.size());
+        log.debug("After getting lemmas: {}", lemmas);
+        Map<Integer, Site> sites = findSites(site);
 
         Pageable pageable = PageRequest.of(offset / limit, limit);
-
-        org.springframework.data.domain.Page<SearchingData> page = paginateResults(data, pageable);
+        int wanted = (int) pageable.getOffset() + limit;
+        Map<Integer, Optional<SearchingData>> snippets = new HashMap<>();
+        int k = pruning ? wanted : 0;
+        MaxScoreRanker.Result found;
+        List<SearchingData> shown;
+        while (true) {
+            int topK = k;
+            found = searchSites(lemmas, sites.keySet(), topK, profiler);
+            MaxScoreRanker.Result ranked = found;
+            List<RelevanceItem> relevanceItems = ranked.ranks().isEmpty() ? List.of()
+                    : phase("scoring", profiler, () -> calculateRelevance(ranked.ranks()));
+            profiler.rows("scoring", relevanceItems.size());
+            shown = phase("snippets", profiler, () -> withSnippets(relevanceItems, wanted, snippets, sites, lemmas, profiler));
+            if (!pruning || shown.size() >= wanted || ranked.ranks().size() < topK) break;
+            // Страницы без сниппета вытеснили часть выдачи: top-k берётся заново с запасом.
+            k = topK * 2;
+        }
+        profiler.rows("snippets", shown.size());
+        if (pruning) {
+            profiler.pruning(k, found.candidates(), found.matched(), found.exact());
+        }
+        // Страницы дальше запрошенной не проверялись на пустой сниппет и входят в count.
+        long blank = snippets.values().stream().filter(Optional::isEmpty).count();
+        long count = Math.max(shown.size(), found.matched() - blank);
+        boolean countExact = found.exact() && snippets.size() >= found.matched();
+        List<SearchingData> data = paginateResults(shown, pageable).getContent();
 
         SearchingResponse result = new SearchingResponse();
         result.setResult("true");
-        result.setCount(page.getTotalElements());
-        result.setData(page.getContent());
+        result.setCount(count);
+        result.setCountExact(countExact);
+        result.setData(data);
+        result.setExplain(profiler.explain());
 
         return result;
     }
 
-    public List<SearchingData> search(String query, String site) {
-        log.debug("Search query: {}", query);
-        List<SearchingData> data = new ArrayList<>();
-        log.debug("Search site: {}", site);
-        List<String> lemmas = List.copyOf(lemmaService.getLemmas(query).keySet());
-        log.debug("After getting lemmas: {}", lemmas);
-        boolean allSites = site.isEmpty();
-        long totalPages = pageRepository.count();
-        double threshold = totalPages * 0.7;
-
-        log.debug("Sorting lemmas");
-        List<Lemma> sortedLemmas = lemmas.stream()
-                .flatMap(lemmaStr -> lemmaRepository.findAllByLemma(lemmaStr).stream())
-                .filter(l -> allSites || l.getSite().getUrl().equals(site))
-                .filter(l -> l.getFrequency() < threshold)
-                .sorted(Comparator.comparingInt(Lemma::getFrequency))
-                .toList();
-        log.debug("After sorting lemmas");
+    /**
+     * Результаты со сниппетами в порядке релевантности, пока их не наберётся until;
+     * страницы, для которых сниппет пуст, пропускаются. Построенные сниппеты
+     * запоминаются в cache и не строятся повторно при новом отборе top-k.
+     */
+    private List<SearchingData> withSnippets(List<RelevanceItem> items, int until,
+                                             Map<Integer, Optional<SearchingData>> cache, Map<Integer, Site> sites,
+                                             List<String> lemmas, SearchProfiler profiler) {
+        List<SearchingData> result = new ArrayList<>();
+        for (RelevanceItem item : items) {
+            if (result.size() >= until) break;
+            PageView page = item.getPage();
+            cache.computeIfAbsent(page.id(),
+                    id -> Optional.ofNullable(createData(item, sites.get(page.siteId()), lemmas, profiler)))
+                    .ifPresent(result::add);
+        }
+        return result;
+    }
+
+    public List<RelevanceItem> search(List<String> lemmas, Set<Integer> siteIds) {
+        Map<Integer, Double> ranks = searchSites(lemmas, siteIds, 0, SearchProfiler.DISABLED).ranks();
+        return ranks.isEmpty() ? Collections.emptyList() : calculateRelevance(ranks);
+    }
+
+    /**
+     * Ищет по каждому сайту параллельно в {@link SiteSearchExecutor} и сливает
+     * суммы рангов страниц. С k > 0 каждый сайт отдаёт только свои k лучших
+     * страниц, и из их объединения снова берутся k лучших: страница, вошедшая
+     * в общий top-k, входит и в top-k своего сайта. С k = 0 — все совпадения.
+     * Нормировка по максимальному рангу остаётся общей и делается после слияния.
+     */
+    private MaxScoreRanker.Result searchSites(List<String> lemmas, Set<Integer> siteIds, int k,
+                                              SearchProfiler profiler) {
+        if (lemmas.isEmpty() || siteIds.isEmpty()) return NOTHING;
+        List<SiteResult> results = phase("sites", profiler, () -> siteSearchExecutor.forEachSite(siteIds,
+                siteId -> searchSite(lemmas, siteId, k, profiler.site(siteId))));
+        return phase("merge", profiler, () -> merge(results, k));
+    }
+
+    /**
+     * Леммы запроса, найденные на сайте, оставшиеся после порога частоты,
+     * и суммы рангов отобранных страниц сайта.
+     */
+    private record SiteResult(Set<String> found, Set<String> kept, MaxScoreRanker.Result result) {
+    }
+
+    private SiteResult searchSite(List<String> lemmas, int siteId, int k, SearchProfiler profiler) {
+        List<LemmaView> found = phase("lemma_lookup", profiler,
+                () -> lemmaRepository.findViewsBySiteIdAndLemmaIn(siteId, lemmas));
+        profiler.rows("lemma_lookup", found.size());
+        List<LemmaView> kept = dropFrequent(found, siteId, profiler);
+
+        MaxScoreRanker.Result result;
+        if (kept.isEmpty()) {
+            result = NOTHING;
+        } else if (k > 0) {
+            result = topK(kept, k, profiler);
+        } else {
+            log.debug("Filtering pages of site {}", siteId);
+            Map<Integer, Double> ranks = phase("intersection", profiler, () -> filterPagesByLemmas(kept, profiler));
+            result = new MaxScoreRanker.Result(ranks, ranks.size(), ranks.size(), true);
+        }
+        return new SiteResult(lemmaNames(found), lemmaNames(kept), result);
+    }
 
-        log.debug("Filtering pages");
-        List<Page> pages = filterPagesByLemmas(sortedLemmas, site);
-        if (pages.isEmpty()) return Collections.emptyList();
+    /**
+     * Отбрасывает леммы, которые встречаются на 70% страниц сайта и больше;
+     * оставшиеся упорядочены от самой редкой. Страницы считаются в БД: счётчики
+     * статистики знают только о записях своего узла. Если страниц не нашлось,
+     * ничего не отбрасывается.
+     */
+    private List<LemmaView> dropFrequent(List<LemmaView> found, int siteId, SearchProfiler profiler) {
+        long pages = pageRepository.countPageBySiteId(siteId);
+        double threshold = pages * 0.7;
+        profiler.lemmasFound(found, threshold);
+
+        List<LemmaView> kept = new ArrayList<>(found.size());
+        for (LemmaView lemma : found) {
+            if (pages == 0 || lemma.frequency() < threshold) {
+                kept.add(lemma);
+            } else {
+                profiler.dropped(lemma);
+            }
+        }
+        kept.sort(Comparator.comparingInt(LemmaView::frequency));
+        return kept;
+    }
 
-        log.debug("Calculating relevance");
-        List<RelevanceItem> relevanceItems = calculateRelevance(pages);
+    private MaxScoreRanker.Result topK(List<LemmaView> sortedLemmas, int k, SearchProfiler profiler) {
+        List<MaxScoreRanker.Term> terms = sortedLemmas.stream()
+                .map(lemma -> new MaxScoreRanker.Term(lemma.lemma(), List.of(lemma.id()), maxRank(lemma)))
+                .toList();
+        profiler.intersectionOrder(terms.stream().map(MaxScoreRanker.Term::lemma).toList());
+
+        MaxScoreRanker.Result result = phase("top_k", profiler, () -> MaxScoreRanker.topK(terms, k,
+                (lemmaIds, pageIds) -> pageIds == null
+                        ? indexStore.findPostings(lemmaIds)
+                        : indexStore.findPostings(lemmaIds, pageIds),
+                profiler));
+        profiler.pruning(k, result.candidates(), result.matched(), result.exact());
+        return result;
+    }
 
-        for (RelevanceItem relevanceItem : relevanceItems) {
-            SearchingData sd = createData(relevanceItem, lemmas);
-            if (sd != null) data.add(sd);
+    /**
+     * Лемма, найденная хотя бы на одном сайте и не отброшенная там по частоте,
+     * обязательна: сайт, на котором её нет вовсе, не может дать страниц со всеми
+     * леммами запроса, и его результат не учитывается. Леммы, которых нет
+     * ни на одном сайте, как и раньше, не учитываются.
+     */
+    private static MaxScoreRanker.Result merge(List<SiteResult> results, int k) {
+        Set<String> required = new HashSet<>();
+        results.forEach(site -> required.addAll(site.kept()));
+
+        Map<Integer, Double> ranks = new HashMap<>();
+        int candidates = 0;
+        int matched = 0;
+        boolean exact = true;
+        for (SiteResult site : results) {
+            if (!site.found().containsAll(required)) continue;
+            ranks.putAll(site.result().ranks());
+            candidates += site.result().candidates();
+            matched += site.result().matched();
+            exact &= site.result().exact();
         }
+        if (k > 0 && ranks.size() > k) ranks = MaxScoreRanker.best(ranks, k);
+        return new MaxScoreRanker.Result(ranks, candidates, matched, exact);
+    }
 
-        return data;
+    private static Set<String> lemmaNames(List<LemmaView> lemmas) {
+        return lemmas.stream().map(LemmaView::lemma).collect(Collectors.toSet());
     }
 
-    public SearchingData createData(RelevanceItem item, List<String> lemmas) {
-        log.info("Creating data for lemmas: {}", lemmas);
+    /**
+     * Лемма без известной границы (max_rank = 0 до миграции) не ограничивает оценку.
+     */
+    private static double maxRank(LemmaView lemma) {
+        return lemma.maxRank() == null || lemma.maxRank() <= 0 ? Double.POSITIVE_INFINITY : lemma.maxRank();
+    }
+
+    public SearchingData createData(RelevanceItem item, Site site, List<String> lemmas, SearchProfiler profiler) {
+        log.debug("Creating data for lemmas: {}", lemmas);
         SearchingData data = new SearchingData();
-        Page page = item.getPage();
-        String html = page.getContent();
-        Document doc = Jsoup.parse(html);
-        String snippet = getSnippet(page, lemmas);
-
-        data.setSite(page.getSite().getUrl());
-        data.setSiteName(page.getSite().getName());
-        data.setTitle(doc.title());
+        PageView page = item.getPage();
+        String html = profiler.phase("snippets.content", () -> pageRepository.findContentById(page.id()).orElse(""));
+        HtmlContent content = profiler.phase("snippets.parse", () -> HtmlExtractor.extract(html, ""));
+        String snippet = profiler.phase("snippets.text", () -> getSnippet(content.text(), lemmas));
+
+        data.setSite(site.getUrl());
+        data.setSiteName(site.getName());
+        data.setTitle(content.title());
         data.setRelevance(item.getRelevance());
-        data.setUri(page.getPath());
+        data.setUri(page.path());
         data.setSnippet(snippet);
 
         return snippet.isBlank() ? null : data;
     }
 
-    public String getSnippet(Page page, List<String> lemmas) {
-        String text = Jsoup.parse(page.getContent()).body().text();
+    public String getSnippet(String text, List<String> lemmas) {
         String lemma = lemmas.get(0).toLowerCase();
         String[] words = text.split("\\s+");
 
@@ -150,59 +304,93 @@ public class SearchService {
         return snippet.toString();
     }
 
-    public List<RelevanceItem> calculateRelevance(List<Page> pages) {
-        log.info("Calculating relevance");
-        List<RelevanceItem> items = pages.stream().map(page -> {
-            double sum = indexRepository.findAllByPageId(page.getId())
-                    .stream()
-                    .mapToDouble(Index::getRank).sum();
+    /**
+     * Нормирует суммарный ранг найденных лемм на странице по максимальному
+     * и подгружает только метаданные страниц (id, path, siteId), без HTML.
+     */
+    public List<RelevanceItem> calculateRelevance(Map<Integer, Double> ranks) {
+        return rankPages(ranks, pageRepository.findViewsByIdIn(ranks.keySet()));
+    }
 
-            return new RelevanceItem(page, sum);
-        }).sorted(Comparator.comparing(RelevanceItem::getRelevance).reversed()).toList();
+    public static List<RelevanceItem> rankPages(Map<Integer, Double> ranks, Collection<PageView> pages) {
+        double max = Collections.max(ranks.values());
 
-        double max = items.get(0).getRelevance();
+        return pages.stream()
+                .map(page -> new RelevanceItem(page, ranks.get(page.id()) / max))
+                .sorted(Comparator.comparing(RelevanceItem::getRelevance).reversed()
+                        .thenComparing(item -> item.getPage().id()))
+                .toList();
+    }
 
-        return items.stream()
-                .map(item -> new RelevanceItem(item.getPage(), item.getRelevance() / max))
-                .sorted(Comparator.comparing(RelevanceItem::getRelevance).reversed()).toList();
+    /**
+     * Пересекает списки вхождений лемм, начиная с самой редкой, и
+     * возвращает для каждой оставшейся страницы сумму рангов лемм запроса.
+     */
+    public Map<Integer, Double> filterPagesByLemmas(List<LemmaView> sortedLemmas, SearchProfiler profiler) {
+        if (sortedLemmas.isEmpty()) return Collections.emptyMap();
+
+        Map<String, List<Integer>> grouped = sortedLemmas.stream()
+                .collect(Collectors.groupingBy(LemmaView::lemma, LinkedHashMap::new,
+                        Collectors.mapping(LemmaView::id, Collectors.toList())));
+        profiler.intersectionOrder(List.copyOf(grouped.keySet()));
+
+        return intersectPostings(grouped.values().stream()
+                .map(indexStore::findPostings)
+                .iterator(), profiler);
     }
-    
-    public List<Page> filterPagesByLemmas(List<Lemma> sortedLemmas, String site) {
-        boolean allSites = site.isEmpty();
-        if (sortedLemmas.isEmpty()) return Collections.emptyList();
 
-        Map<String, List<Lemma>> grouped = sortedLemmas.stream()
-                .collect(Collectors.groupingBy(Lemma::getLemma));
+    /**
+     * Пересечение списков вхождений; списки берутся лениво, поэтому
+     * при пустом промежуточном результате остальные не загружаются.
+     */
+    public static Map<Integer, Double> intersectPostings(Iterator<List<PostingView>> postingsByLemma) {
+        return intersectPostings(postingsByLemma, SearchProfiler.DISABLED);
+    }
 
-        Set<Integer> commonPageIds = null;
+    static Map<Integer, Double> intersectPostings(Iterator<List<PostingView>> postingsByLemma,
+                                                  SearchProfiler profiler) {
+        Map<Integer, Double> common = null;
 
-        for (List<Lemma> lemmaGroup : grouped.values()) {
-            Set<Integer> pageIdsForLemma = lemmaGroup.stream()
-                    .flatMap(l -> indexRepository.findAllByLemmaId(l.getId()).stream())
-                    .map(Index::getPage)
-                    .filter(p -> allSites || p.getSite().getUrl().equals(site))
-                    .map(Page::getId)
-                    .collect(Collectors.toSet());
+        while (postingsByLemma.hasNext()) {
+            List<PostingView> postings = postingsByLemma.next();
+            Map<Integer, Double> ranksForLemma = new HashMap<>();
+            for (PostingView posting : postings) {
+                ranksForLemma.merge(posting.pageId(), posting.rank().doubleValue(), Double::sum);
+            }
+            profiler.rows("intersection", postings.size());
 
-            if (commonPageIds == null) {
-                commonPageIds = pageIdsForLemma;
+            if (common == null) {
+                common = ranksForLemma;
             } else {
-                commonPageIds.retainAll(pageIdsForLemma);
+                common.keySet().retainAll(ranksForLemma.keySet());
+                common.replaceAll((pageId, sum) -> sum + ranksForLemma.get(pageId));
             }
+            profiler.intersectionStep(postings.size(), common.size());
 
-            if (commonPageIds.isEmpty()) return Collections.emptyList();
+            if (common.isEmpty()) return Collections.emptyMap();
         }
 
-        return pageRepository.findAllById(commonPageIds);
+        return common == null ? Collections.emptyMap() : common;
+    }
+
+    private <T> T phase(String name, SearchProfiler profiler, Supplier<T> action) {
+        return metrics.recordSearchPhase(name, () -> profiler.phase(name, action));
+    }
+
+    private Map<Integer, Site> findSites(String site) {
+        List<Site> found = site.isEmpty()
+                ? siteRepository.findAll()
+                : siteRepository.findFirstByUrl(site).map(List::of).orElse(List.of());
+        return found.stream().collect(Collectors.toMap(Site::getId, Function.identity()));
     }
 
-    private org.springframework.data.domain.Page<SearchingData> paginateResults(List<SearchingData> allResults, Pageable pageable) {
+    private <T> org.springframework.data.domain.Page<T> paginateResults(List<T> allResults, Pageable pageable) {
         int start = pageable.getPageNumber() * pageable.getPageSize();
         if (start >= allResults.size()) return org.springframework.data.domain.Page.empty(pageable);
 
         int end = Math.min(start + pageable.getPageSize(), allResults.size());
 
-        List<SearchingData> paginatedResults = allResults.subList(start, end);
+        List<T> paginatedResults = allResults.subList(start, end);
 
         return new PageImpl<>(paginatedResults, pageable, allResults.size());
     }
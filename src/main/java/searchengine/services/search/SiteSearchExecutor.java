@@ -0,0 +1,86 @@
+package searchengine.services.search;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.SearchEngineProperties;
+import searchengine.exception.IndexingException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * Пул поиска по сайтам: запрос раздаёт каждому сайту отдельную задачу и ждёт все,
+ * прежде чем сливать результаты. Потоков не больше {@code searchThreads}, задачи
+ * сверх этого ждут в очереди пула. Поиск по одному сайту идёт в вызывающем потоке.
+ * Задача в пуле выполняется в своей транзакции readOnly и, как и сам запрос,
+ * берёт соединения из пула чтения.
+ */
+@Component
+@RequiredArgsConstructor
+public class SiteSearchExecutor {
+
+    private static final String INTERRUPTED = "Поиск был прерван";
+
+    private final SearchEngineProperties properties;
+    private final PlatformTransactionManager transactionManager;
+
+    private ExecutorService workers;
+    private TransactionTemplate readOnly;
+
+    @PostConstruct
+    public void start() {
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        AtomicInteger counter = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(properties.getSearchThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "search-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * Результаты task для каждого сайта в порядке siteIds. Ошибка любой задачи
+     * отменяет остальные и пробрасывается вызывающему.
+     */
+    public <T> List<T> forEachSite(Collection<Integer> siteIds, IntFunction<T> task) {
+        List<Integer> ids = List.copyOf(siteIds);
+        if (ids.size() == 1) return List.of(task.apply(ids.get(0)));
+
+        List<Future<T>> futures = new ArrayList<>(ids.size());
+        for (Integer siteId : ids) {
+            futures.add(workers.submit(() -> readOnly.execute(status -> task.apply(siteId))));
+        }
+        List<T> results = new ArrayList<>(ids.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IndexingException(INTERRUPTED);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw new IllegalStateException(e.getCause());
+        }
+        return results;
+    }
+}
@@ -0,0 +1,108 @@
+package searchengine.services.siteops;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchEngineProperties;
+import searchengine.repositories.JdbcBatchRepository;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счётчики прироста частот лемм по id. Потоки обхода только увеличивают LongAdder,
+ * а фоновый поток периодически применяет накопленное одним пакетом UPDATE,
+ * поэтому частые леммы не становятся точкой блокировок строк в таблице lemma.
+ * Счётчик, не получивший прироста между сбросами, удаляется из карты, чтобы она
+ * не росла с каждым новым обходом.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class FrequencyCounters {
+
+    private final JdbcBatchRepository batchRepository;
+    private final SearchEngineProperties properties;
+
+    private final Map<Integer, LongAdder> counters = new ConcurrentHashMap<>();
+    /**
+     * Удалённые при прошлом сбросе счётчики. Поток, успевший получить счётчик до
+     * удаления, может увеличить его уже после, поэтому их остаток добирается
+     * следующим сбросом.
+     */
+    private volatile Map<Integer, LongAdder> retired = new ConcurrentHashMap<>();
+    private ScheduledExecutorService flusher;
+
+    @PostConstruct
+    public void start() {
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "frequency-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = properties.getFrequencyFlushInterval().toMillis();
+        flusher.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        flusher.shutdown();
+        flushQuietly();
+    }
+
+    public void increment(int lemmaId) {
+        counters.computeIfAbsent(lemmaId, id -> new LongAdder()).increment();
+    }
+
+    public long pending(int lemmaId) {
+        LongAdder counter = counters.get(lemmaId);
+        LongAdder late = retired.get(lemmaId);
+        return (counter == null ? 0 : counter.sum()) + (late == null ? 0 : late.sum());
+    }
+
+    /**
+     * Применяет накопленный прирост. Строки обновляются в порядке id, чтобы
+     * параллельные транзакции не захватывали их в разном порядке; при ошибке
+     * прирост возвращается в счётчики и будет применён следующим сбросом.
+     */
+    public synchronized void flush() {
+        Map<Integer, Integer> deltas = new TreeMap<>();
+        retired.forEach((id, counter) -> {
+            long delta = counter.sumThenReset();
+            if (delta != 0) deltas.merge(id, (int) delta, Integer::sum);
+        });
+        Map<Integer, LongAdder> idle = new ConcurrentHashMap<>();
+        counters.forEach((id, counter) -> {
+            long delta = counter.sumThenReset();
+            if (delta != 0) {
+                deltas.merge(id, (int) delta, Integer::sum);
+            } else if (counters.remove(id, counter)) {
+                idle.put(id, counter);
+            }
+        });
+        retired = idle;
+        if (deltas.isEmpty()) return;
+        try {
+            batchRepository.incrementFrequencies(deltas);
+            log.debug("Flushed frequency increments for {} lemmas", deltas.size());
+        } catch (RuntimeException e) {
+            deltas.forEach((id, delta) -> counters.computeIfAbsent(id, key -> new LongAdder()).add(delta));
+            throw e;
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("Frequency flush failed, will retry: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package searchengine.services.siteops;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.dto.projection.LemmaView;
+import searchengine.repositories.LemmaRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Словарь лемма → id для каждого сайта. Прогревается из БД при старте обхода
+ * и пополняется при вставке новых лемм, поэтому повторные леммы не требуют запроса в БД.
+ * Прирост частот уже известных лемм передаётся в {@link FrequencyCounters}.
+ * Здесь же хранятся известные верхние границы ранга лемм, чтобы повышать
+ * max_rank в БД только когда вхождение действительно её превышает.
+ * Выданные id закреплены, пока вхождения с ними не записаны, — такие леммы
+ * не удаляются как неиспользуемые.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class LemmaDictionary {
+
+    private static final int STRIPES = 64;
+
+    private final LemmaRepository lemmaRepository;
+    private final FrequencyCounters frequencyCounters;
+
+    private final Map<Integer, Map<String, Integer>> lemmaIds = new ConcurrentHashMap<>();
+    private final Map<Integer, Float> maxRanks = new ConcurrentHashMap<>();
+    private final Map<Integer, Integer> pinned = new ConcurrentHashMap<>();
+    private final ReadWriteLock[] locks = new ReadWriteLock[STRIPES];
+
+    {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    public void warmUp(int siteId) {
+        evict(siteId);
+        idsOf(siteId);
+    }
+
+    public void evict(int siteId) {
+        Map<String, Integer> ids = lemmaIds.remove(siteId);
+        if (ids != null) ids.values().forEach(maxRanks::remove);
+    }
+
+    /**
+     * Возвращает id леммы сайта. Новая лемма создаётся через creator с частотой 1
+     * ровно один раз, даже если её одновременно встретили несколько потоков обхода;
+     * для уже известной леммы частота увеличивается в памяти. Возвращённый id
+     * закреплён до вызова {@link #release} после записи вхождений.
+     */
+    public int register(int siteId, String lemma, float rank, BiFunction<String, Float, Integer> creator) {
+        Map<String, Integer> ids = idsOf(siteId);
+        ReadWriteLock lock = lockFor(siteId, lemma);
+
+        Lock read = lock.readLock();
+        read.lock();
+        try {
+            Integer id = ids.get(lemma);
+            if (id != null) {
+                frequencyCounters.increment(id);
+                pin(id);
+                return id;
+            }
+        } finally {
+            read.unlock();
+        }
+
+        Lock write = lock.writeLock();
+        write.lock();
+        try {
+            Integer id = ids.get(lemma);
+            if (id != null) {
+                frequencyCounters.increment(id);
+                pin(id);
+                return id;
+            }
+            id = creator.apply(lemma, rank);
+            maxRanks.put(id, rank);
+            ids.put(lemma, id);
+            pin(id);
+            return id;
+        } finally {
+            write.unlock();
+        }
+    }
+
+    /**
+     * Снимает закрепление id, выданных {@link #register}: их вхождения записаны
+     * или запись не удалась. Вызывается по одному разу на каждый выданный id.
+     */
+    public void release(Collection<Integer> ids) {
+        ids.forEach(id -> pinned.computeIfPresent(id, (key, count) -> count == 1 ? null : count - 1));
+    }
+
+    /**
+     * Повышает верхние границы ранга лемм, которые превышены новыми вхождениями:
+     * writer записывает их в БД, после чего они запоминаются здесь.
+     * Пока запись не удалась, граница считается прежней и будет повышена снова.
+     */
+    public void raiseMaxRanks(Map<Integer, Float> ranks, Consumer<Map<Integer, Float>> writer) {
+        Map<Integer, Float> raised = new HashMap<>();
+        ranks.forEach((id, rank) -> {
+            Float known = maxRanks.get(id);
+            if (known == null || rank > known) raised.put(id, rank);
+        });
+        if (raised.isEmpty()) return;
+        writer.accept(raised);
+        raised.forEach((id, rank) -> maxRanks.merge(id, rank, Math::max));
+    }
+
+    /**
+     * Удаляет леммы, частота которых в БД опустилась до нуля, если для них нет ещё
+     * не сброшенного прироста и они не закреплены за незаписанными вхождениями:
+     * сброс прироста обнуляет счётчик раньше, чем фиксирует частоту в БД, а
+     * вхождения появляются в хранилище позже, чем выдан id. deleter получает id кандидатов и возвращает id
+     * действительно удалённых строк; только они исключаются из словаря. Всё это
+     * время блокировки кандидатов удерживаются, поэтому ни один поток не получит
+     * id удаляемой леммы, а новые вхождения создадут её заново.
+     */
+    public List<Integer> evictUnused(int siteId, Map<String, Integer> candidates,
+                                     Function<List<Integer>, Collection<Integer>> deleter) {
+        Map<String, Integer> ids = idsOf(siteId);
+        SortedSet<Integer> stripes = new TreeSet<>();
+        candidates.keySet().forEach(lemma -> stripes.add(stripeOf(siteId, lemma)));
+        List<Lock> held = new ArrayList<>();
+        try {
+            for (int stripe : stripes) {
+                Lock write = locks[stripe].writeLock();
+                write.lock();
+                held.add(write);
+            }
+            List<Integer> unused = candidates.values().stream()
+                    .filter(id -> frequencyCounters.pending(id) == 0 && !pinned.containsKey(id))
+                    .toList();
+            if (unused.isEmpty()) return List.of();
+            Set<Integer> deleted = new HashSet<>(deleter.apply(unused));
+            candidates.forEach((lemma, id) -> {
+                if (deleted.contains(id)) {
+                    ids.remove(lemma, id);
+                    maxRanks.remove(id);
+                }
+            });
+            return List.copyOf(deleted);
+        } finally {
+            held.forEach(Lock::unlock);
+        }
+    }
+
+    private void pin(int id) {
+        pinned.merge(id, 1, Integer::sum);
+    }
+
+    private Map<String, Integer> idsOf(int siteId) {
+        return lemmaIds.computeIfAbsent(siteId, id -> {
+            Map<String, Integer> ids = new ConcurrentHashMap<>();
+            for (LemmaView view : lemmaRepository.findViewsBySiteId(id)) {
+                ids.put(view.lemma(), view.id());
+                maxRanks.put(view.id(), view.maxRank());
+            }
+            log.debug("Lemma dictionary for site {} warmed with {} lemmas", id, ids.size());
+            return ids;
+        });
+    }
+
+    private ReadWriteLock lockFor(int siteId, String lemma) {
+        return locks[stripeOf(siteId, lemma)];
+    }
+
+    private static int stripeOf(int siteId, String lemma) {
+        return Math.floorMod(31 * siteId + lemma.hashCode(), STRIPES);
+    }
+}
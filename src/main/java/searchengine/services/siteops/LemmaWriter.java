@@ -0,0 +1,69 @@
+package searchengine.services.siteops;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import searchengine.model.Lemma;
+import searchengine.model.Site;
+import searchengine.repositories.JdbcBatchRepository;
+import searchengine.repositories.LemmaRepository;
+import searchengine.services.indexstore.IndexStore;
+import searchengine.services.statistics.StatisticsCounters;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class LemmaWriter {
+
+    private final LemmaRepository lemmaRepository;
+    private final JdbcBatchRepository batchRepository;
+    private final StatisticsCounters statisticsCounters;
+    private final IndexStore indexStore;
+
+    /**
+     * Новая лемма фиксируется в отдельной транзакции: её id сразу попадает
+     * в общий словарь и не должен ссылаться на строку, которую может откатить вызывающий.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public Integer create(Site site, String lemma, float rank) {
+        Lemma created = lemmaRepository.save(Lemma.builder()
+                .lemma(lemma).site(site).frequency(1).maxRank(rank).build());
+        statisticsCounters.lemmasAdded(site.getId(), 1);
+        log.debug("Saved lemma {}", created.getLemma());
+        return created.getId();
+    }
+
+    /**
+     * Повышение верхних границ ранга тоже фиксируется сразу: граница должна
+     * оказаться в БД не позже вхождений, а откат вызывающего оставит её
+     * завышенной, что для отсечения при поиске безопасно.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void raiseMaxRanks(Map<Integer, Float> ranks) {
+        batchRepository.raiseMaxRanks(new TreeMap<>(ranks));
+    }
+
+    /**
+     * Удаляет леммы сайта с нулевой частотой и без вхождений; возвращает id
+     * удалённых строк. Вхождения проверяются через хранилище: в сегментном
+     * хранилище таблица index пуста. Удаление фиксируется сразу, до того как
+     * вызывающий исключит леммы из словаря.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public Collection<Integer> deleteUnused(Site site, List<Integer> ids) {
+        Set<Integer> unused = new HashSet<>(ids);
+        unused.removeAll(indexStore.findReferencedLemmas(ids));
+        if (unused.isEmpty() || lemmaRepository.deleteUnusedByIdIn(site.getId(), unused) == 0) return List.of();
+        lemmaRepository.findIdsByIdIn(unused).forEach(unused::remove);
+        return unused;
+    }
+}
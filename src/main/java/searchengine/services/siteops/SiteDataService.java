@@ -3,20 +3,24 @@ package searchengine.services.siteops;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.SearchEngineProperties;
 import searchengine.config.SiteConfig;
+import searchengine.dto.projection.PagePostingView;
 import searchengine.model.*;
-import searchengine.repositories.IndexRepository;
+import searchengine.repositories.JdbcBatchRepository;
 import searchengine.repositories.LemmaRepository;
 import searchengine.repositories.PageRepository;
 import searchengine.repositories.SiteRepository;
+import searchengine.services.indexstore.IndexStore;
+import searchengine.services.statistics.StatisticsCounters;
+import searchengine.services.suggest.LemmaSuggester;
 
 import java.time.LocalDateTime;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Optional;
-import java.util.Set;
+import java.util.*;
 
 @Service
 @RequiredArgsConstructor
@@ -26,75 +30,231 @@ public class SiteDataService {
     private final SiteRepository siteRepository;
     private final PageRepository pageRepository;
     private final LemmaRepository lemmaRepository;
-    private final IndexRepository indexRepository;
+    private final IndexStore indexStore;
+    private final JdbcBatchRepository batchRepository;
+    private final LemmaDictionary lemmaDictionary;
+    private final FrequencyCounters frequencyCounters;
+    private final LemmaWriter lemmaWriter;
+    private final SearchEngineProperties properties;
+    private final StatisticsCounters statisticsCounters;
+    private final LemmaSuggester lemmaSuggester;
+    private final PlatformTransactionManager transactionManager;
 
+    /**
+     * Сайт в статусе INDEXING захватывают для полного обхода узлы индексации,
+     * поэтому так создаются только сайты, которые действительно надо обойти.
+     */
     @Transactional
-    public Site createSite(SiteConfig siteConfig) {
+    public Site createSite(SiteConfig siteConfig, Status status) {
         Site site = new Site();
         site.setUrl(siteConfig.getUrl());
         site.setName(siteConfig.getName());
-        site.setStatus(Status.INDEXING);
+        site.setStatus(status);
         site.setStatusTime(LocalDateTime.now());
         log.debug("Site creation finished");
         return siteRepository.save(site);
     }
 
+    @Transactional
     public List<Page> createPagesBatch(List<Page> pages) {
-        log.info("Saved {} pages", pages.size());
-        return pageRepository.saveAll(pages);
+        log.debug("Saved {} pages", pages.size());
+        List<Page> saved = properties.isBatchInsert()
+                ? batchRepository.insertPages(pages)
+                : pageRepository.saveAll(pages);
+        if (!saved.isEmpty()) {
+            statisticsCounters.pagesAdded(saved.get(0).getSite().getId(), saved.size());
+        }
+        return saved;
+    }
+
+    @Transactional
+    public void createIndexBatch(List<Index> indexes) {
+        log.debug("Saving {} index rows", indexes.size());
+        indexStore.addPostings(indexes);
     }
 
-    public Set<String> checkExistingPages(List<String> pages) {
-        return new HashSet<>(pageRepository.findPathsByPathIn(pages));
+    public Set<String> checkExistingPages(Site site, List<String> pages) {
+        if (pages.isEmpty()) return Collections.emptySet();
+        return new HashSet<>(pageRepository.findPathsBySiteIdAndPathIn(site.getId(), pages));
     }
 
     @Transactional
     public void deleteAllBySite(SiteConfig siteConfig) {
         Site exists = siteRepository.findFirstByUrl(siteConfig.getUrl()).orElse(null);
-      //  Site exists = siteRepository.findByUrl(siteConfig.getUrl()).orElse(null);
         if (exists != null) {
-            List<Page> pages = pageRepository.findAllBySiteId(exists.getId());
-            for (Page page : pages) {
-                indexRepository.deleteAllByPage(page);
-            }
+            indexStore.deletePages(pageRepository.findAllBySiteId(exists.getId()));
             lemmaRepository.deleteAllBySiteId(exists.getId());
+            lemmaDictionary.evict(exists.getId());
             pageRepository.deleteAllBySiteId(exists.getId());
             siteRepository.delete(exists);
+            statisticsCounters.siteRemoved(exists.getId());
+            lemmaSuggester.siteRemoved(exists.getId());
         }
         log.debug("Data for SiteConfig deleted");
     }
 
-    @Transactional(propagation = Propagation.REQUIRES_NEW)
-    public void saveLemma(Site site, Page page, String lemma, Integer count) {
+    private Lemma saveLemma(Site site, String lemma, float rank) {
         log.debug("Method saveLemma of SiteDataService with lemma {}", lemma);
-        Lemma exist = lemmaRepository.findByLemmaAndSite(lemma, site).orElse(null);
-
-        if (exist != null) {
-            log.debug("Found lemma not null {}", exist.getLemma());
-            lemmaRepository.incrementFrequencyById(exist.getId());
-            checkForSave(exist, page, count);
-        } else {
-            exist = Lemma.builder()
-                    .lemma(lemma).site(site).frequency(1).build();
-            lemmaRepository.save(exist);
-            log.debug("Saved lemma {}", exist.getLemma());
-
-            checkForSave(exist, page, count);
-        }
+        int id = lemmaDictionary.register(site.getId(), lemma, rank, (key, first) -> lemmaWriter.create(site, key, first));
         log.debug("End of method saveLemma of SiteDataService with lemma {}", lemma);
+        return Lemma.builder().id(id).lemma(lemma).site(site).build();
     }
 
-    @Transactional
-    public void checkForSave(Lemma lemma, Page page, Integer count) {
-        Optional<Index> exists = indexRepository.findByLemmaIdAndPageId(lemma.getId(), page.getId());
-        if (exists.isEmpty()) {
-            Index index = Index.builder()
-                    .lemma(lemma)
-                    .page(page)
-                    .rank(count.floatValue())
-                    .build();
-            indexRepository.save(index);
+    /**
+     * Сохраняет вхождения лемм страницы. Верхние границы ранга лемм повышаются
+     * до записи вхождений, чтобы поиск с отсечением не увидел вхождение выше границы.
+     * Метод не открывает общей транзакции: новые леммы и границы фиксируются
+     * в собственных транзакциях {@link LemmaWriter}, а вхождения — в транзакции хранилища.
+     * Иначе каждый поток обхода держал бы одно соединение, ожидая второе, и при числе
+     * потоков больше размера пула соединений индексация вставала бы до таймаута пула.
+     */
+    public void savePostings(Site site, Page page, Map<String, Integer> lemmaCounts) {
+        List<Index> indexes = registerPostings(site, page, lemmaCounts);
+        try {
+            createIndexBatch(indexes);
+        } finally {
+            releasePostings(indexes);
+        }
+    }
+
+    /**
+     * Леммы вхождений: новые создаются, частоты известных растут, границы ранга
+     * повышаются. Вхождения ещё не записаны, а id их лемм закреплены в словаре —
+     * после записи их освобождает {@link #releasePostings}.
+     */
+    private List<Index> registerPostings(Site site, Page page, Map<String, Integer> lemmaCounts) {
+        List<Index> indexes = new ArrayList<>(lemmaCounts.size());
+        Map<Integer, Float> ranks = new HashMap<>();
+        try {
+            for (Map.Entry<String, Integer> entry : lemmaCounts.entrySet()) {
+                float rank = entry.getValue().floatValue();
+                Lemma lemma = saveLemma(site, entry.getKey(), rank);
+                ranks.put(lemma.getId(), rank);
+                indexes.add(Index.builder()
+                        .lemma(lemma)
+                        .page(page)
+                        .rank(rank)
+                        .build());
+            }
+            lemmaDictionary.raiseMaxRanks(ranks, lemmaWriter::raiseMaxRanks);
+        } catch (RuntimeException e) {
+            releasePostings(indexes);
+            throw e;
+        }
+        return indexes;
+    }
+
+    private void releasePostings(List<Index> indexes) {
+        lemmaDictionary.release(indexes.stream().map(index -> index.getLemma().getId()).toList());
+    }
+
+    /**
+     * Переиндексация пакета страниц сайта: строки page уже известных страниц
+     * обновляются на месте, а их индекс сравнивается со старым набором лемм —
+     * затрагиваются только исчезнувшие, новые и изменившие ранг леммы. Новые
+     * страницы вставляются одним пакетом, вхождения всех страниц — тоже.
+     * <p>
+     * Новые леммы и границы ранга фиксируются {@link LemmaWriter} до того, как
+     * открывается транзакция пакета, по той же причине, что и в {@link #savePostings}.
+     * Страницы, их вхождения и уменьшение частот записываются одной транзакцией,
+     * а леммы с нулевой частотой удаляются после её фиксации. Одну страницу
+     * одновременно переиндексирует только один поток (см. PageIndexingQueue);
+     * из страниц пакета с одинаковым путём записывается одна.
+     */
+    public void reindexPages(Site site, Map<Page, Map<String, Integer>> fetched) {
+        Map<String, Map.Entry<Page, Map<String, Integer>>> byPath = new HashMap<>();
+        fetched.forEach((page, lemmaCounts) -> byPath.put(page.getPath(), Map.entry(page, lemmaCounts)));
+        Map<String, Integer> existing = new HashMap<>();
+        pageRepository.findViewsBySiteIdAndPathIn(site.getId(), byPath.keySet())
+                .forEach(view -> existing.put(view.path(), view.id()));
+
+        List<Page> created = new ArrayList<>();
+        List<PageChange> changes = new ArrayList<>();
+        List<PagePostingView> removed = new ArrayList<>();
+        List<Index> indexes = new ArrayList<>();
+        try {
+            for (Map.Entry<Page, Map<String, Integer>> entry : byPath.values()) {
+                Page page = entry.getKey();
+                Map<String, Integer> lemmaCounts = entry.getValue();
+                Integer pageId = existing.get(page.getPath());
+                if (pageId == null) {
+                    created.add(page);
+                    indexes.addAll(registerPostings(site, page, lemmaCounts));
+                    continue;
+                }
+                page.setId(pageId);
+                PageChange change = diff(page, lemmaCounts);
+                changes.add(change);
+                removed.addAll(change.removed());
+                indexes.addAll(registerPostings(site, page, change.added()));
+            }
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                if (!created.isEmpty()) createPagesBatch(created);
+                for (PageChange change : changes) {
+                    Page page = change.page();
+                    pageRepository.updateContent(page.getId(), page.getCode(), page.getContent());
+                    indexStore.updatePagePostings(page.getId(), change.removed(), change.changedRanks());
+                    if (!change.removed().isEmpty()) {
+                        lemmaRepository.decrementFrequencyByIdIn(
+                                change.removed().stream().map(PagePostingView::lemmaId).toList());
+                    }
+                }
+                createIndexBatch(indexes);
+            });
+        } finally {
+            releasePostings(indexes);
+        }
+        removeUnusedLemmas(site, removed);
+        log.debug("Reindexed {} pages of site {}: {} new, {} postings added, {} removed",
+                byPath.size(), site.getName(), created.size(), indexes.size(), removed.size());
+    }
+
+    /**
+     * Отличие нового набора лемм страницы от записанного: исчезнувшие вхождения,
+     * новые леммы и вхождения с изменившимся рангом.
+     */
+    private record PageChange(Page page, List<PagePostingView> removed, Map<String, Integer> added,
+                              Map<PagePostingView, Float> changedRanks) {
+    }
+
+    /**
+     * Границы ранга лемм, чей ранг на странице вырос, повышаются сразу.
+     */
+    private PageChange diff(Page page, Map<String, Integer> lemmaCounts) {
+        Map<String, PagePostingView> kept = new HashMap<>();
+        List<PagePostingView> removed = new ArrayList<>();
+        for (PagePostingView posting : indexStore.findPagePostings(page.getId())) {
+            if (!lemmaCounts.containsKey(posting.lemma()) || kept.putIfAbsent(posting.lemma(), posting) != null) {
+                removed.add(posting);
+            }
         }
+
+        Map<String, Integer> added = new HashMap<>();
+        Map<PagePostingView, Float> changedRanks = new HashMap<>();
+        Map<Integer, Float> lemmaRanks = new HashMap<>();
+        lemmaCounts.forEach((lemma, count) -> {
+            PagePostingView posting = kept.get(lemma);
+            if (posting == null) {
+                added.put(lemma, count);
+            } else if (posting.rank() != count.floatValue()) {
+                changedRanks.put(posting, count.floatValue());
+                lemmaRanks.put(posting.lemmaId(), count.floatValue());
+            }
+        });
+
+        if (!changedRanks.isEmpty()) {
+            lemmaDictionary.raiseMaxRanks(lemmaRanks, lemmaWriter::raiseMaxRanks);
+        }
+        return new PageChange(page, removed, added, changedRanks);
+    }
+
+    public void prepareLemmas(Site site) {
+        lemmaDictionary.warmUp(site.getId());
+    }
+
+    public void flushLemmas() {
+        frequencyCounters.flush();
+        indexStore.flush();
     }
 
     @Transactional(propagation = Propagation.REQUIRES_NEW)
@@ -109,12 +269,9 @@ public class SiteDataService {
     }
 
     @Transactional
-    public void updateStatusTime(Site site) {
-        Site exists = siteRepository.findById(site.getId()).orElse(null);
-        if (exists != null) {
-            exists.setStatusTime(LocalDateTime.now());
-            siteRepository.save(exists);
-        }
+    public void updateStatusTime(Collection<Integer> siteIds) {
+        if (siteIds.isEmpty()) return;
+        siteRepository.updateStatusTime(siteIds, LocalDateTime.now());
     }
 
     @Transactional
@@ -130,19 +287,50 @@ public class SiteDataService {
         return pageRepository.findByPath(path).isPresent();
     }
 
-    @Transactional
+    /**
+     * Удаляет страницу с её вхождениями; леммы с нулевой частотой удаляются
+     * после фиксации, как при переиндексации.
+     */
     public void deleteDataByPage(String path, Site site) {
         Optional<Page> page = pageRepository.findByPathAndSite(path, site);
         if (page.isPresent()) {
-            List<Index> index = indexRepository.findAllByPageId(page.get().getId());
-            index.forEach(i -> {
-                lemmaRepository.decrementFrequencyById(i.getLemma().getId());
+            Integer pageId = page.get().getId();
+            List<PagePostingView> postings = indexStore.findPagePostings(pageId);
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                if (!postings.isEmpty()) {
+                    lemmaRepository.decrementFrequencyByIdIn(postings.stream().map(PagePostingView::lemmaId).toList());
+                }
+                indexStore.deletePages(List.of(page.get()));
+                pageRepository.deleteById(pageId);
             });
+            statisticsCounters.pagesRemoved(site.getId(), 1);
+            removeUnusedLemmas(site, postings);
+        }
+        log.debug("Data for Page {} deleted", path);
+    }
+
+    /**
+     * Удаляет только те леммы этого сайта, которые были на странице и чья частота
+     * стала нулевой, не просматривая всю таблицу lemma. Вызывается после фиксации
+     * уменьшения частот. Удаление и исключение из словаря идут под блокировками
+     * словаря, а из словаря исключаются только действительно удалённые строки:
+     * если прирост частоты успел попасть в БД, строка остаётся и в словаре.
+     */
+    private void removeUnusedLemmas(Site site, List<PagePostingView> postings) {
+        if (postings.isEmpty()) return;
+        Set<Integer> zero = new HashSet<>(lemmaRepository.findIdsWithZeroFrequency(
+                postings.stream().map(PagePostingView::lemmaId).toList()));
+        if (zero.isEmpty()) return;
 
-            indexRepository.deleteAllByPage(page.get());
-            pageRepository.deleteById(page.get().getId());
-            lemmaRepository.deleteAllByFrequencyZero();
+        Map<String, Integer> candidates = new HashMap<>();
+        postings.stream()
+                .filter(posting -> zero.contains(posting.lemmaId()))
+                .forEach(posting -> candidates.put(posting.lemma(), posting.lemmaId()));
+        List<Integer> deleted = lemmaDictionary.evictUnused(site.getId(), candidates,
+                ids -> lemmaWriter.deleteUnused(site, ids));
+        if (!deleted.isEmpty()) {
+            statisticsCounters.lemmasRemoved(site.getId(), deleted.size());
+            log.debug("Deleted {} unused lemmas of site {}", deleted.size(), site.getName());
         }
-        log.info("Data for Page {} deleted", path);
     }
 }
@@ -0,0 +1,108 @@
+package searchengine.services.startup;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Загрузка тяжёлых структур в памяти после старта: приложение принимает запросы сразу,
+ * а не ждёт, пока всё прочитается. Каждая задача регистрируется под именем; пока хоть
+ * одна не завершилась, индикатор здоровья {@code startupTasks} отвечает OUT_OF_SERVICE,
+ * а после ошибки любой из них — DOWN. Индикатор входит в группу readiness, так что
+ * балансировщик не шлёт трафик на узел, который ещё прогревается.
+ */
+@Component
+@Slf4j
+public class StartupTasks implements HealthIndicator {
+
+    private final Map<String, CompletableFuture<?>> tasks = new ConcurrentHashMap<>();
+    private ExecutorService loaders;
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger counter = new AtomicInteger();
+        loaders = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "startup-loader-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        loaders.shutdownNow();
+    }
+
+    /**
+     * Запускает загрузку в пуле и отслеживает её под именем name.
+     */
+    public <T> CompletableFuture<T> submit(String name, Callable<T> task) {
+        return track(name, run(task));
+    }
+
+    /**
+     * Запускает часть загрузки в пуле без отдельного отслеживания: её ждёт
+     * отслеживаемая задача.
+     */
+    public <T> CompletableFuture<T> run(Callable<T> task) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.call();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, loaders);
+    }
+
+    /**
+     * Отслеживает загрузку, запущенную в другом потоке.
+     */
+    public <T> CompletableFuture<T> track(String name, CompletableFuture<T> future) {
+        long start = System.nanoTime();
+        tasks.put(name, future);
+        future.whenComplete((result, error) -> {
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (error == null) {
+                log.info("Startup task {} finished in {} ms", name, millis);
+            } else {
+                log.error("Startup task {} failed after {} ms", name, millis, error);
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public Health health() {
+        Map<String, String> details = new TreeMap<>();
+        boolean loading = false;
+        boolean failed = false;
+        for (Map.Entry<String, CompletableFuture<?>> task : tasks.entrySet()) {
+            CompletableFuture<?> future = task.getValue();
+            if (!future.isDone()) {
+                loading = true;
+                details.put(task.getKey(), "loading");
+            } else if (future.isCompletedExceptionally()) {
+                failed = true;
+                details.put(task.getKey(), "failed");
+            } else {
+                details.put(task.getKey(), "ready");
+            }
+        }
+        Health.Builder health = failed ? Health.down() : loading ? Health.outOfService() : Health.up();
+        return health.withDetails(details).build();
+    }
+}
@@ -0,0 +1,123 @@
+package searchengine.services.statistics;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchEngineProperties;
+import searchengine.dto.projection.SiteCountsView;
+import searchengine.repositories.SiteRepository;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Число страниц и лемм по сайтам, которое ведёт сам путь записи индексации.
+ * Статистика читает эти счётчики и не считает строки в таблицах page и lemma.
+ * Раз в {@code statisticsReconcileInterval} счётчики сверяются с БД одним
+ * агрегированным запросом: так исправляется расхождение от откатившихся транзакций.
+ * Пока сверки ещё не было, тот же запрос выполняется при первом обращении.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class StatisticsCounters {
+
+    private final SiteRepository siteRepository;
+    private final SearchEngineProperties properties;
+
+    private final Map<Integer, Counters> sites = new ConcurrentHashMap<>();
+    private volatile boolean reconciled;
+    private ScheduledExecutorService reconciler;
+
+    private static final class Counters {
+        private final AtomicLong pages = new AtomicLong();
+        private final AtomicLong lemmas = new AtomicLong();
+    }
+
+    @PostConstruct
+    public void start() {
+        reconciler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "statistics-reconciler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = properties.getStatisticsReconcileInterval().toMillis();
+        reconciler.scheduleWithFixedDelay(this::reconcileQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        reconciler.shutdown();
+    }
+
+    public void pagesAdded(Integer siteId, int count) {
+        counters(siteId).pages.addAndGet(count);
+    }
+
+    public void pagesRemoved(Integer siteId, int count) {
+        counters(siteId).pages.addAndGet(-count);
+    }
+
+    public void lemmasAdded(Integer siteId, int count) {
+        counters(siteId).lemmas.addAndGet(count);
+    }
+
+    public void lemmasRemoved(Integer siteId, int count) {
+        counters(siteId).lemmas.addAndGet(-count);
+    }
+
+    public void siteRemoved(Integer siteId) {
+        sites.remove(siteId);
+    }
+
+    public long pages(Integer siteId) {
+        ensureReconciled();
+        Counters counters = sites.get(siteId);
+        return counters == null ? 0 : Math.max(0, counters.pages.get());
+    }
+
+    public long lemmas(Integer siteId) {
+        ensureReconciled();
+        Counters counters = sites.get(siteId);
+        return counters == null ? 0 : Math.max(0, counters.lemmas.get());
+    }
+
+    /**
+     * Заменяет счётчики значениями из БД. Записи, идущие параллельно со сверкой,
+     * могут попасть в результат дважды или не попасть вовсе; расхождение
+     * ограничено незавершёнными транзакциями и уходит при следующей сверке.
+     */
+    public synchronized void reconcile() {
+        List<SiteCountsView> counts = siteRepository.findSiteCounts();
+        for (SiteCountsView view : counts) {
+            Counters counters = counters(view.siteId());
+            counters.pages.set(view.pages());
+            counters.lemmas.set(view.lemmas());
+        }
+        reconciled = true;
+        log.debug("Statistics counters reconciled for {} sites", counts.size());
+    }
+
+    private void ensureReconciled() {
+        if (!reconciled) reconcile();
+    }
+
+    private Counters counters(Integer siteId) {
+        return sites.computeIfAbsent(siteId, id -> new Counters());
+    }
+
+    private void reconcileQuietly() {
+        try {
+            reconcile();
+        } catch (RuntimeException e) {
+            log.warn("Statistics reconciliation failed: {}", e.getMessage());
+        }
+    }
+}
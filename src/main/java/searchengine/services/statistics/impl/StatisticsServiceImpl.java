@@ -8,44 +8,51 @@ import searchengine.config.SiteConfig;
 import searchengine.config.SitesList;
 import searchengine.dto.statistics.*;
 import searchengine.model.Site;
-import searchengine.repositories.LemmaRepository;
-import searchengine.repositories.PageRepository;
 import searchengine.repositories.SiteRepository;
+import searchengine.services.indexing.IndexingService;
+import searchengine.services.statistics.StatisticsCounters;
 import searchengine.services.statistics.StatisticsService;
 
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+/**
+ * Статистика для панели управления. Число страниц и лемм берётся из
+ * {@link StatisticsCounters}; из БД читается только небольшая таблица site.
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class StatisticsServiceImpl implements StatisticsService {
 
     private final SiteRepository siteRepository;
-    private final LemmaRepository lemmaRepository;
-    private final PageRepository pageRepository;
+    private final StatisticsCounters counters;
+    private final IndexingService indexingService;
 
     private final SitesList sites;
 
     @Override
     @Transactional(readOnly = true)
     public StatisticsResponse getStatistics() {
-        log.info("Call of method getStatistics");
+        log.debug("Call of method getStatistics");
         TotalStatistics total = new TotalStatistics();
         total.setSites(sites.getSites().size());
-        total.setIndexing(true);
+        total.setIndexing(indexingService.isIndexing());
 
+        Map<String, Site> stored = siteRepository.findAll().stream()
+                .collect(Collectors.toMap(Site::getUrl, Function.identity(), (first, second) -> first));
         List<DetailedStatisticsItem> detailed = new ArrayList<>();
-        List<SiteConfig> sitesList = sites.getSites();
-        for (SiteConfig siteConfig : sitesList) {
-            DetailedStatisticsItem item = statistics(siteConfig);
-            detailed.add(item);
+        for (SiteConfig siteConfig : sites.getSites()) {
+            detailed.add(statistics(siteConfig, stored.get(siteConfig.getUrl())));
         }
 
-        total.setPages((int) pageRepository.count());
-        total.setLemmas((int) lemmaRepository.count());
+        total.setPages(detailed.stream().mapToInt(DetailedStatisticsItem::getPages).sum());
+        total.setLemmas(detailed.stream().mapToInt(DetailedStatisticsItem::getLemmas).sum());
 
         StatisticsResponse response = new StatisticsResponse();
         StatisticsData data = new StatisticsData();
@@ -58,21 +65,19 @@ public class StatisticsServiceImpl implements StatisticsService {
         return response;
     }
 
-    public DetailedStatisticsItem statistics(SiteConfig siteConfig) {
-        //Site exists = siteRepository.findByUrl(siteConfig.getUrl()).orElse(null);
-        Site exists = siteRepository.findFirstByUrl(siteConfig.getUrl()).orElse(null);
+    public DetailedStatisticsItem statistics(SiteConfig siteConfig, Site exists) {
         DetailedStatisticsItem item = new DetailedStatisticsItem();
 
         if (exists != null) {
-            Long pages = pageRepository.countPageBySiteId(exists.getId());
-            Long lemmas = lemmaRepository.countLemmaBySiteId(exists.getId());
+            long pages = counters.pages(exists.getId());
+            long lemmas = counters.lemmas(exists.getId());
             long timestampMillis = exists.getStatusTime()
                     .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
 
             item.setName(exists.getName());
             item.setUrl(exists.getUrl());
-            item.setPages(pages.intValue());
-            item.setLemmas(lemmas.intValue());
+            item.setPages((int) pages);
+            item.setLemmas((int) lemmas);
             item.setStatus(exists.getStatus().name());
             item.setError(exists.getLastError());
             item.setStatusTime(timestampMillis);
@@ -0,0 +1,108 @@
+package searchengine.services.suggest;
+
+import searchengine.dto.projection.LemmaTotalsView;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Снимок словаря сайта на диске, чтобы после рестарта не читать таблицу lemma заново.
+ * <pre>
+ * заголовок  magic, siteId, lemmas, frequency, size, chars
+ * символы    chars × char
+ * смещения   (size + 1) × int
+ * частоты    size × int
+ * </pre>
+ * lemmas и frequency — число строк сайта в таблице lemma и сумма их частот на момент
+ * построения: снимок годен, пока они совпадают с текущими. Массивы словаря лежат в файле
+ * как есть и читаются через отображение в память одним копированием на массив.
+ */
+final class DictionarySnapshot {
+
+    static final int MAGIC = 0x53554731;
+    static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 4 + 4;
+
+    private DictionarySnapshot() {
+    }
+
+    record Loaded(int siteId, LemmaTotalsView totals, PrefixDictionary dictionary) {
+    }
+
+    static Path path(Path directory, int siteId) {
+        return directory.resolve("site-" + siteId + ".dict");
+    }
+
+    /**
+     * Пишет снимок во временный файл и атомарно подменяет им прежний.
+     */
+    static void write(Path path, int siteId, LemmaTotalsView totals, PrefixDictionary dictionary) throws IOException {
+        char[] chars = dictionary.chars();
+        int[] offsets = dictionary.offsets();
+        int[] frequencies = dictionary.frequencies();
+        long size = HEADER_BYTES + chars.length * 2L + offsets.length * 4L + frequencies.length * 4L;
+        Files.createDirectories(path.getParent());
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            out.putInt(MAGIC)
+                    .putInt(siteId)
+                    .putLong(totals.lemmas())
+                    .putLong(totals.frequency())
+                    .putInt(frequencies.length)
+                    .putInt(chars.length);
+            out.asCharBuffer().put(chars);
+            out.position(out.position() + chars.length * 2);
+            out.asIntBuffer().put(offsets);
+            out.position(out.position() + offsets.length * 4);
+            out.asIntBuffer().put(frequencies);
+            out.force();
+        }
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static Loaded read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.capacity() < HEADER_BYTES || in.getInt() != MAGIC) {
+                throw new IOException("Файл не является снимком словаря: " + path);
+            }
+            int siteId = in.getInt();
+            LemmaTotalsView totals = new LemmaTotalsView(in.getLong(), in.getLong());
+            int size = in.getInt();
+            int length = in.getInt();
+            if (size < 0 || length < 0
+                    || HEADER_BYTES + length * 2L + (size + 1) * 4L + size * 4L != in.capacity()) {
+                throw new IOException("Снимок словаря повреждён: " + path);
+            }
+            char[] chars = new char[length];
+            int[] offsets = new int[size + 1];
+            int[] frequencies = new int[size];
+            in.asCharBuffer().get(chars);
+            in.position(in.position() + length * 2);
+            in.asIntBuffer().get(offsets);
+            in.position(in.position() + offsets.length * 4);
+            in.asIntBuffer().get(frequencies);
+            if (!ordered(offsets, length)) {
+                throw new IOException("Снимок словаря повреждён: " + path);
+            }
+            return new Loaded(siteId, totals, PrefixDictionary.of(chars, offsets, frequencies));
+        }
+    }
+
+    /**
+     * Смещения лемм начинаются с нуля, не убывают и заканчиваются длиной массива символов.
+     */
+    private static boolean ordered(int[] offsets, int length) {
+        if (offsets[0] != 0 || offsets[offsets.length - 1] != length) return false;
+        for (int i = 1; i < offsets.length; i++) {
+            if (offsets[i] < offsets[i - 1]) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,238 @@
+package searchengine.services.suggest;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import searchengine.config.SearchEngineProperties;
+import searchengine.dto.projection.LemmaTotalsView;
+import searchengine.dto.projection.LemmaView;
+import searchengine.dto.suggest.SuggestItem;
+import searchengine.model.Site;
+import searchengine.model.Status;
+import searchengine.repositories.LemmaRepository;
+import searchengine.repositories.SiteRepository;
+import searchengine.services.startup.StartupTasks;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Дополнение запроса по префиксу из словарей лемм в памяти: по одному на сайт
+ * и общий для поиска по всем сайтам. Словарь сайта перестраивается из таблицы lemma
+ * после индексации сайта, после пачки переиндексированных страниц и раз в
+ * {@code suggestRefreshInterval}, пока сайт индексируется. Общий словарь
+ * собирается слиянием словарей сайтов, без обращения к БД.
+ * Построение идёт в отдельном потоке, запросы читают готовые неизменяемые словари.
+ * <p>
+ * Каждый построенный словарь сайта сохраняется снимком в {@code suggestSnapshotPath}.
+ * После рестарта словари читаются из снимков параллельно, а из БД перестраиваются
+ * только сайты, у которых снимка нет или он устарел. До конца загрузки узел
+ * не готов (см. {@link StartupTasks}).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class LemmaSuggester {
+
+    public static final int MAX_LIMIT = 50;
+
+    private final SiteRepository siteRepository;
+    private final LemmaRepository lemmaRepository;
+    private final SearchEngineProperties properties;
+    private final StartupTasks startupTasks;
+
+    private final Map<Integer, SiteDictionary> sites = new ConcurrentHashMap<>();
+    /**
+     * Те же словари сайтов по url — для запросов с параметром site.
+     */
+    private final Map<String, PrefixDictionary> byUrl = new ConcurrentHashMap<>();
+    private final Set<Integer> scheduled = ConcurrentHashMap.newKeySet();
+    private volatile PrefixDictionary global = PrefixDictionary.EMPTY;
+    private ScheduledExecutorService builder;
+
+    private record SiteDictionary(String url, PrefixDictionary dictionary) {
+    }
+
+    @PostConstruct
+    public void start() {
+        builder = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "suggest-builder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        startupTasks.track("suggest", CompletableFuture.runAsync(this::loadAllQuietly, builder));
+        long interval = properties.getSuggestRefreshInterval().toMillis();
+        builder.scheduleWithFixedDelay(this::refreshIndexingQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        builder.shutdownNow();
+    }
+
+    /**
+     * Ставит перестройку словаря сайта в очередь; повторные вызовы до её начала
+     * сливаются в одну.
+     */
+    public void rebuild(Integer siteId) {
+        if (!scheduled.add(siteId)) return;
+        builder.execute(() -> {
+            scheduled.remove(siteId);
+            try {
+                rebuildSite(siteId);
+                mergeGlobal();
+            } catch (RuntimeException e) {
+                log.warn("Suggest dictionary rebuild failed for site {}: {}", siteId, e.getMessage());
+            }
+        });
+    }
+
+    public void siteRemoved(Integer siteId) {
+        builder.execute(() -> {
+            deleteSnapshot(siteId);
+            if (removeSite(siteId)) mergeGlobal();
+        });
+    }
+
+    /**
+     * До limit дополнений последнего слова запроса по убыванию частоты леммы.
+     * Предыдущие слова запроса сохраняются в тексте подсказки как есть.
+     * Неизвестный сайт даёт пустой список, как и поиск по нему.
+     */
+    public List<SuggestItem> suggest(String query, String site, int limit) {
+        int cut = query.length();
+        while (cut > 0 && Character.isLetter(query.charAt(cut - 1))) cut--;
+        String prefix = query.substring(cut).toLowerCase(Locale.ROOT);
+        if (prefix.isEmpty()) return List.of();
+        String head = query.substring(0, cut);
+
+        List<SuggestItem> items = new ArrayList<>();
+        for (PrefixDictionary.Entry entry : dictionary(site).complete(prefix, Math.min(limit, MAX_LIMIT))) {
+            items.add(new SuggestItem(head + entry.lemma(), entry.lemma(), entry.frequency()));
+        }
+        return items;
+    }
+
+    private PrefixDictionary dictionary(String site) {
+        if (site.isEmpty()) return global;
+        return byUrl.getOrDefault(site, PrefixDictionary.EMPTY);
+    }
+
+    private void putSite(Site site, PrefixDictionary dictionary) {
+        sites.put(site.getId(), new SiteDictionary(site.getUrl(), dictionary));
+        byUrl.put(site.getUrl(), dictionary);
+    }
+
+    private boolean removeSite(Integer siteId) {
+        SiteDictionary removed = sites.remove(siteId);
+        if (removed == null) return false;
+        byUrl.remove(removed.url(), removed.dictionary());
+        return true;
+    }
+
+    private void rebuildSite(Integer siteId) {
+        Site site = siteRepository.findById(siteId).orElse(null);
+        if (site == null) {
+            deleteSnapshot(siteId);
+            removeSite(siteId);
+            return;
+        }
+        long start = System.nanoTime();
+        // Итоги читаются до лемм: если таблица изменится между запросами, снимок
+        // окажется новее своих итогов и при следующем старте будет перестроен.
+        LemmaTotalsView totals = lemmaRepository.findTotalsBySiteId(siteId);
+        List<PrefixDictionary.Entry> entries = new ArrayList<>();
+        for (LemmaView view : lemmaRepository.findViewsBySiteId(siteId)) {
+            if (view.frequency() > 0) entries.add(new PrefixDictionary.Entry(view.lemma(), view.frequency()));
+        }
+        PrefixDictionary dictionary = PrefixDictionary.build(entries);
+        putSite(site, dictionary);
+        log.debug("Suggest dictionary for {} rebuilt in {} ms: {}", site.getName(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), dictionary);
+        try {
+            DictionarySnapshot.write(snapshot(siteId), siteId, totals, dictionary);
+        } catch (IOException e) {
+            log.warn("Suggest snapshot write failed for site {}: {}", site.getName(), e.getMessage());
+        }
+    }
+
+    /**
+     * Словарь сайта из снимка, если снимок есть и итоги таблицы lemma с ним совпадают,
+     * иначе из БД. Возвращает true, если словарь прочитан из снимка.
+     */
+    private boolean loadSite(Site site) {
+        Path path = snapshot(site.getId());
+        if (Files.exists(path)) {
+            try {
+                DictionarySnapshot.Loaded loaded = DictionarySnapshot.read(path);
+                if (loaded.siteId() == site.getId()
+                        && loaded.totals().equals(lemmaRepository.findTotalsBySiteId(site.getId()))) {
+                    putSite(site, loaded.dictionary());
+                    return true;
+                }
+                log.info("Suggest snapshot for {} is stale, rebuilding", site.getName());
+            } catch (IOException e) {
+                log.warn("Suggest snapshot read failed for {}: {}", site.getName(), e.getMessage());
+            }
+        }
+        rebuildSite(site.getId());
+        return false;
+    }
+
+    private void mergeGlobal() {
+        global = PrefixDictionary.merge(sites.values().stream().map(SiteDictionary::dictionary).toList());
+    }
+
+    /**
+     * Загрузка при старте: сайты читаются параллельно в пуле {@link StartupTasks},
+     * поток построения ждёт их, чтобы перестройки из очереди шли уже после загрузки.
+     */
+    private void loadAllQuietly() {
+        try {
+            List<CompletableFuture<Boolean>> loads = siteRepository.findAll().stream()
+                    .map(site -> startupTasks.run(() -> loadSite(site)))
+                    .toList();
+            long fromSnapshots = loads.stream().filter(CompletableFuture::join).count();
+            mergeGlobal();
+            log.info("Suggest dictionaries loaded for {} sites ({} from snapshots), {} lemmas",
+                    sites.size(), fromSnapshots, global.size());
+        } catch (RuntimeException e) {
+            log.warn("Suggest dictionary build failed: {}", e.getMessage());
+        }
+    }
+
+    private Path snapshot(Integer siteId) {
+        return DictionarySnapshot.path(Path.of(properties.getSuggestSnapshotPath()), siteId);
+    }
+
+    private void deleteSnapshot(Integer siteId) {
+        try {
+            Files.deleteIfExists(snapshot(siteId));
+        } catch (IOException e) {
+            log.warn("Suggest snapshot delete failed for site {}: {}", siteId, e.getMessage());
+        }
+    }
+
+    private void refreshIndexingQuietly() {
+        try {
+            siteRepository.findAll().stream()
+                    .filter(site -> site.getStatus() == Status.INDEXING)
+                    .forEach(site -> rebuild(site.getId()));
+        } catch (RuntimeException e) {
+            log.warn("Suggest dictionary refresh failed: {}", e.getMessage());
+        }
+    }
+}
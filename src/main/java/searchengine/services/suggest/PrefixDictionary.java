@@ -0,0 +1,274 @@
+package searchengine.services.suggest;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Неизменяемый словарь лемм с частотами для дополнения по префиксу.
+ * Леммы отсортированы и лежат подряд в одном массиве символов, границы — в массиве
+ * смещений, так что на лемму приходится её длина в char и два int, без объектов строк.
+ * Префикс двоичным поиском даёт диапазон лемм; для коротких префиксов, у которых
+ * диапазон велик, лучшие по частоте леммы посчитаны заранее при построении.
+ */
+public final class PrefixDictionary {
+
+    public static final PrefixDictionary EMPTY = new PrefixDictionary(new char[0], new int[1], new int[0]);
+
+    /**
+     * Сколько дополнений хранится заранее для префиксов из одной-двух букв.
+     */
+    static final int PRECOMPUTED_LIMIT = 20;
+    private static final int PRECOMPUTED_PREFIX = 2;
+
+    private final char[] chars;
+    private final int[] offsets;
+    private final int[] frequencies;
+    private final Map<String, int[]> precomputed = new HashMap<>();
+
+    public record Entry(String lemma, int frequency) {
+    }
+
+    private PrefixDictionary(char[] chars, int[] offsets, int[] frequencies) {
+        this.chars = chars;
+        this.offsets = offsets;
+        this.frequencies = frequencies;
+        precompute();
+    }
+
+    /**
+     * Строит словарь; повторы одной леммы складываются.
+     */
+    public static PrefixDictionary build(Collection<Entry> entries) {
+        List<Entry> sorted = new ArrayList<>(entries);
+        sorted.sort(Comparator.comparing(Entry::lemma));
+        return fromSorted(sorted);
+    }
+
+    /**
+     * Общий словарь из словарей сайтов слиянием отсортированных массивов;
+     * частоты одной леммы на разных сайтах складываются.
+     */
+    public static PrefixDictionary merge(Collection<PrefixDictionary> dictionaries) {
+        PriorityQueue<Cursor> queue = new PriorityQueue<>(Comparator.comparing(Cursor::lemma));
+        for (PrefixDictionary dictionary : dictionaries) {
+            if (dictionary.size() > 0) queue.add(new Cursor(dictionary));
+        }
+        List<Entry> merged = new ArrayList<>();
+        while (!queue.isEmpty()) {
+            Cursor cursor = queue.poll();
+            merged.add(new Entry(cursor.lemma(), cursor.frequency()));
+            if (cursor.advance()) queue.add(cursor);
+        }
+        return fromSorted(merged);
+    }
+
+    /**
+     * Словарь из готовых массивов, например прочитанных из {@link DictionarySnapshot}.
+     */
+    static PrefixDictionary of(char[] chars, int[] offsets, int[] frequencies) {
+        return new PrefixDictionary(chars, offsets, frequencies);
+    }
+
+    private static PrefixDictionary fromSorted(List<Entry> sorted) {
+        int length = 0;
+        int unique = 0;
+        String previous = null;
+        for (Entry entry : sorted) {
+            if (!entry.lemma().equals(previous)) {
+                length += entry.lemma().length();
+                unique++;
+                previous = entry.lemma();
+            }
+        }
+        char[] chars = new char[length];
+        int[] offsets = new int[unique + 1];
+        int[] frequencies = new int[unique];
+        int index = -1;
+        int position = 0;
+        previous = null;
+        for (Entry entry : sorted) {
+            if (!entry.lemma().equals(previous)) {
+                index++;
+                entry.lemma().getChars(0, entry.lemma().length(), chars, position);
+                offsets[index] = position;
+                position += entry.lemma().length();
+                previous = entry.lemma();
+            }
+            frequencies[index] += entry.frequency();
+        }
+        offsets[unique] = position;
+        return new PrefixDictionary(chars, offsets, frequencies);
+    }
+
+    char[] chars() {
+        return chars;
+    }
+
+    int[] offsets() {
+        return offsets;
+    }
+
+    int[] frequencies() {
+        return frequencies;
+    }
+
+    public int size() {
+        return frequencies.length;
+    }
+
+    public String lemma(int index) {
+        return new String(chars, offsets[index], offsets[index + 1] - offsets[index]);
+    }
+
+    public int frequency(int index) {
+        return frequencies[index];
+    }
+
+    /**
+     * До limit лемм с этим префиксом по убыванию частоты, при равной — по алфавиту.
+     */
+    public List<Entry> complete(String prefix, int limit) {
+        if (prefix.isEmpty() || limit <= 0 || size() == 0) return List.of();
+        int[] ready = prefix.length() <= PRECOMPUTED_PREFIX && limit <= PRECOMPUTED_LIMIT
+                ? precomputed.get(prefix) : null;
+        int[] best = ready != null ? ready : top(lowerBound(prefix), upperBound(prefix), limit);
+        List<Entry> result = new ArrayList<>(Math.min(limit, best.length));
+        for (int i = 0; i < best.length && i < limit; i++) {
+            result.add(new Entry(lemma(best[i]), frequencies[best[i]]));
+        }
+        return result;
+    }
+
+    /**
+     * Индексы limit самых частых лемм диапазона [from, to) в порядке выдачи.
+     */
+    private int[] top(int from, int to, int limit) {
+        if (from >= to) return new int[0];
+        PriorityQueue<Integer> heap = new PriorityQueue<>(limit + 1, this::compareRank);
+        for (int i = from; i < to; i++) {
+            if (heap.size() < limit) {
+                heap.add(i);
+            } else if (frequencies[i] > frequencies[heap.peek()]) {
+                heap.poll();
+                heap.add(i);
+            }
+        }
+        int[] result = new int[heap.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = heap.poll();
+        }
+        return result;
+    }
+
+    /**
+     * Порядок в куче: сначала худшие — реже, а при равной частоте дальше по алфавиту.
+     */
+    private int compareRank(int a, int b) {
+        if (frequencies[a] != frequencies[b]) return Integer.compare(frequencies[a], frequencies[b]);
+        return Integer.compare(b, a);
+    }
+
+    /**
+     * Диапазоны префиксов одной длины не пересекаются, поэтому подготовка
+     * проходит словарь дважды, а не по разу на каждый префикс.
+     */
+    private void precompute() {
+        for (int prefixLength = 1; prefixLength <= PRECOMPUTED_PREFIX; prefixLength++) {
+            int i = 0;
+            while (i < size()) {
+                if (offsets[i + 1] - offsets[i] < prefixLength) {
+                    i++;
+                    continue;
+                }
+                String prefix = new String(chars, offsets[i], prefixLength);
+                int end = upperBound(prefix);
+                precomputed.put(prefix, top(i, end, PRECOMPUTED_LIMIT));
+                i = end;
+            }
+        }
+    }
+
+    /**
+     * Первая лемма не меньше префикса.
+     */
+    private int lowerBound(String prefix) {
+        int low = 0;
+        int high = size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(middle, prefix, false) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Первая лемма после всех, начинающихся с префикса.
+     */
+    private int upperBound(String prefix) {
+        int low = 0;
+        int high = size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(middle, prefix, true) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Сравнивает лемму с префиксом; с truncate лемма сравнивается только по длине префикса.
+     */
+    private int compare(int index, String prefix, boolean truncate) {
+        int start = offsets[index];
+        int length = offsets[index + 1] - start;
+        int common = Math.min(length, prefix.length());
+        for (int i = 0; i < common; i++) {
+            int diff = chars[start + i] - prefix.charAt(i);
+            if (diff != 0) return diff;
+        }
+        if (truncate && length >= prefix.length()) return 0;
+        return length - prefix.length();
+    }
+
+    private static final class Cursor {
+        private final PrefixDictionary dictionary;
+        private int index;
+        private String lemma;
+
+        private Cursor(PrefixDictionary dictionary) {
+            this.dictionary = dictionary;
+            this.lemma = dictionary.lemma(0);
+        }
+
+        private String lemma() {
+            return lemma;
+        }
+
+        private int frequency() {
+            return dictionary.frequencies[index];
+        }
+
+        private boolean advance() {
+            if (++index >= dictionary.size()) return false;
+            lemma = dictionary.lemma(index);
+            return true;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PrefixDictionary{lemmas=" + size() + ", chars=" + chars.length + "}";
+    }
+}
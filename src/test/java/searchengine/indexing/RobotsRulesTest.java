@@ -0,0 +1,93 @@
+package searchengine.indexing;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RobotsRulesTest {
+
+    private static final Duration CONFIGURED = Duration.ofMillis(500);
+    private static final Duration MAX = Duration.ofSeconds(10);
+
+    @Test
+    void groupIsChosenByExactProductToken() throws IOException {
+        RobotsRules rules = RobotsRules.parse(fixture("agents.txt"), "SearchBot/1.0 (+https://example.com/bot)");
+
+        assertThat(rules.isAllowed("/")).isTrue();
+        assertThat(rules.isAllowed("/news/today")).isTrue();
+        assertThat(rules.isAllowed("/private/a")).isTrue();
+        assertThat(rules.isAllowed("/tmp/a")).isFalse();
+        assertThat(rules.isAllowed("/tmp/public")).isTrue();
+        assertThat(rules.delay(CONFIGURED, MAX)).isEqualTo(Duration.ofMillis(2500));
+    }
+
+    @Test
+    void groupsOfSameAgentInAnyCaseAreMerged() throws IOException {
+        RobotsRules rules = RobotsRules.parse(fixture("agents.txt"), "searchbot");
+
+        assertThat(rules.isAllowed("/drafts/post.html")).isFalse();
+        assertThat(rules.isAllowed("/drafts/post.htm")).isTrue();
+        assertThat(rules.isAllowed("/tmp/a")).isFalse();
+    }
+
+    @Test
+    void compatibleUserAgentUsesTokenAfterCompatible() throws IOException {
+        RobotsRules rules = RobotsRules.parse(fixture("agents.txt"),
+                "Mozilla/5.0 (compatible; SearchBot/1.0; +https://example.com/bot)");
+
+        assertThat(rules.isAllowed("/tmp/a")).isFalse();
+        assertThat(rules.isAllowed("/private/a")).isTrue();
+    }
+
+    @Test
+    void agentWhoseTokenOnlyContainsGroupNameFallsBackToStar() throws IOException {
+        RobotsRules rules = RobotsRules.parse(fixture("agents.txt"), "SearchBotPro/2.0");
+
+        assertThat(rules.isAllowed("/")).isTrue();
+        assertThat(rules.isAllowed("/private/a")).isFalse();
+        assertThat(rules.isAllowed("/tmp/a")).isTrue();
+        assertThat(rules.delay(CONFIGURED, MAX)).isEqualTo(Duration.ofSeconds(1));
+    }
+
+    @Test
+    void sitemapsAreCollectedOutsideGroups() throws IOException {
+        RobotsRules rules = RobotsRules.parse(fixture("agents.txt"), "OtherBot");
+
+        assertThat(rules.getSitemaps()).containsExactly(
+                "https://example.com/sitemap.xml", "https://example.com/sitemap-news.xml");
+    }
+
+    @Test
+    void longestRuleWinsAndAllowWinsTies() throws IOException {
+        RobotsRules rules = RobotsRules.parse(fixture("rules.txt"), "SearchBot");
+
+        assertThat(rules.isAllowed("/shop")).isFalse();
+        assertThat(rules.isAllowed("/shop/cart")).isFalse();
+        assertThat(rules.isAllowed("/shop/catalog/1")).isTrue();
+        assertThat(rules.isAllowed("/page")).isTrue();
+        assertThat(rules.isAllowed("/docs/a.pdf")).isFalse();
+        assertThat(rules.isAllowed("/docs/a.pdf?download")).isTrue();
+        assertThat(rules.isAllowed("/robots.txt")).isTrue();
+        assertThat(rules.delay(CONFIGURED, MAX)).isEqualTo(CONFIGURED);
+    }
+
+    @Test
+    void crawlDelayIsCappedAndNeverBelowConfigured() {
+        RobotsRules rules = RobotsRules.parse("User-agent: *\nCrawl-delay: 60\n", "SearchBot");
+        assertThat(rules.delay(CONFIGURED, MAX)).isEqualTo(MAX);
+
+        RobotsRules quick = RobotsRules.parse("User-agent: *\nCrawl-delay: 0.1\n", "SearchBot");
+        assertThat(quick.delay(CONFIGURED, MAX)).isEqualTo(CONFIGURED);
+    }
+
+    private static String fixture(String name) throws IOException {
+        try (InputStream in = RobotsRulesTest.class.getResourceAsStream("/robots/" + name)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
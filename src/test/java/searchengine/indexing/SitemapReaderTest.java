@@ -0,0 +1,77 @@
+package searchengine.indexing;
+
+import org.junit.jupiter.api.Test;
+import searchengine.dto.indexing.SitemapEntry;
+
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SitemapReaderTest {
+
+    @Test
+    void mediaExtensionsDoNotReplacePageLocation() throws Exception {
+        List<SitemapEntry> pages = new ArrayList<>();
+        List<String> sitemaps = new ArrayList<>();
+        read("media.xml", pages, sitemaps, Integer.MAX_VALUE);
+
+        assertThat(pages).containsExactly(
+                new SitemapEntry("https://example.com/gallery", Instant.parse("2024-03-01T00:00:00Z")),
+                new SitemapEntry("https://example.com/clip", Instant.parse("2024-03-02T07:15:00Z")));
+        assertThat(sitemaps).isEmpty();
+    }
+
+    @Test
+    void sitemapIndexListsNestedSitemaps() throws Exception {
+        List<SitemapEntry> pages = new ArrayList<>();
+        List<String> sitemaps = new ArrayList<>();
+        read("index.xml", pages, sitemaps, Integer.MAX_VALUE);
+
+        assertThat(pages).isEmpty();
+        assertThat(sitemaps).containsExactly(
+                "https://example.com/sitemap-pages.xml", "https://example.com/sitemap-news.xml");
+    }
+
+    @Test
+    void sitemapWithoutNamespaceIsRead() throws Exception {
+        List<SitemapEntry> pages = new ArrayList<>();
+        read("plain.xml", pages, new ArrayList<>(), Integer.MAX_VALUE);
+
+        assertThat(pages).extracting(SitemapEntry::url)
+                .containsExactly("https://example.com/", "https://example.com/a", "https://example.com/b");
+        assertThat(pages.get(0).lastmod()).isNull();
+    }
+
+    @Test
+    void readingStopsWhenConsumerDeclines() throws Exception {
+        List<SitemapEntry> pages = new ArrayList<>();
+        read("plain.xml", pages, new ArrayList<>(), 2);
+
+        assertThat(pages).extracting(SitemapEntry::url)
+                .containsExactly("https://example.com/", "https://example.com/a");
+    }
+
+    @Test
+    void lastmodAcceptsW3cDatetimeForms() {
+        assertThat(SitemapReader.parseLastmod("2024-03-01")).isEqualTo(Instant.parse("2024-03-01T00:00:00Z"));
+        assertThat(SitemapReader.parseLastmod("2024-03-01T12:00:00Z")).isEqualTo(Instant.parse("2024-03-01T12:00:00Z"));
+        assertThat(SitemapReader.parseLastmod("2024-03-01T12:00:00+02:00"))
+                .isEqualTo(Instant.parse("2024-03-01T10:00:00Z"));
+        assertThat(SitemapReader.parseLastmod("01.03.2024")).isNull();
+        assertThat(SitemapReader.parseLastmod("")).isNull();
+        assertThat(SitemapReader.parseLastmod(null)).isNull();
+    }
+
+    private static void read(String fixture, List<SitemapEntry> pages, List<String> sitemaps, int limit)
+            throws Exception {
+        try (InputStream in = SitemapReaderTest.class.getResourceAsStream("/sitemap/" + fixture)) {
+            SitemapReader.read(in, entry -> {
+                pages.add(entry);
+                return pages.size() < limit;
+            }, sitemaps::add);
+        }
+    }
+}
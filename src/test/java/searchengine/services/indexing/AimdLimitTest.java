@@ -0,0 +1,95 @@
+package searchengine.services.indexing;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AimdLimitTest {
+
+    private static final long RTT = 1_000_000;
+    private static final long START = 1_000_000_000;
+
+    @Test
+    void initialLimitIsClampedToBounds() {
+        assertThat(new AimdLimit(100, 1, 8).limit()).isEqualTo(8);
+        assertThat(new AimdLimit(0, 2, 8).limit()).isEqualTo(2);
+    }
+
+    @Test
+    void fullLimitGrowsByAboutOnePerWindowUpToMax() {
+        AimdLimit limit = new AimdLimit(4, 1, 6);
+        for (int i = 0; i < 4; i++) assertThat(limit.success(RTT, 4, START)).isTrue();
+        assertThat(limit.limit()).isEqualTo(4);
+        limit.success(RTT, 4, START);
+        assertThat(limit.limit()).isEqualTo(5);
+
+        for (int i = 0; i < 100; i++) limit.success(RTT, limit.limit(), START);
+        assertThat(limit.limit()).isEqualTo(6);
+    }
+
+    @Test
+    void limitThatIsNotFullDoesNotGrow() {
+        AimdLimit limit = new AimdLimit(4, 1, 8);
+        for (int i = 0; i < 100; i++) limit.success(RTT, 3, START);
+
+        assertThat(limit.limit()).isEqualTo(4);
+    }
+
+    @Test
+    void overloadHalvesLimitOncePerRttDownToMin() {
+        AimdLimit limit = new AimdLimit(16, 3, 16);
+        limit.success(RTT, 1, START);
+
+        assertThat(limit.overload(START)).isTrue();
+        assertThat(limit.limit()).isEqualTo(8);
+        assertThat(limit.overload(START + RTT / 2)).isFalse();
+        assertThat(limit.limit()).isEqualTo(8);
+
+        assertThat(limit.overload(START + 2 * RTT)).isTrue();
+        assertThat(limit.limit()).isEqualTo(4);
+        assertThat(limit.overload(START + 4 * RTT)).isTrue();
+        assertThat(limit.limit()).isEqualTo(3);
+        assertThat(limit.overload(START + 6 * RTT)).isFalse();
+        assertThat(limit.limit()).isEqualTo(3);
+    }
+
+    @Test
+    void growingLatencyLowersLimit() {
+        AimdLimit limit = new AimdLimit(8, 1, 8);
+        limit.success(RTT, 8, START);
+
+        boolean lowered = false;
+        long now = START;
+        for (int i = 0; i < 20 && !lowered; i++) {
+            now += 100 * RTT;
+            lowered = !limit.success(20 * RTT, 8, now);
+        }
+        assertThat(lowered).isTrue();
+        assertThat(limit.limit()).isEqualTo(4);
+    }
+
+    @Test
+    void jitterBelowSlackIsIgnored() {
+        long fast = AimdLimit.LATENCY_SLACK_NANOS / 50;
+        AimdLimit limit = new AimdLimit(4, 1, 4);
+        limit.success(fast, 4, START);
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(limit.success(AimdLimit.LATENCY_SLACK_NANOS / 2, 4, START + i * RTT)).isTrue();
+        }
+        assertThat(limit.limit()).isEqualTo(4);
+    }
+
+    @Test
+    void baselineFollowsSlowerHostOnlyAtMin() {
+        AimdLimit limit = new AimdLimit(1, 1, 4);
+        limit.success(RTT, 1, START);
+        long now = START;
+        for (int i = 0; i < 2000; i++) {
+            now += 100 * RTT;
+            limit.success(20 * RTT, 1, now);
+        }
+
+        assertThat(limit.limit()).isGreaterThan(1);
+    }
+}
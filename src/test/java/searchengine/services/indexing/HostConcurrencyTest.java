@@ -0,0 +1,111 @@
+package searchengine.services.indexing;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import searchengine.config.SearchEngineProperties;
+import searchengine.services.metrics.SearchEngineMetrics;
+
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ * Пауза по Retry-After. Предел загрузок закреплён на двух, чтобы ожидание
+ * объяснялось только паузой, а не уменьшением предела.
+ */
+class HostConcurrencyTest {
+
+    private static final String HOST = "site.test";
+    private static final Duration NO_WAIT = Duration.ofMillis(200);
+
+    private final SearchEngineProperties properties = new SearchEngineProperties();
+    private HostConcurrency concurrency;
+
+    @BeforeEach
+    void setUp() {
+        properties.setCrawlConcurrencyInitial(2);
+        properties.setCrawlConcurrencyMin(2);
+        properties.setCrawlConcurrencyMax(2);
+        properties.setMaxRetryAfter(Duration.ofSeconds(5));
+        concurrency = new HostConcurrency(properties, new SearchEngineMetrics(new SimpleMeterRegistry()));
+    }
+
+    @Test
+    void retryAfterPausesOnlyThatHost() throws InterruptedIOException {
+        respond(429, Duration.ofMillis(400));
+
+        assertThat(acquireTime("other.test")).isLessThan(NO_WAIT);
+        assertThat(acquireTime(HOST)).isGreaterThanOrEqualTo(Duration.ofMillis(350));
+        assertThat(acquireTime(HOST)).isLessThan(NO_WAIT);
+    }
+
+    @Test
+    void retryAfterIsCappedByMaxRetryAfter() {
+        properties.setMaxRetryAfter(Duration.ofMillis(300));
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            respond(503, Duration.ofHours(1));
+            assertThat(acquireTime(HOST)).isGreaterThanOrEqualTo(Duration.ofMillis(250));
+        });
+    }
+
+    @Test
+    void shorterRetryAfterDoesNotCutLongerPause() throws InterruptedIOException {
+        HostConcurrency.Permit first = concurrency.acquire(HOST);
+        HostConcurrency.Permit second = concurrency.acquire(HOST);
+        first.responded(429, Duration.ofMillis(500));
+        first.close();
+        second.responded(429, Duration.ofMillis(50));
+        second.close();
+
+        assertThat(acquireTime(HOST)).isGreaterThanOrEqualTo(Duration.ofMillis(450));
+    }
+
+    @Test
+    void retryAfterIsIgnoredWithoutOverloadStatusOrValue() throws InterruptedIOException {
+        respond(200, Duration.ofSeconds(30));
+        assertThat(acquireTime(HOST)).isLessThan(NO_WAIT);
+
+        respond(503, null);
+        assertThat(acquireTime(HOST)).isLessThan(NO_WAIT);
+
+        respond(429, Duration.ZERO);
+        assertThat(acquireTime(HOST)).isLessThan(NO_WAIT);
+    }
+
+    @Test
+    void waitDuringPauseIsInterruptible() throws Exception {
+        respond(429, Duration.ofSeconds(5));
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread waiting = new Thread(() -> {
+            try {
+                concurrency.acquire(HOST).close();
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        waiting.start();
+        Thread.sleep(100);
+        waiting.interrupt();
+        waiting.join(2000);
+
+        assertThat(waiting.isAlive()).isFalse();
+        assertThat(failure.get()).isInstanceOf(InterruptedIOException.class);
+    }
+
+    private void respond(int status, Duration retryAfter) throws InterruptedIOException {
+        try (HostConcurrency.Permit permit = concurrency.acquire(HOST)) {
+            permit.responded(status, retryAfter);
+        }
+    }
+
+    private Duration acquireTime(String host) throws InterruptedIOException {
+        long start = System.nanoTime();
+        concurrency.acquire(host).close();
+        return Duration.ofNanos(System.nanoTime() - start);
+    }
+}
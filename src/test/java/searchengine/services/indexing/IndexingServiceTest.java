@@ -0,0 +1,175 @@
+package searchengine.services.indexing;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import searchengine.config.SearchEngineProperties;
+import searchengine.config.SiteConfig;
+import searchengine.config.SitesList;
+import searchengine.dto.indexing.PageIndexingJob;
+import searchengine.model.Site;
+import searchengine.model.Status;
+import searchengine.repositories.PageRepository;
+import searchengine.repositories.SiteRepository;
+import searchengine.services.lemmatization.LemmaService;
+import searchengine.services.metrics.SearchEngineMetrics;
+import searchengine.services.siteops.SiteDataService;
+import searchengine.services.suggest.LemmaSuggester;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Сайты в БД подменены списком: репозиторий и создание сайта работают с ним,
+ * остальные зависимости — заглушки.
+ */
+@ExtendWith(MockitoExtension.class)
+class IndexingServiceTest {
+
+    private static final SiteConfig SITE = new SiteConfig("http://site.test", "Site");
+    private static final long WAIT_MILLIS = 5000;
+
+    @Mock
+    private SiteDataService siteDataService;
+    @Mock
+    private SiteRepository siteRepository;
+    @Mock
+    private LemmaService lemmaService;
+    @Mock
+    private SearchEngineMetrics metrics;
+    @Mock
+    private IndexingProgress progress;
+    @Mock
+    private PageIndexingQueue pageIndexingQueue;
+    @Mock
+    private CrawlSeeder crawlSeeder;
+    @Mock
+    private PageFetcher pageFetcher;
+    @Mock
+    private LemmaSuggester lemmaSuggester;
+    @Mock
+    private CrawlLeases leases;
+    @Mock
+    private PageRepository pageRepository;
+
+    private final List<Site> stored = new ArrayList<>();
+    private IndexingService service;
+    private boolean started;
+
+    @BeforeEach
+    void setUp() {
+        SitesList sites = new SitesList();
+        sites.setSites(List.of(SITE));
+        SearchEngineProperties properties = new SearchEngineProperties();
+        properties.setCrawlClaimInterval(Duration.ofMillis(10));
+        properties.setLeaseHeartbeatInterval(Duration.ofHours(1));
+        service = new IndexingService(properties, siteDataService, siteRepository, lemmaService,
+                metrics, progress, pageIndexingQueue, crawlSeeder, pageFetcher, lemmaSuggester, leases,
+                pageRepository, sites);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (started) service.stop();
+    }
+
+    @Test
+    void pageOfUnknownSiteIsNotClaimedForFullCrawl() {
+        storeSites();
+        when(pageIndexingQueue.submit(any(), anyString())).thenAnswer(invocation ->
+                new PageIndexingJob("job", SITE.getUrl() + invocation.getArgument(1), LocalDateTime.now()));
+
+        service.indexPage("http://site.test/about");
+        service.claimSites();
+
+        assertThat(stored).singleElement().extracting(Site::getStatus).isEqualTo(Status.INDEXED);
+        verify(pageIndexingQueue).submit(stored.get(0), "/about");
+        verify(leases, never()).tryClaim(anyString());
+        verify(pageRepository, never()).countPageBySiteId(any());
+    }
+
+    @Test
+    void failedCrawlMarksSiteFailedAndReleasesLease() {
+        storeSites();
+        Site site = siteDataService.createSite(SITE, Status.INDEXING);
+        when(leases.tryClaim(SITE.getUrl())).thenReturn(true);
+        when(crawlSeeder.robots(any())).thenThrow(new IllegalStateException("robots.txt недоступен"));
+        doAnswer(invocation -> {
+            site.setStatus(Status.FAILED);
+            return null;
+        }).when(siteDataService).updateLastError(site, "robots.txt недоступен");
+        startCoordinator();
+
+        verify(leases, timeout(WAIT_MILLIS)).release(SITE.getUrl());
+        verify(siteDataService).updateLastError(site, "robots.txt недоступен");
+        verify(progress).finished(site);
+        verify(leases).tryClaim(SITE.getUrl());
+    }
+
+    @Test
+    void crawlThatLostItsLeaseLeavesSiteToNewOwner() throws InterruptedException {
+        storeSites();
+        siteDataService.createSite(SITE, Status.INDEXING);
+        when(leases.tryClaim(SITE.getUrl())).thenReturn(true, false);
+        when(leases.renew(SITE.getUrl())).thenReturn(false);
+        when(crawlSeeder.robots(any())).thenAnswer(invocation -> {
+            service.heartbeat();
+            throw new IllegalStateException("обход остановлен");
+        });
+        startCoordinator();
+
+        verify(crawlSeeder, timeout(WAIT_MILLIS)).robots(any());
+        awaitCrawlsFinished();
+        verify(siteDataService, never()).updateLastError(any(), anyString());
+        verify(progress, never()).finished(any());
+        verify(leases, never()).release(eq(SITE.getUrl()));
+    }
+
+    private void startCoordinator() {
+        service.start();
+        started = true;
+    }
+
+    private void awaitCrawlsFinished() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (service.isIndexing()) {
+            assertThat(System.currentTimeMillis()).as("обход не закончился").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Не каждому тесту нужны все запросы к сайтам, поэтому заглушки нестрогие.
+     */
+    private void storeSites() {
+        lenient().when(siteRepository.findFirstByUrl(anyString())).thenAnswer(invocation -> stored.stream()
+                .filter(site -> site.getUrl().equals(invocation.getArgument(0)))
+                .findFirst());
+        lenient().when(siteRepository.findAllByStatus(any())).thenAnswer(invocation -> stored.stream()
+                .filter(site -> site.getStatus() == invocation.getArgument(0))
+                .toList());
+        when(siteDataService.createSite(any(), any())).thenAnswer(invocation -> {
+            SiteConfig config = invocation.getArgument(0);
+            Site site = Site.builder().id(stored.size() + 1).url(config.getUrl()).name(config.getName())
+                    .status(invocation.getArgument(1)).statusTime(LocalDateTime.now()).build();
+            stored.add(site);
+            return site;
+        });
+    }
+}
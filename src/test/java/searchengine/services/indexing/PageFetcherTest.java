@@ -0,0 +1,131 @@
+package searchengine.services.indexing;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import searchengine.config.SearchEngineProperties;
+import searchengine.dto.indexing.PageData;
+import searchengine.services.metrics.SearchEngineMetrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ * Загрузка с локального HTTP-сервера. Предел загрузок с хоста — одна, поэтому
+ * не освобождённое место загрузки повесило бы следующую загрузку.
+ */
+class PageFetcherTest {
+
+    private static final int TIMEOUT_MILLIS = 2000;
+    private static final Charset CP1251 = Charset.forName("windows-1251");
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private HttpServer server;
+    private PageFetcher fetcher;
+    private String root;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/stalled", this::stalled);
+        server.createContext("/cp1251", exchange -> send(exchange, "text/html",
+                page("<meta charset=\"windows-1251\"><title>Заголовок</title>", 1).getBytes(CP1251)));
+        server.createContext("/large", exchange -> send(exchange, "text/html; charset=UTF-8",
+                page("<title>Большая</title>", 5000).getBytes(StandardCharsets.UTF_8)));
+        server.start();
+        root = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        SearchEngineProperties properties = new SearchEngineProperties();
+        properties.setTimeout(TIMEOUT_MILLIS);
+        properties.setCrawlConcurrencyInitial(1);
+        properties.setCrawlConcurrencyMin(1);
+        properties.setCrawlConcurrencyMax(1);
+        SearchEngineMetrics metrics = new SearchEngineMetrics(registry);
+        fetcher = new PageFetcher(properties, metrics, new HostConcurrency(properties, metrics));
+        fetcher.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        fetcher.stop();
+        server.stop(0);
+    }
+
+    @Test
+    void stalledBodyTimesOutAndReleasesHost() {
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            long start = System.nanoTime();
+            assertThatThrownBy(() -> fetcher.fetchPage(root, root + "/stalled"))
+                    .isInstanceOf(HttpTimeoutException.class);
+            assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofMillis(2 * TIMEOUT_MILLIS));
+
+            assertThat(fetcher.fetchPage(root, root + "/cp1251")).isNotNull();
+        });
+        assertThat(registry.get("searchengine.crawler.concurrency.inflight").gauge().value()).isZero();
+    }
+
+    @Test
+    void bodyIsDecodedByMetaCharsetAndKeptWhole() throws IOException {
+        PageData page = fetcher.fetchPage(root, root + "/cp1251");
+
+        assertThat(page.html()).isEqualTo(page("<meta charset=\"windows-1251\"><title>Заголовок</title>", 1));
+        assertThat(page.content().title()).isEqualTo("Заголовок");
+        assertThat(page.content().text()).isEqualTo("Абзац 0 ссылка");
+        assertThat(page.content().links()).containsExactly(root + "/p0");
+    }
+
+    @Test
+    void largeBodyIsCopiedExactlyWhileParsed() throws IOException {
+        PageData page = fetcher.fetchPage(root, root + "/large");
+
+        assertThat(page.html()).isEqualTo(page("<title>Большая</title>", 5000));
+        assertThat(page.content().links()).hasSize(5000).endsWith(root + "/p4999");
+    }
+
+    private void stalled(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "text/html");
+        exchange.sendResponseHeaders(200, 100_000);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write("<html><body><p>начало".getBytes(StandardCharsets.UTF_8));
+            body.flush();
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // клиент закрыл соединение
+        }
+    }
+
+    private static void send(HttpExchange exchange, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String page(String head, int paragraphs) {
+        StringBuilder html = new StringBuilder("<html><head>").append(head).append("</head><body>");
+        for (int i = 0; i < paragraphs; i++) {
+            html.append("<p>Абзац ").append(i).append(" <a href=\"/p").append(i).append("\">ссылка</a></p>\n");
+        }
+        return html.append("</body></html>\n").toString();
+    }
+}
@@ -0,0 +1,229 @@
+package searchengine.services.indexstore;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.SearchEngineProperties;
+import searchengine.dto.projection.PagePostingView;
+import searchengine.dto.projection.PostingView;
+import searchengine.model.Index;
+import searchengine.model.Lemma;
+import searchengine.model.Page;
+import searchengine.model.Site;
+import searchengine.model.Status;
+import searchengine.repositories.IndexRepository;
+import searchengine.repositories.JdbcBatchRepository;
+import searchengine.repositories.LemmaRepository;
+import searchengine.repositories.PageRepository;
+import searchengine.repositories.SiteRepository;
+import searchengine.services.indexstore.segment.SegmentIndex;
+import searchengine.services.metrics.SearchEngineMetrics;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Одни и те же добавления, замены и удаления вхождений применяются к таблице index через
+ * {@link JpaIndexStore} и к {@link SegmentIndex} так же, как это делает {@link SegmentIndexStore}.
+ * Между шагами сегменты сбрасываются и сливаются, а в конце индекс открывается заново;
+ * после каждого шага чтения обоих хранилищ должны совпадать.
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:index-store;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+        "spring.liquibase.enabled=false"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({JpaIndexStore.class, JdbcBatchRepository.class, IndexStoreConsistencyTest.Config.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class IndexStoreConsistencyTest {
+
+    private static final int PAGES = 30;
+    private static final int LEMMAS = 25;
+    private static final int ROUNDS = 6;
+
+    @TestConfiguration
+    static class Config {
+        @Bean
+        SearchEngineProperties searchEngineProperties() {
+            SearchEngineProperties properties = new SearchEngineProperties();
+            properties.setBatchSize(7);
+            return properties;
+        }
+
+        @Bean
+        SearchEngineMetrics searchEngineMetrics() {
+            return new SearchEngineMetrics(new SimpleMeterRegistry());
+        }
+    }
+
+    @Autowired
+    private JpaIndexStore jpa;
+    @Autowired
+    private SiteRepository siteRepository;
+    @Autowired
+    private PageRepository pageRepository;
+    @Autowired
+    private LemmaRepository lemmaRepository;
+    @Autowired
+    private IndexRepository indexRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    Path directory;
+
+    private final Random random = new Random(20240601);
+    private TransactionTemplate transaction;
+    private SegmentIndex segments;
+    private List<Page> pages;
+    private List<Integer> lemmaIds;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        transaction = new TransactionTemplate(transactionManager);
+        Site site = siteRepository.save(Site.builder().url("http://site.test").name("Site")
+                .status(Status.INDEXED).statusTime(LocalDateTime.now()).build());
+        pages = pageRepository.saveAll(IntStream.range(0, PAGES)
+                .mapToObj(i -> Page.builder().site(site).path("/p" + i).code(200).content("").build())
+                .toList());
+        lemmaIds = lemmaRepository.saveAll(IntStream.range(0, LEMMAS)
+                        .mapToObj(i -> Lemma.builder().site(site).lemma("лемма" + i).frequency(0).maxRank(0f).build())
+                        .toList())
+                .stream().map(Lemma::getId).toList();
+        segments = SegmentIndex.open(directory, 2);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        segments.close();
+        indexRepository.deleteAllInBatch();
+        lemmaRepository.deleteAllInBatch();
+        pageRepository.deleteAllInBatch();
+        siteRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void segmentsAnswerLikeIndexTableThroughFlushesMergesAndReopen() throws IOException {
+        for (int round = 0; round < ROUNDS; round++) {
+            addToEmptyPages(8);
+            segments.flush();
+            updatePages(4);
+            deletePages(3);
+            addToEmptyPages(2);
+            assertSameAnswers();
+
+            segments.flush();
+            while (segments.merge()) {
+                assertSameAnswers();
+            }
+            assertSameAnswers();
+        }
+        assertThat(segments.segmentCount()).isLessThan(ROUNDS * 2);
+
+        segments.close();
+        segments = SegmentIndex.open(directory, 2);
+        assertSameAnswers();
+    }
+
+    private void addToEmptyPages(int count) {
+        List<Page> empty = new ArrayList<>(pages.stream()
+                .filter(page -> jpa.findPagePostings(page.getId()).isEmpty()).toList());
+        Collections.shuffle(empty, random);
+        List<Index> indexes = new ArrayList<>();
+        for (Page page : empty.subList(0, Math.min(count, empty.size()))) {
+            Map<Integer, Float> postings = new HashMap<>();
+            for (int lemma = 1 + random.nextInt(10); lemma > 0; lemma--) {
+                postings.put(lemmaIds.get(random.nextInt(LEMMAS)), 1f + random.nextInt(20) / 4f);
+            }
+            postings.forEach((lemmaId, rank) -> indexes.add(Index.builder().page(page)
+                    .lemma(Lemma.builder().id(lemmaId).build()).rank(rank).build()));
+            segments.add(page.getId(), postings);
+        }
+        jpa.addPostings(indexes);
+    }
+
+    /**
+     * Часть вхождений страницы удаляется, у части меняется ранг; сегментам страница
+     * записывается заново целиком, как в {@link SegmentIndexStore#updatePagePostings}.
+     */
+    private void updatePages(int count) {
+        for (Page page : indexedPages(count)) {
+            List<PagePostingView> current = jpa.findPagePostings(page.getId());
+            List<PagePostingView> removed = new ArrayList<>();
+            Map<PagePostingView, Float> changed = new HashMap<>();
+            for (PagePostingView posting : current) {
+                int action = random.nextInt(3);
+                if (action == 0) removed.add(posting);
+                if (action == 1) changed.put(posting, posting.rank() + 1);
+            }
+            transaction.executeWithoutResult(status -> jpa.updatePagePostings(page.getId(), removed, changed));
+
+            Map<Integer, Float> postings = segments.page(page.getId());
+            removed.forEach(posting -> postings.remove(posting.lemmaId()));
+            changed.forEach((posting, rank) -> postings.put(posting.lemmaId(), rank));
+            segments.replacePage(page.getId(), postings);
+        }
+    }
+
+    private void deletePages(int count) {
+        List<Page> deleted = indexedPages(count);
+        transaction.executeWithoutResult(status -> jpa.deletePages(deleted));
+        segments.deletePages(deleted.stream().map(Page::getId).toList());
+    }
+
+    private List<Page> indexedPages(int count) {
+        List<Page> indexed = new ArrayList<>(pages.stream()
+                .filter(page -> !jpa.findPagePostings(page.getId()).isEmpty()).toList());
+        Collections.shuffle(indexed, random);
+        return indexed.subList(0, Math.min(count, indexed.size()));
+    }
+
+    private void assertSameAnswers() {
+        Comparator<PostingView> byPage = Comparator.comparing(PostingView::pageId);
+        long visible = 0;
+        for (Integer lemmaId : lemmaIds) {
+            assertThat(segments.postings(List.of(lemmaId), null))
+                    .as("вхождения леммы %d", lemmaId)
+                    .usingElementComparator(byPage.thenComparing(PostingView::rank))
+                    .containsExactlyInAnyOrderElementsOf(jpa.findPostings(List.of(lemmaId)));
+        }
+        List<Integer> somePages = pages.stream().map(Page::getId).filter(id -> id % 3 == 0).toList();
+        assertThat(segments.postings(lemmaIds, somePages))
+                .usingElementComparator(byPage.thenComparing(PostingView::rank))
+                .containsExactlyInAnyOrderElementsOf(jpa.findPostings(lemmaIds, somePages));
+        for (Page page : pages) {
+            Map<Integer, Float> expected = jpa.findPagePostings(page.getId()).stream()
+                    .collect(Collectors.toMap(PagePostingView::lemmaId, PagePostingView::rank, (a, b) -> a, TreeMap::new));
+            assertThat(segments.page(page.getId())).as("страница %d", page.getId()).isEqualTo(expected);
+            visible += expected.size();
+        }
+        assertThat(segments.referencedLemmas(lemmaIds)).isEqualTo(jpa.findReferencedLemmas(lemmaIds));
+        assertThat(visible).isEqualTo(jpa.count());
+        assertThat(segments.postingCount()).isGreaterThanOrEqualTo(visible);
+    }
+}
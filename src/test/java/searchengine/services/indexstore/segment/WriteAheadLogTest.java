@@ -0,0 +1,183 @@
+package searchengine.services.indexstore.segment;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Журнал после аварийной остановки: последняя запись могла не дописаться,
+ * остаться нулями от предвыделенного места или дописаться с испорченными байтами.
+ */
+class WriteAheadLogTest {
+
+    private static final long GENERATION = 7;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void wholeLogIsReplayedInOrder() throws IOException {
+        long[] boundaries = writeLog();
+
+        List<String> replayed = replay();
+
+        assertThat(replayed).containsExactly("A 1 {10=1.0}", "R 1 {11=2.0}", "D [1, 2]", "A 3 {12=0.5, 13=1.5}");
+        assertThat(Files.size(log())).isEqualTo(boundaries[boundaries.length - 1]);
+    }
+
+    @Test
+    void cutAtRecordBoundaryKeepsEarlierRecords() throws IOException {
+        long[] boundaries = writeLog();
+        writeLogCutAt(boundaries[2]);
+
+        assertThat(replay()).containsExactly("A 1 {10=1.0}", "R 1 {11=2.0}", "D [1, 2]");
+    }
+
+    @Test
+    void recordCutInTheMiddleIsDropped() throws IOException {
+        long[] boundaries = writeLog();
+        for (long cut = boundaries[2] + 1; cut < boundaries[3]; cut++) {
+            writeLogCutAt(cut);
+            assertThat(replay()).as("обрезано на %d", cut)
+                    .containsExactly("A 1 {10=1.0}", "R 1 {11=2.0}", "D [1, 2]");
+        }
+    }
+
+    @Test
+    void zeroFilledTailIsDropped() throws IOException {
+        writeLog();
+        appendBytes(new byte[64]);
+
+        assertThat(replay()).hasSize(4);
+    }
+
+    @Test
+    void recordWithCorruptedBytesIsDroppedWithEverythingAfterIt() throws IOException {
+        long[] boundaries = writeLog();
+        flipByte(boundaries[1] + 2);
+
+        assertThat(replay()).containsExactly("A 1 {10=1.0}", "R 1 {11=2.0}");
+    }
+
+    @Test
+    void garbageCountDoesNotAllocateOrFail() throws IOException {
+        writeLog();
+        ByteBuffer record = ByteBuffer.allocate(9).put((byte) 'A').putInt(4).putInt(Integer.MAX_VALUE).flip();
+        appendBytes(record.array());
+
+        assertThat(replay()).hasSize(4);
+    }
+
+    @Test
+    void indexReopenedAfterTornTailKeepsAcknowledgedWrites() throws IOException {
+        long acknowledged;
+        try (WriteAheadLog wal = WriteAheadLog.create(directory, GENERATION)) {
+            wal.add(1, Map.of(10, 1.0f));
+            wal.add(2, Map.of(10, 2.0f, 11, 3.0f));
+            acknowledged = Files.size(log());
+            wal.add(3, Map.of(12, 4.0f));
+        }
+        try (FileChannel channel = FileChannel.open(log(), StandardOpenOption.WRITE)) {
+            channel.truncate(acknowledged + 6);
+        }
+
+        try (SegmentIndex index = SegmentIndex.open(directory, 2)) {
+            assertThat(index.page(1)).containsExactly(Map.entry(10, 1.0f));
+            assertThat(index.page(2)).containsExactly(Map.entry(10, 2.0f), Map.entry(11, 3.0f));
+            assertThat(index.page(3)).isEmpty();
+            assertThat(index.segmentCount()).isEqualTo(1);
+        }
+        assertThat(log()).doesNotExist();
+        try (SegmentIndex reopened = SegmentIndex.open(directory, 2)) {
+            assertThat(reopened.page(2)).containsExactly(Map.entry(10, 2.0f), Map.entry(11, 3.0f));
+        }
+    }
+
+    @Test
+    void indexReplaysLogIntoSegment() throws IOException {
+        writeLog();
+        appendBytes(new byte[16]);
+
+        try (SegmentIndex index = SegmentIndex.open(directory, 2)) {
+            assertThat(index.page(1)).isEmpty();
+            assertThat(index.page(3)).containsExactly(Map.entry(12, 0.5f), Map.entry(13, 1.5f));
+            assertThat(index.segmentCount()).isEqualTo(1);
+        }
+    }
+
+    /**
+     * Пишет четыре записи и возвращает размер файла после каждой.
+     */
+    private long[] writeLog() throws IOException {
+        long[] boundaries = new long[4];
+        try (WriteAheadLog wal = WriteAheadLog.create(directory, GENERATION)) {
+            wal.add(1, Map.of(10, 1.0f));
+            boundaries[0] = Files.size(log());
+            wal.replace(1, Map.of(11, 2.0f));
+            boundaries[1] = Files.size(log());
+            wal.delete(List.of(1, 2));
+            boundaries[2] = Files.size(log());
+            wal.add(3, new TreeMap<>(Map.of(12, 0.5f, 13, 1.5f)));
+            boundaries[3] = Files.size(log());
+        }
+        return boundaries;
+    }
+
+    private List<String> replay() throws IOException {
+        List<String> records = new ArrayList<>();
+        WriteAheadLog.replay(directory, GENERATION, new WriteAheadLog.Replay() {
+            @Override
+            public void add(int pageId, Map<Integer, Float> postings) {
+                records.add("A " + pageId + " " + new TreeMap<>(postings));
+            }
+
+            @Override
+            public void replace(int pageId, Map<Integer, Float> postings) {
+                records.add("R " + pageId + " " + new TreeMap<>(postings));
+            }
+
+            @Override
+            public void delete(Collection<Integer> pageIds) {
+                records.add("D " + pageIds);
+            }
+        });
+        return records;
+    }
+
+    private Path log() {
+        return directory.resolve(WriteAheadLog.PREFIX + GENERATION);
+    }
+
+    private void writeLogCutAt(long size) throws IOException {
+        writeLog();
+        try (FileChannel channel = FileChannel.open(log(), StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        }
+    }
+
+    private void appendBytes(byte[] bytes) throws IOException {
+        Files.write(log(), bytes, StandardOpenOption.APPEND);
+    }
+
+    private void flipByte(long position) throws IOException {
+        try (FileChannel channel = FileChannel.open(log(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer one = ByteBuffer.allocate(1);
+            channel.read(one, position);
+            one.put(0, (byte) (one.get(0) ^ 0x40)).rewind();
+            channel.write(one, position);
+        }
+    }
+}
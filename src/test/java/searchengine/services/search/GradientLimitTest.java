@@ -0,0 +1,76 @@
+package searchengine.services.search;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GradientLimitTest {
+
+    private static final long FAST = 1_000_000;
+    private static final long SLOW = 20 * FAST;
+
+    @Test
+    void initialLimitIsClampedToBounds() {
+        assertThat(new GradientLimit(100, 2, 10).limit()).isEqualTo(10);
+        assertThat(new GradientLimit(0, 2, 10).limit()).isEqualTo(2);
+    }
+
+    @Test
+    void busyLimitWithSteadyLatencyGrowsUpToMax() {
+        GradientLimit limit = new GradientLimit(4, 1, 20);
+        int previous = limit.limit();
+        for (int i = 0; i < 10; i++) {
+            limit.sample(FAST, limit.limit());
+            assertThat(limit.limit()).isGreaterThanOrEqualTo(previous);
+            previous = limit.limit();
+        }
+        assertThat(previous).isGreaterThan(4);
+
+        for (int i = 0; i < 200; i++) limit.sample(FAST, limit.limit());
+        assertThat(limit.limit()).isEqualTo(20);
+        assertThat(limit.lastRttNanos()).isEqualTo(FAST);
+    }
+
+    @Test
+    void idleLimitDoesNotGrow() {
+        GradientLimit limit = new GradientLimit(10, 1, 20);
+        for (int i = 0; i < 100; i++) limit.sample(FAST, 4);
+
+        assertThat(limit.limit()).isEqualTo(10);
+    }
+
+    @Test
+    void latencyAboveNoLoadLowersLimitButNotBelowMin() {
+        GradientLimit limit = new GradientLimit(20, 1, 20);
+        limit.sample(FAST, 20);
+        for (int i = 0; i < 100; i++) limit.sample(SLOW, limit.limit());
+        assertThat(limit.limit()).isLessThan(20).isGreaterThanOrEqualTo(1);
+
+        GradientLimit bounded = new GradientLimit(20, 12, 20);
+        bounded.sample(FAST, 20);
+        for (int i = 0; i < 100; i++) bounded.sample(SLOW, bounded.limit());
+        assertThat(bounded.limit()).isEqualTo(12);
+    }
+
+    @Test
+    void latencyWithinToleranceKeepsGrowing() {
+        GradientLimit limit = new GradientLimit(4, 1, 20);
+        limit.sample(FAST, 4);
+        for (int i = 0; i < 200; i++) limit.sample(FAST * 3 / 2, limit.limit());
+
+        assertThat(limit.limit()).isEqualTo(20);
+    }
+
+    @Test
+    void probeHalvesLimitAndForgetsNoLoadLatency() {
+        GradientLimit limit = new GradientLimit(20, 1, 20);
+        for (int i = 1; i < GradientLimit.PROBE_SAMPLES; i++) limit.sample(FAST, 20);
+        assertThat(limit.limit()).isEqualTo(20);
+
+        limit.sample(FAST, 20);
+        assertThat(limit.limit()).isEqualTo(10);
+
+        for (int i = 0; i < 200; i++) limit.sample(SLOW, limit.limit());
+        assertThat(limit.limit()).isEqualTo(20);
+    }
+}
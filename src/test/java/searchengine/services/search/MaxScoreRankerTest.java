@@ -0,0 +1,99 @@
+package searchengine.services.search;
+
+import org.junit.jupiter.api.Test;
+import searchengine.dto.projection.PageView;
+import searchengine.dto.projection.PostingView;
+import searchengine.dto.searching.RelevanceItem;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Отбор с отсечением должен давать те же первые k страниц в том же порядке и с той же
+ * релевантностью, что и полный перебор: пересечение всех списков вхождений и rankPages.
+ */
+class MaxScoreRankerTest {
+
+    private static final int QUERIES = 2000;
+
+    @Test
+    void topKMatchesExhaustiveRanking() {
+        Random random = new Random(1);
+        int pruned = 0;
+        for (int query = 0; query < QUERIES; query++) {
+            int termCount = 1 + random.nextInt(6);
+            int pageCount = 50 + random.nextInt(3000);
+            int k = 1 + random.nextInt(40);
+
+            List<List<PostingView>> postings = randomPostings(random, termCount, pageCount);
+            List<MaxScoreRanker.Term> terms = new ArrayList<>();
+            for (int i = 0; i < termCount; i++) {
+                double maxRank = postings.get(i).stream().mapToDouble(PostingView::rank).max().orElse(1);
+                terms.add(new MaxScoreRanker.Term("lemma" + i, List.of(i), maxRank));
+            }
+
+            Map<Integer, Double> all = SearchService.intersectPostings(postings.iterator());
+            MaxScoreRanker.Result result = MaxScoreRanker.topK(terms, k, (lemmaIds, pageIds) -> {
+                List<PostingView> list = postings.get(lemmaIds.iterator().next());
+                return pageIds == null ? list : list.stream().filter(p -> pageIds.contains(p.pageId())).toList();
+            }, SearchProfiler.DISABLED);
+
+            List<RelevanceItem> expected = rank(all).stream().limit(k).toList();
+            List<RelevanceItem> actual = rank(result.ranks());
+            String description = "query " + query + ": " + termCount + " lemmas, " + pageCount + " pages, k=" + k;
+            assertThat(actual).as(description)
+                    .extracting(item -> item.getPage().id()).containsExactlyElementsOf(
+                            expected.stream().map(item -> item.getPage().id()).toList());
+            assertThat(actual).as(description)
+                    .extracting(RelevanceItem::getRelevance).containsExactlyElementsOf(
+                            expected.stream().map(RelevanceItem::getRelevance).toList());
+            if (result.exact()) {
+                assertThat(result.matched()).as(description).isEqualTo(all.size());
+            } else {
+                pruned++;
+            }
+        }
+        assertThat(pruned).as("запросов, где сработало отсечение").isPositive();
+    }
+
+    /**
+     * Списки вхождений от самого короткого к самому длинному, как их упорядочивает поиск.
+     * Ранги то из узкого диапазона, то из широкого, чтобы было много равных сумм.
+     */
+    private static List<List<PostingView>> randomPostings(Random random, int termCount, int pageCount) {
+        List<Map<Integer, Float>> ranks = new ArrayList<>();
+        for (int i = 0; i < termCount; i++) {
+            Map<Integer, Float> lemma = new HashMap<>();
+            double density = 0.05 + random.nextDouble() * 0.9;
+            for (int page = 1; page <= pageCount; page++) {
+                if (random.nextDouble() < density) {
+                    lemma.put(page, (float) (1 + random.nextInt(random.nextBoolean() ? 3 : 20)));
+                }
+            }
+            ranks.add(lemma);
+        }
+        ranks.sort(Comparator.comparingInt(Map::size));
+
+        List<List<PostingView>> postings = new ArrayList<>();
+        for (Map<Integer, Float> lemma : ranks) {
+            List<PostingView> list = new ArrayList<>();
+            lemma.forEach((page, rank) -> list.add(new PostingView(page, rank)));
+            postings.add(list);
+        }
+        return postings;
+    }
+
+    private static List<RelevanceItem> rank(Map<Integer, Double> ranks) {
+        if (ranks.isEmpty()) return List.of();
+        List<PageView> pages = ranks.keySet().stream()
+                .map(id -> new PageView(id, "/" + id, 1))
+                .toList();
+        return SearchService.rankPages(ranks, pages);
+    }
+}
@@ -0,0 +1,99 @@
+package searchengine.services.siteops;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import searchengine.config.SearchEngineProperties;
+import searchengine.repositories.JdbcBatchRepository;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+/**
+ * Сброс вызывается напрямую, фоновый поток не запускается.
+ */
+@ExtendWith(MockitoExtension.class)
+class FrequencyCountersTest {
+
+    @Mock
+    private JdbcBatchRepository batchRepository;
+
+    private FrequencyCounters counters() {
+        return new FrequencyCounters(batchRepository, new SearchEngineProperties());
+    }
+
+    @Test
+    void flushAppliesAccumulatedIncrementsOnce() {
+        FrequencyCounters counters = counters();
+        counters.increment(7);
+        counters.increment(3);
+        counters.increment(7);
+        assertThat(counters.pending(7)).isEqualTo(2);
+
+        counters.flush();
+        counters.flush();
+
+        verify(batchRepository).incrementFrequencies(Map.of(3, 1, 7, 2));
+        verifyNoMoreInteractions(batchRepository);
+        assertThat(counters.pending(7)).isZero();
+        assertThat(counters.pending(3)).isZero();
+    }
+
+    @Test
+    void failedFlushKeepsIncrementsForRetry() {
+        FrequencyCounters counters = counters();
+        counters.increment(5);
+        counters.increment(5);
+        doThrow(new IllegalStateException("нет соединения"))
+                .when(batchRepository).incrementFrequencies(Map.of(5, 2));
+
+        assertThatThrownBy(counters::flush).isInstanceOf(IllegalStateException.class);
+        assertThat(counters.pending(5)).isEqualTo(2);
+
+        counters.increment(5);
+        doThrow(new IllegalStateException("нет соединения"))
+                .when(batchRepository).incrementFrequencies(Map.of(5, 3));
+        assertThatThrownBy(counters::flush).isInstanceOf(IllegalStateException.class);
+        assertThat(counters.pending(5)).isEqualTo(3);
+    }
+
+    @Test
+    void retryAfterFailureAppliesEverything() {
+        FrequencyCounters counters = counters();
+        counters.increment(5);
+        doThrow(new IllegalStateException("нет соединения")).doNothing()
+                .when(batchRepository).incrementFrequencies(any());
+
+        assertThatThrownBy(counters::flush).isInstanceOf(IllegalStateException.class);
+        counters.increment(5);
+        counters.flush();
+
+        verify(batchRepository).incrementFrequencies(Map.of(5, 2));
+        assertThat(counters.pending(5)).isZero();
+    }
+
+    @Test
+    void idleCounterIsDroppedAndRecreatedByNextIncrement() {
+        FrequencyCounters counters = counters();
+        counters.increment(9);
+        counters.flush();
+        counters.flush();
+        counters.flush();
+
+        counters.increment(9);
+        assertThat(counters.pending(9)).isEqualTo(1);
+        counters.flush();
+
+        verify(batchRepository, times(2)).incrementFrequencies(Map.of(9, 1));
+        verifyNoMoreInteractions(batchRepository);
+        assertThat(counters.pending(9)).isZero();
+    }
+}
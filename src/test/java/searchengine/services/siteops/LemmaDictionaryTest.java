@@ -0,0 +1,89 @@
+package searchengine.services.siteops;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import searchengine.dto.projection.LemmaView;
+import searchengine.repositories.LemmaRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+/**
+ * Словарь прогрет одной леммой с нулевой частотой в БД — кандидатом на удаление.
+ */
+@ExtendWith(MockitoExtension.class)
+class LemmaDictionaryTest {
+
+    private static final int SITE = 1;
+    private static final int HOUSE = 10;
+
+    @Mock
+    private LemmaRepository lemmaRepository;
+    @Mock
+    private FrequencyCounters frequencyCounters;
+
+    private final List<List<Integer>> deleterCalls = new ArrayList<>();
+    private LemmaDictionary dictionary;
+
+    @BeforeEach
+    void setUp() {
+        when(lemmaRepository.findViewsBySiteId(SITE)).thenReturn(List.of(new LemmaView(HOUSE, "дом", 0, SITE, 1f)));
+        dictionary = new LemmaDictionary(lemmaRepository, frequencyCounters);
+        dictionary.warmUp(SITE);
+    }
+
+    @Test
+    void lemmaIsNotDeletedWhilePostingsAreUnwritten() {
+        int id = dictionary.register(SITE, "дом", 1f, (lemma, rank) -> -1);
+
+        assertThat(evictHouse()).isEmpty();
+        assertThat(deleterCalls).isEmpty();
+
+        dictionary.release(List.of(id));
+        assertThat(evictHouse()).containsExactly(HOUSE);
+        assertThat(deleterCalls).containsExactly(List.of(HOUSE));
+    }
+
+    @Test
+    void lemmaStaysPinnedUntilEveryRegistrationIsReleased() {
+        dictionary.register(SITE, "дом", 1f, (lemma, rank) -> -1);
+        dictionary.register(SITE, "дом", 2f, (lemma, rank) -> -1);
+
+        dictionary.release(List.of(HOUSE));
+        assertThat(evictHouse()).isEmpty();
+
+        dictionary.release(List.of(HOUSE));
+        assertThat(evictHouse()).containsExactly(HOUSE);
+    }
+
+    @Test
+    void lemmaWithUnflushedIncrementIsNotDeleted() {
+        when(frequencyCounters.pending(HOUSE)).thenReturn(1L);
+
+        assertThat(evictHouse()).isEmpty();
+        assertThat(deleterCalls).isEmpty();
+    }
+
+    @Test
+    void evictedLemmaIsCreatedAgain() {
+        assertThat(evictHouse()).containsExactly(HOUSE);
+
+        int id = dictionary.register(SITE, "дом", 3f, (lemma, rank) -> 11);
+
+        assertThat(id).isEqualTo(11);
+    }
+
+    private List<Integer> evictHouse() {
+        return dictionary.evictUnused(SITE, Map.of("дом", HOUSE), ids -> {
+            deleterCalls.add(ids);
+            return ids;
+        });
+    }
+}
@@ -0,0 +1,111 @@
+package searchengine.services.suggest;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import searchengine.dto.projection.LemmaTotalsView;
+import searchengine.services.suggest.PrefixDictionary.Entry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DictionarySnapshotTest {
+
+    private static final LemmaTotalsView TOTALS = new LemmaTotalsView(4L, 17L);
+    private static final PrefixDictionary DICTIONARY = PrefixDictionary.build(List.of(
+            new Entry("дом", 6), new Entry("домик", 7), new Entry("ёж", 1), new Entry("автобус", 3)));
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void dictionarySurvivesRoundTrip() throws IOException {
+        Path path = DictionarySnapshot.path(directory.resolve("nested"), 3);
+        DictionarySnapshot.write(path, 3, TOTALS, DICTIONARY);
+
+        DictionarySnapshot.Loaded loaded = DictionarySnapshot.read(path);
+
+        assertThat(loaded.siteId()).isEqualTo(3);
+        assertThat(loaded.totals()).isEqualTo(TOTALS);
+        assertThat(loaded.dictionary().size()).isEqualTo(DICTIONARY.size());
+        for (int i = 0; i < DICTIONARY.size(); i++) {
+            assertThat(loaded.dictionary().lemma(i)).isEqualTo(DICTIONARY.lemma(i));
+            assertThat(loaded.dictionary().frequency(i)).isEqualTo(DICTIONARY.frequency(i));
+        }
+        assertThat(loaded.dictionary().complete("д", 10)).isEqualTo(DICTIONARY.complete("д", 10));
+        assertThat(Files.list(path.getParent())).containsExactly(path);
+    }
+
+    @Test
+    void emptyDictionarySurvivesRoundTrip() throws IOException {
+        Path path = DictionarySnapshot.path(directory, 1);
+        DictionarySnapshot.write(path, 1, new LemmaTotalsView(0L, 0L), PrefixDictionary.EMPTY);
+
+        assertThat(DictionarySnapshot.read(path).dictionary().size()).isZero();
+    }
+
+    @Test
+    void rewriteReplacesPreviousSnapshot() throws IOException {
+        Path path = DictionarySnapshot.path(directory, 1);
+        DictionarySnapshot.write(path, 1, TOTALS, DICTIONARY);
+        PrefixDictionary smaller = PrefixDictionary.build(List.of(new Entry("кот", 2)));
+        DictionarySnapshot.write(path, 1, new LemmaTotalsView(1L, 2L), smaller);
+
+        DictionarySnapshot.Loaded loaded = DictionarySnapshot.read(path);
+
+        assertThat(loaded.totals()).isEqualTo(new LemmaTotalsView(1L, 2L));
+        assertThat(loaded.dictionary().complete("к", 10)).containsExactly(new Entry("кот", 2));
+    }
+
+    @Test
+    void truncatedSnapshotIsRejected() throws IOException {
+        Path path = written();
+        byte[] bytes = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(bytes, bytes.length - 4));
+
+        assertThatThrownBy(() -> DictionarySnapshot.read(path)).isInstanceOf(IOException.class);
+
+        Files.write(path, Arrays.copyOf(bytes, DictionarySnapshot.HEADER_BYTES - 1));
+        assertThatThrownBy(() -> DictionarySnapshot.read(path)).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void foreignFileIsRejected() throws IOException {
+        Path path = written();
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[0] ^= 1;
+        Files.write(path, bytes);
+
+        assertThatThrownBy(() -> DictionarySnapshot.read(path)).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void snapshotWithBrokenOffsetsIsRejected() throws IOException {
+        Path path = written();
+        byte[] bytes = Files.readAllBytes(path);
+        int chars = ByteBuffer.wrap(bytes).getInt(DictionarySnapshot.HEADER_BYTES - 4);
+        int secondOffset = DictionarySnapshot.HEADER_BYTES + chars * 2 + 4;
+        ByteBuffer.wrap(bytes).putInt(secondOffset, 1000);
+        Files.write(path, bytes);
+
+        assertThatThrownBy(() -> DictionarySnapshot.read(path)).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void missingFileIsRejected() {
+        assertThatThrownBy(() -> DictionarySnapshot.read(directory.resolve("absent.dict")))
+                .isInstanceOf(IOException.class);
+    }
+
+    private Path written() throws IOException {
+        Path path = DictionarySnapshot.path(directory, 2);
+        DictionarySnapshot.write(path, 2, TOTALS, DICTIONARY);
+        return path;
+    }
+}
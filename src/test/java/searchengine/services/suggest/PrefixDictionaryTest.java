@@ -0,0 +1,86 @@
+package searchengine.services.suggest;
+
+import org.junit.jupiter.api.Test;
+import searchengine.services.suggest.PrefixDictionary.Entry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PrefixDictionaryTest {
+
+    private static final PrefixDictionary DICTIONARY = PrefixDictionary.build(List.of(
+            new Entry("дом", 5),
+            new Entry("дома", 2),
+            new Entry("домик", 7),
+            new Entry("дон", 9),
+            new Entry("до", 1),
+            new Entry("ёж", 4),
+            new Entry("автобус", 3),
+            new Entry("дом", 1)));
+
+    @Test
+    void repeatedLemmaFrequenciesAreSummed() {
+        assertThat(DICTIONARY.size()).isEqualTo(7);
+        assertThat(DICTIONARY.complete("дом", 1)).containsExactly(new Entry("домик", 7));
+        assertThat(DICTIONARY.complete("дом", 10)).contains(new Entry("дом", 6));
+    }
+
+    @Test
+    void prefixIncludesWholeLemmaAndExcludesNeighbours() {
+        assertThat(DICTIONARY.complete("дом", 10)).containsExactly(
+                new Entry("домик", 7), new Entry("дом", 6), new Entry("дома", 2));
+        assertThat(DICTIONARY.complete("до", 10)).extracting(Entry::lemma)
+                .containsExactly("дон", "домик", "дом", "дома", "до");
+        assertThat(DICTIONARY.complete("домики", 10)).isEmpty();
+    }
+
+    @Test
+    void prefixesOutsideDictionaryGiveNothing() {
+        assertThat(DICTIONARY.complete("а", 10)).containsExactly(new Entry("автобус", 3));
+        assertThat(DICTIONARY.complete("аа", 10)).isEmpty();
+        assertThat(DICTIONARY.complete("я", 10)).isEmpty();
+        assertThat(DICTIONARY.complete("ёжик", 10)).isEmpty();
+        assertThat(DICTIONARY.complete("", 10)).isEmpty();
+        assertThat(DICTIONARY.complete("д", 0)).isEmpty();
+        assertThat(PrefixDictionary.EMPTY.complete("д", 10)).isEmpty();
+    }
+
+    @Test
+    void equalFrequenciesAreOrderedAlphabetically() {
+        PrefixDictionary dictionary = PrefixDictionary.build(List.of(
+                new Entry("кот", 2), new Entry("кит", 2), new Entry("кат", 2)));
+
+        assertThat(dictionary.complete("к", 10)).extracting(Entry::lemma).containsExactly("кат", "кит", "кот");
+    }
+
+    @Test
+    void precomputedShortPrefixesMatchFullScan() {
+        List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            entries.add(new Entry("па" + (char) ('а' + i % 32) + i, i % 13));
+        }
+        PrefixDictionary dictionary = PrefixDictionary.build(entries);
+        int beyond = PrefixDictionary.PRECOMPUTED_LIMIT + 1;
+
+        List<Entry> precomputed = dictionary.complete("па", PrefixDictionary.PRECOMPUTED_LIMIT);
+        List<Entry> scanned = dictionary.complete("па", beyond);
+
+        assertThat(precomputed).hasSize(PrefixDictionary.PRECOMPUTED_LIMIT);
+        assertThat(scanned.subList(0, PrefixDictionary.PRECOMPUTED_LIMIT)).isEqualTo(precomputed);
+        assertThat(dictionary.complete("п", 5)).isEqualTo(scanned.subList(0, 5));
+    }
+
+    @Test
+    void mergeSumsFrequenciesAcrossSites() {
+        PrefixDictionary other = PrefixDictionary.build(List.of(new Entry("дом", 4), new Entry("дуб", 1)));
+
+        PrefixDictionary merged = PrefixDictionary.merge(List.of(DICTIONARY, PrefixDictionary.EMPTY, other));
+
+        assertThat(merged.size()).isEqualTo(8);
+        assertThat(merged.complete("д", 3)).containsExactly(
+                new Entry("дом", 10), new Entry("дон", 9), new Entry("домик", 7));
+        assertThat(merged.complete("ду", 10)).containsExactly(new Entry("дуб", 1));
+    }
+}